@@ -16,16 +16,33 @@ repositories {
     mavenCentral()
 }
 val lwjglVersion by project.extra {"3.2.3"}
-val lwjglNatives by project.extra {"natives-windows"}
+// -PlwjglNatives=natives-linux for build agents, the headless task needs the Linux natives there
+val lwjglNatives by project.extra {(findProperty("lwjglNatives") as String?) ?: "natives-windows"}
 val jomlVersion by project.extra {"1.9.24"}
 
 
 java {
     toolchain {
-        languageVersion.set(JavaLanguageVersion.of(11))
+        languageVersion.set(JavaLanguageVersion.of(17))
     }
 }
 
+// MatrixBatch has a jdk.incubator.vector implementation, which needs the module both to compile and to be picked at
+// run time; without it at run time the scalar one is used
+val vectorModule = listOf("--add-modules", "jdk.incubator.vector")
+
+tasks.withType<JavaCompile> {
+    options.compilerArgs.addAll(vectorModule)
+}
+
+tasks.withType<JavaExec> {
+    jvmArgs(vectorModule)
+}
+
+tasks.withType<Test> {
+    jvmArgs(vectorModule)
+}
+
 dependencies {
     // Use TestNG framework, also requires calling test.useTestNG() below
     testImplementation("org.testng:testng:7.4.0")
@@ -93,7 +110,8 @@ dependencies {
     runtimeOnly("org.lwjgl:lwjgl-opengles::$lwjglNatives")
     runtimeOnly("org.lwjgl:lwjgl-openvr::$lwjglNatives")
     runtimeOnly("org.lwjgl:lwjgl-opus::$lwjglNatives")
-    runtimeOnly("org.lwjgl:lwjgl-ovr::$lwjglNatives")
+    // the Oculus SDK only ships Windows natives, asking for any other classifier fails the resolution
+    if (lwjglNatives == "natives-windows") runtimeOnly("org.lwjgl:lwjgl-ovr::$lwjglNatives")
     runtimeOnly("org.lwjgl:lwjgl-par::$lwjglNatives")
     runtimeOnly("org.lwjgl:lwjgl-remotery::$lwjglNatives")
     runtimeOnly("org.lwjgl:lwjgl-rpmalloc::$lwjglNatives")
@@ -116,9 +134,51 @@ application {
     // Define the main class for the application.
 
     mainClass.set("learnopengl.App")
+    applicationDefaultJvmArgs = vectorModule
 }
 
 tasks.test {
     // Use TestNG for unit tests.
     useTestNG()
 }
+
+tasks.register<JavaExec>("bakeTextures") {
+    description = "Decodes the chapter images once and writes their baked mip chains to the texture cache."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("learnopengl.utils.TextureBaker")
+}
+
+tasks.register<JavaExec>("bakeModels") {
+    description = "Imports the model files given with --args through Assimp and writes them to the mesh cache."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("learnopengl.utils.ModelBaker")
+}
+
+tasks.register<JavaExec>("packMeshes") {
+    description = "Writes every mesh of the model files given with --args as a memory mappable .lmsh file."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("learnopengl.utils.MeshPacker")
+}
+
+tasks.register<JavaExec>("textureLoadBenchmark") {
+    description = "Compares stbi_load against loading the baked, memory mapped texture files."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("learnopengl.benchmark.TextureLoadBenchmark")
+}
+
+tasks.register<JavaExec>("meshUploadBenchmark") {
+    description = "Compares uploading a 100MB mesh through float[] against uploading it from a mapped .lmsh file."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("learnopengl.benchmark.MeshUploadBenchmark")
+}
+
+tasks.register<JavaExec>("headless") {
+    description = "Runs the chapter given with --args for a fixed number of frames on an EGL context without a display."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("learnopengl.App")
+    systemProperty("learnopengl.headless", findProperty("headlessFrames") ?: "600")
+    listOf("learnopengl.headlessCapture", "learnopengl.frameStatsCsv", "learnopengl.profile", "learnopengl.traceFile",
+            "learnopengl.capture", "learnopengl.captureFormat", "learnopengl.updateHz").forEach {
+        System.getProperty(it)?.let { value -> systemProperty(it, value) }
+    }
+}
@@ -25,10 +25,15 @@ public class App {
     public static void main(String[] args) {
 
         Runner runner =  null;
-        Scanner scanner = new Scanner(System.in);
-        System.out.println("Enter your enter a chapter: ");
         String chapter = "";
-        chapter = scanner.nextLine();
+        if (args.length > 0) {
+            // picked on the command line, e.g. for headless runs that have nobody to type it in
+            chapter = args[0];
+        } else {
+            Scanner scanner = new Scanner(System.in);
+            System.out.println("Enter your enter a chapter: ");
+            chapter = scanner.nextLine();
+        }
 
 
         switch (chapter) {
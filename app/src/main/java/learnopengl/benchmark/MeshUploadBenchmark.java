@@ -0,0 +1,183 @@
+package learnopengl.benchmark;
+
+import learnopengl.utils.MeshFile;
+import learnopengl.utils.VertexFormat;
+import org.lwjgl.glfw.GLFWErrorCallback;
+import org.lwjgl.opengl.GL;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.glFinish;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+/**
+ * Uploads the same mesh, 100MB of vertices unless a size in MB is passed, the way the chapters do it (the file read
+ * into a float[] that glBufferData copies again) and straight from a mapped {@link MeshFile}. Both are timed from
+ * opening the file to glFinish, with the heap the thread allocated on the way. The files were just written, so even
+ * the first iteration reads from the page cache; the cold column mostly shows the page faults of a fresh mapping.
+ */
+public class MeshUploadBenchmark {
+
+    private static final int ITERATIONS = 10;
+
+    // nine floats like the chapter layout, so both files hold byte for byte the same vertices
+    private static final VertexFormat FORMAT = new VertexFormat.Builder()
+            .add(0, 3, VertexFormat.Type.FLOAT)
+            .add(1, 4, VertexFormat.Type.FLOAT)
+            .add(2, 2, VertexFormat.Type.FLOAT)
+            .build();
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int vertexCount = (int) ((long) megabytes * 1024 * 1024 / FORMAT.getStride()) / 3 * 3;
+
+        GLFWErrorCallback.createPrint(System.err).set();
+        if (!glfwInit()) {
+            throw new IllegalStateException("Unable to initialize GLFW");
+        }
+        glfwDefaultWindowHints();
+        glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+        long window = glfwCreateWindow(64, 64, "mesh upload benchmark", NULL, NULL);
+        if (window == NULL) {
+            throw new RuntimeException("Failed to create the GLFW window");
+        }
+        glfwMakeContextCurrent(window);
+        GL.createCapabilities();
+
+        Path directory = Files.createTempDirectory("learnopengl-meshes");
+        Path rawFile = directory.resolve("mesh.raw");
+        Path meshFile = directory.resolve("mesh" + MeshFile.FILE_EXTENSION);
+        try {
+            writeFiles(vertexCount, rawFile, meshFile);
+            int vbo = glGenBuffers();
+            int ebo = glGenBuffers();
+            glBindBuffer(GL_ARRAY_BUFFER, vbo);
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ebo);
+
+            long[] arrayTimes = new long[ITERATIONS];
+            long[] mappedTimes = new long[ITERATIONS];
+            long arrayAllocated = 0;
+            long mappedAllocated = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                long allocated = allocatedBytes();
+                long start = System.nanoTime();
+                uploadArrays(rawFile, vertexCount);
+                arrayTimes[i] = System.nanoTime() - start;
+                arrayAllocated = allocatedSince(allocated);
+
+                allocated = allocatedBytes();
+                start = System.nanoTime();
+                uploadMapped(meshFile);
+                mappedTimes[i] = System.nanoTime() - start;
+                mappedAllocated = allocatedSince(allocated);
+            }
+
+            System.out.printf("%d vertices, %d MB of vertices and %d MB of indices%n", vertexCount,
+                    (long) vertexCount * FORMAT.getStride() >> 20, (long) vertexCount * Integer.BYTES >> 20);
+            System.out.printf("%-10s %10s %10s %16s%n", "path", "cold ms", "warm ms", "heap allocated");
+            System.out.printf("%-10s %10.1f %10.1f %16s%n", "float[]",
+                    arrayTimes[0] / 1e6, median(arrayTimes) / 1e6, bytes(arrayAllocated));
+            System.out.printf("%-10s %10.1f %10.1f %16s%n", "mapped",
+                    mappedTimes[0] / 1e6, median(mappedTimes) / 1e6, bytes(mappedAllocated));
+
+            glDeleteBuffers(vbo);
+            glDeleteBuffers(ebo);
+        } finally {
+            Files.deleteIfExists(rawFile);
+            Files.deleteIfExists(meshFile);
+            Files.deleteIfExists(directory);
+            glfwDestroyWindow(window);
+            glfwTerminate();
+        }
+    }
+
+    // random vertices and one triangle per three of them, the contents do not matter for an upload
+    private static void writeFiles(int vertexCount, Path rawFile, Path meshFile) throws IOException {
+        int floats = vertexCount * FORMAT.getFloatsPerVertex();
+        ByteBuffer vertices = memAlloc(floats * Float.BYTES);
+        ByteBuffer indices = memAlloc(vertexCount * Integer.BYTES);
+        try {
+            Random random = new Random(42);
+            FloatBuffer vertexFloats = vertices.asFloatBuffer();
+            for (int f = 0; f < floats; f++) {
+                vertexFloats.put(f, random.nextFloat());
+            }
+            IntBuffer indexInts = indices.asIntBuffer();
+            for (int v = 0; v < vertexCount; v++) {
+                indexInts.put(v, v);
+            }
+            MeshFile.write(meshFile, FORMAT, vertices, indices, GL_UNSIGNED_INT);
+
+            // the raw file is the vertex floats followed by the index ints, in the same little endian order
+            try (FileChannel channel = FileChannel.open(rawFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer v = vertices.duplicate();
+                ByteBuffer i = indices.duplicate();
+                while (v.hasRemaining() || i.hasRemaining()) {
+                    channel.write(new ByteBuffer[]{v, i});
+                }
+            }
+        } finally {
+            memFree(vertices);
+            memFree(indices);
+        }
+    }
+
+    private static void uploadArrays(Path rawFile, int vertexCount) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(rawFile)).order(ByteOrder.LITTLE_ENDIAN);
+        float[] vertices = new float[vertexCount * FORMAT.getFloatsPerVertex()];
+        int[] indices = new int[vertexCount];
+        bytes.asFloatBuffer().get(vertices);
+        bytes.position(vertices.length * Float.BYTES);
+        bytes.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(indices);
+        glBufferData(GL_ARRAY_BUFFER, vertices, GL_STATIC_DRAW);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+        glFinish();
+    }
+
+    private static void uploadMapped(Path meshFile) throws IOException {
+        MeshFile mesh = MeshFile.open(meshFile);
+        glBufferData(GL_ARRAY_BUFFER, mesh.getVertices(), GL_STATIC_DRAW);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, mesh.getIndices(), GL_STATIC_DRAW);
+        glFinish();
+    }
+
+    // bytes allocated on the heap by this thread so far, -1 where the JVM cannot tell
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static long allocatedSince(long before) {
+        return before < 0 ? -1 : allocatedBytes() - before;
+    }
+
+    private static String bytes(long allocated) {
+        return allocated < 0 ? "n/a" : String.format("%.1f MB", allocated / (1024.0 * 1024.0));
+    }
+
+    private static long median(long[] samples) {
+        long[] warm = Arrays.copyOfRange(samples, 1, samples.length);
+        Arrays.sort(warm);
+        return warm[warm.length / 2];
+    }
+}
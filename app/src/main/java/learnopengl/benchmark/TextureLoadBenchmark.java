@@ -0,0 +1,104 @@
+package learnopengl.benchmark;
+
+import learnopengl.utils.BakedTexture;
+import learnopengl.utils.TextureBaker;
+import learnopengl.utils.TextureLoader;
+import org.lwjgl.system.MemoryStack;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.lwjgl.stb.STBImage.stbi_image_free;
+import static org.lwjgl.stb.STBImage.stbi_load;
+import static org.lwjgl.stb.STBImage.stbi_set_flip_vertically_on_load;
+import static org.lwjgl.system.MemoryStack.stackPush;
+
+/**
+ * Compares the CPU side of loading a texture the old way (stbi_load on the source file) against mapping and
+ * decompressing its baked file. The first iteration of each is reported on its own, the median of the rest as the
+ * warm load. Neither first load is cold: baking just read the source and wrote the baked file, so both come from the
+ * page cache, and the first column mostly shows first-call costs and the page faults of a fresh mapping. Note the
+ * stbi path still has glGenerateMipmap ahead of it, the baked one does not.
+ */
+public class TextureLoadBenchmark {
+
+    private static final int ITERATIONS = 50;
+
+    public static void main(String[] args) throws IOException, URISyntaxException {
+        int codec = BakedTexture.codecFromName(System.getProperty("learnopengl.textureCodec", "zstd"));
+        List<String> resources = args.length > 0 ? Arrays.asList(args) : TextureBaker.CHAPTER_IMAGES;
+
+        System.out.printf("%-24s %14s %14s %14s %14s%n", "image", "stbi first ms", "stbi warm ms", "baked first ms", "baked warm ms");
+        for (String resource : resources) {
+            String path = Paths.get(TextureLoadBenchmark.class.getClassLoader().getResource(resource).toURI()).toAbsolutePath().toString();
+
+            // a directory per image, so the only file in it is the one just baked
+            Path bakeDirectory = Files.createTempDirectory("learnopengl-baked");
+            try {
+                TextureLoader.loadBaked(resource, bakeDirectory, codec).free();
+                Path bakedFile;
+                try (Stream<Path> files = Files.list(bakeDirectory)) {
+                    bakedFile = files.findFirst().orElseThrow(() -> new IOException("nothing was baked for " + resource));
+                }
+
+                long[] stbi = new long[ITERATIONS];
+                long[] mapped = new long[ITERATIONS];
+                for (int i = 0; i < ITERATIONS; i++) {
+                    stbi[i] = timeStbiLoad(path);
+                    mapped[i] = timeBakedLoad(bakedFile);
+                }
+
+                System.out.printf("%-24s %14.3f %14.3f %14.3f %14.3f%n", resource,
+                        stbi[0] / 1e6, median(stbi) / 1e6, mapped[0] / 1e6, median(mapped) / 1e6);
+                System.out.printf("%-24s %d bytes source, %d bytes baked with every mip level%n", "",
+                        Files.size(Paths.get(path)), Files.size(bakedFile));
+            } finally {
+                try (Stream<Path> files = Files.list(bakeDirectory)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+                Files.deleteIfExists(bakeDirectory);
+            }
+        }
+    }
+
+    private static long timeStbiLoad(String path) {
+        stbi_set_flip_vertically_on_load(true);
+        try (MemoryStack stack = stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer c = stack.mallocInt(1);
+            long start = System.nanoTime();
+            ByteBuffer image = stbi_load(path, w, h, c, 0);
+            long elapsed = System.nanoTime() - start;
+            if (image == null) {
+                throw new IllegalStateException("Failed to load " + path);
+            }
+            stbi_image_free(image);
+            return elapsed;
+        }
+    }
+
+    private static long timeBakedLoad(Path file) throws IOException {
+        long start = System.nanoTime();
+        BakedTexture texture = BakedTexture.read(file);
+        long elapsed = System.nanoTime() - start;
+        texture.free();
+        return elapsed;
+    }
+
+    private static long median(long[] samples) {
+        long[] warm = Arrays.copyOfRange(samples, 1, samples.length);
+        Arrays.sort(warm);
+        return warm[warm.length / 2];
+    }
+}
@@ -1,6 +1,8 @@
 package learnopengl.chapter1;
 
 import learnopengl.Runner;
+import learnopengl.utils.HeadlessContext;
+import learnopengl.utils.RenderLoop;
 import org.lwjgl.*;
 import org.lwjgl.glfw.*;
 import org.lwjgl.opengl.*;
@@ -18,6 +20,7 @@ public class HelloWindow implements Runner {
 
     // The window handle
     private long window;
+    private HeadlessContext headless;
 
     public void run() {
         System.out.println("Hello LWJGL " + Version.getVersion() + "!");
@@ -25,6 +28,11 @@ public class HelloWindow implements Runner {
         init();
         loop();
 
+        if (headless != null) {
+            headless.destroy();
+            return;
+        }
+
         // Free the window callbacks and destroy the window
         glfwFreeCallbacks(window);
         glfwDestroyWindow(window);
@@ -35,6 +43,12 @@ public class HelloWindow implements Runner {
     }
 
     private void init() {
+        if (HeadlessContext.isRequested()) {
+            // no window and no display, the chapter draws into an offscreen framebuffer instead
+            headless = HeadlessContext.create(300, 300);
+            return;
+        }
+
         // Setup an error callback. The default implementation
         // will print the error message in System.err.
         GLFWErrorCallback.createPrint(System.err).set();
@@ -101,15 +115,12 @@ public class HelloWindow implements Runner {
 
         // Run the rendering loop until the user has attempted to close
         // the window or has pressed the ESCAPE key.
-        while ( !glfwWindowShouldClose(window) ) {
-            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT); // clear the framebuffer
-
-            glfwSwapBuffers(window); // swap the color buffers
+        RenderLoop loop = headless != null ? new RenderLoop(headless) : new RenderLoop(window);
+        loop.run(() -> { }, this::render);
+    }
 
-            // Poll for window events. The key callback above will only be
-            // invoked during this call.
-            glfwPollEvents();
-        }
+    private void render() {
+        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT); // clear the framebuffer
     }
 
     public static void main(String[] args) {
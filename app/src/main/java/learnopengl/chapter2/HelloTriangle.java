@@ -1,6 +1,10 @@
 package learnopengl.chapter2;
 
 import learnopengl.Runner;
+import learnopengl.utils.GLState;
+import learnopengl.utils.Mesh;
+import learnopengl.utils.HeadlessContext;
+import learnopengl.utils.RenderLoop;
 import org.lwjgl.Version;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.glfw.GLFWVidMode;
@@ -16,9 +20,7 @@ import static org.lwjgl.opengl.GL11.GL_COLOR_BUFFER_BIT;
 import static org.lwjgl.opengl.GL11.GL_FLOAT;
 import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
 import static org.lwjgl.opengl.GL11.GL_TRUE;
-import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
 import static org.lwjgl.opengl.GL11.glClear;
-import static org.lwjgl.opengl.GL11.glClearColor;
 import static org.lwjgl.opengl.GL11.glDrawElements;
 import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
 import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
@@ -35,10 +37,14 @@ import static org.lwjgl.system.MemoryUtil.NULL;
 public class HelloTriangle implements Runner {
     // The window handle
     private long window;
+    private HeadlessContext headless;
 
     private int windowWidth = 800;
     private int windowHeight = 600;
 
+    // filters redundant binds and state changes in the render loop
+    private final GLState gl = new GLState();
+
     final int BYTES_PER_FLOAT = 4;
 
     final int VERTEX_POS_SIZE   = 3; // x, y
@@ -73,6 +79,7 @@ public class HelloTriangle implements Runner {
 
     private float[] vertices;
     private int[] indices;
+    private Mesh mesh;
     private int shaderProgram;
 
 
@@ -83,6 +90,12 @@ public class HelloTriangle implements Runner {
     }
 
     private void init() {
+        if (HeadlessContext.isRequested()) {
+            // no window and no display, the chapter draws into an offscreen framebuffer instead
+            headless = HeadlessContext.create(windowWidth, windowHeight);
+            return;
+        }
+
         // Setup an error callback. The default implementation
         // will print the error message in System.err.
         GLFWErrorCallback.createPrint(System.err).set();
@@ -174,6 +187,11 @@ public class HelloTriangle implements Runner {
                 1, 2, 3   // second Triangle
         };
 
+        // four vertices fit 16-bit indices
+        mesh = new Mesh.Builder(VERTEX_POS_SIZE)
+                .indexed(vertices, indices)
+                .build();
+
         vao = glGenVertexArrays();
         vbo = glGenBuffers();
         ebo = glGenBuffers();
@@ -181,10 +199,10 @@ public class HelloTriangle implements Runner {
         glBindVertexArray(vao);
 
         glBindBuffer(GL_ARRAY_BUFFER, vbo);
-        glBufferData(GL_ARRAY_BUFFER, vertices, GL_STATIC_DRAW);
+        glBufferData(GL_ARRAY_BUFFER, mesh.getVertices(), GL_STATIC_DRAW);
 
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ebo);
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, mesh.getIndices(), GL_STATIC_DRAW);
 
         glVertexAttribPointer(0, VERTEX_POS_SIZE, GL_FLOAT,false, VERTEX_STRIDE, 0);
         glEnableVertexAttribArray(0);
@@ -209,32 +227,27 @@ public class HelloTriangle implements Runner {
         GL.createCapabilities();
 
         // Set the clear color
-        glClearColor(0.2f, 0.3f, 0.3f, 1.0f);
+        gl.clearColor(0.2f, 0.3f, 0.3f, 1.0f);
 
         createShaders();
         createVertexData();
 
         // Run the rendering loop until the user has attempted to close
         // the window or has pressed the ESCAPE key.
-        while ( !glfwWindowShouldClose(window) ) {
-
-            // render
-            // ------
-            glClearColor(0.2f, 0.3f, 0.3f, 1.0f);
-            glClear(GL_COLOR_BUFFER_BIT); // clear the framebuffer
-
-            glUseProgram(shaderProgram);
-            glBindVertexArray(vao);
-            //glDrawArrays(GL_TRIANGLES, 0, 6);
-            glDrawElements(GL_TRIANGLES, indices.length,GL_UNSIGNED_INT, 0);
-            glBindVertexArray(0); // no need to unbind it every time
+        RenderLoop loop = headless != null ? new RenderLoop(headless) : new RenderLoop(window);
+        loop.run(() -> { }, this::render);
+    }
 
+    private void render() {
+        // render
+        // ------
+        gl.clearColor(0.2f, 0.3f, 0.3f, 1.0f);
+        glClear(GL_COLOR_BUFFER_BIT); // clear the framebuffer
 
-            glfwSwapBuffers(window); // swap the color buffers
-            // Poll for window events. The key callback above will only be
-            // invoked during this call.
-            glfwPollEvents();
-        }
+        gl.useProgram(shaderProgram);
+        gl.bindVertexArray(vao);
+        //glDrawArrays(GL_TRIANGLES, 0, 6);
+        glDrawElements(GL_TRIANGLES, mesh.getIndexCount(), mesh.getIndexType(), 0);
     }
 
     private void checkIfProgramLinkedSuccessfully(int shaderProgram) {
@@ -256,6 +269,13 @@ public class HelloTriangle implements Runner {
     }
 
     private void destroy() {
+        System.out.print(gl.summary());
+
+        if (headless != null) {
+            headless.destroy();
+            return;
+        }
+
         // Free the window callbacks and destroy the window
         glfwFreeCallbacks(window);
         glfwDestroyWindow(window);
@@ -2,6 +2,9 @@ package learnopengl.chapter3;
 
 import learnopengl.Runner;
 import learnopengl.chapter2.HelloTriangle;
+import learnopengl.utils.GLState;
+import learnopengl.utils.HeadlessContext;
+import learnopengl.utils.RenderLoop;
 import learnopengl.utils.Shader;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.glfw.GLFWVidMode;
@@ -18,7 +21,6 @@ import static org.lwjgl.opengl.GL11.GL_FLOAT;
 import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
 import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
 import static org.lwjgl.opengl.GL11.glClear;
-import static org.lwjgl.opengl.GL11.glClearColor;
 import static org.lwjgl.opengl.GL11.glDrawElements;
 import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
 import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
@@ -36,10 +38,14 @@ public class Shaders implements Runner {
 
     // The window handle
     private long window;
+    private HeadlessContext headless;
 
     private int windowWidth = 800;
     private int windowHeight = 600;
 
+    // filters redundant binds and state changes in the render loop
+    private final GLState gl = new GLState();
+
     final int BYTES_PER_FLOAT = 4;
 
     final int VERTEX_POS_SIZE   = 3; // x, y
@@ -92,6 +98,12 @@ public class Shaders implements Runner {
     }
 
     private void init() {
+        if (HeadlessContext.isRequested()) {
+            // no window and no display, the chapter draws into an offscreen framebuffer instead
+            headless = HeadlessContext.create(windowWidth, windowHeight);
+            return;
+        }
+
         // Setup an error callback. The default implementation
         // will print the error message in System.err.
         GLFWErrorCallback.createPrint(System.err).set();
@@ -228,35 +240,37 @@ public class Shaders implements Runner {
         GL.createCapabilities();
 
         // Set the clear color
-        glClearColor(0.2f, 0.3f, 0.3f, 1.0f);
+        gl.clearColor(0.2f, 0.3f, 0.3f, 1.0f);
 
         createShaders();
         createVertexData();
 
         // Run the rendering loop until the user has attempted to close
         // the window or has pressed the ESCAPE key.
-        while ( !glfwWindowShouldClose(window) ) {
+        RenderLoop loop = headless != null ? new RenderLoop(headless) : new RenderLoop(window);
+        loop.run(() -> { }, this::render);
+    }
 
-            // render
-            // ------
-            glClearColor(0.2f, 0.3f, 0.3f, 1.0f);
-            glClear(GL_COLOR_BUFFER_BIT); // clear the framebuffer
+    private void render() {
+        // render
+        // ------
+        gl.clearColor(0.2f, 0.3f, 0.3f, 1.0f);
+        glClear(GL_COLOR_BUFFER_BIT); // clear the framebuffer
 
-            glUseProgram(shaderProgram.getHandle());
-            glBindVertexArray(vao);
-            //glDrawArrays(GL_TRIANGLES, 0, 6);
-            glDrawElements(GL_TRIANGLES, indices.length,GL_UNSIGNED_INT, 0);
-            glBindVertexArray(0); // no need to unbind it every time
+        gl.useProgram(shaderProgram.getHandle());
+        gl.bindVertexArray(vao);
+        //glDrawArrays(GL_TRIANGLES, 0, 6);
+        glDrawElements(GL_TRIANGLES, indices.length,GL_UNSIGNED_INT, 0);
+    }
 
+    private void destroy() {
+        System.out.print(gl.summary());
 
-            glfwSwapBuffers(window); // swap the color buffers
-            // Poll for window events. The key callback above will only be
-            // invoked during this call.
-            glfwPollEvents();
+        if (headless != null) {
+            headless.destroy();
+            return;
         }
-    }
 
-    private void destroy() {
         // Free the window callbacks and destroy the window
         glfwFreeCallbacks(window);
         glfwDestroyWindow(window);
@@ -4,58 +4,33 @@ import com.google.common.base.Charsets;
 import com.google.common.io.CharStreams;
 import learnopengl.Runner;
 import learnopengl.chapter4.Textures;
+import learnopengl.utils.GLState;
+import learnopengl.utils.HeadlessContext;
+import learnopengl.utils.RenderLoop;
 import learnopengl.utils.Shader;
-import org.joml.Matrix4f;
-import org.lwjgl.BufferUtils;
+import learnopengl.utils.TextureLoader;
+import learnopengl.utils.UniformUploader;
+import learnopengl.utils.VertexFormat;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.opengl.GL;
-import org.lwjgl.stb.STBImage;
 import org.lwjgl.system.MemoryStack;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.URISyntaxException;
-import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.nio.file.Paths;
-import java.util.Objects;
 
 import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.glfw.GLFW.glfwSetErrorCallback;
 import static org.lwjgl.opengl.GL11.GL_COLOR_BUFFER_BIT;
-import static org.lwjgl.opengl.GL11.GL_FLOAT;
-import static org.lwjgl.opengl.GL11.GL_LINEAR;
-import static org.lwjgl.opengl.GL11.GL_REPEAT;
-import static org.lwjgl.opengl.GL11.GL_RGB;
-import static org.lwjgl.opengl.GL11.GL_RGBA;
 import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
-import static org.lwjgl.opengl.GL11.GL_TEXTURE_MAG_FILTER;
-import static org.lwjgl.opengl.GL11.GL_TEXTURE_MIN_FILTER;
-import static org.lwjgl.opengl.GL11.GL_TEXTURE_WRAP_S;
-import static org.lwjgl.opengl.GL11.GL_TEXTURE_WRAP_T;
 import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
-import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
 import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
-import static org.lwjgl.opengl.GL11.glBindTexture;
 import static org.lwjgl.opengl.GL11.glClear;
-import static org.lwjgl.opengl.GL11.glClearColor;
 import static org.lwjgl.opengl.GL11.glDrawElements;
-import static org.lwjgl.opengl.GL11.glGenTextures;
-import static org.lwjgl.opengl.GL11.glTexImage2D;
-import static org.lwjgl.opengl.GL11.glTexParameteri;
-import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
-import static org.lwjgl.opengl.GL13.GL_TEXTURE1;
-import static org.lwjgl.opengl.GL13.glActiveTexture;
 import static org.lwjgl.opengl.GL15.*;
-import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
-import static org.lwjgl.opengl.GL20.glGetUniformLocation;
-import static org.lwjgl.opengl.GL20.glUniform1i;
-import static org.lwjgl.opengl.GL20.glUseProgram;
-import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
 import static org.lwjgl.opengl.GL30.*;
 import static org.lwjgl.opengl.GL30.glBindVertexArray;
 import static org.lwjgl.system.MemoryStack.stackPush;
@@ -65,17 +40,25 @@ public class Transformations implements Runner {
 
     // The window handle
     private long window;
+    private HeadlessContext headless;
+    private RenderLoop loop;
 
     private int windowWidth = 800;
     private int windowHeight = 600;
 
-    final int BYTES_PER_FLOAT = 4;
+    // filters redundant binds and state changes in the render loop
+    private final GLState gl = new GLState();
 
     final int VERTEX_POS_SIZE   = 3; // x, y
     final int VERTEX_COLOR_SIZE = 4; // r, g, b, and a
     final int VERTEX_UV_SIZE = 2; // u,v
 
-    final int VERTEX_STRIDE =  ( BYTES_PER_FLOAT * (VERTEX_POS_SIZE + VERTEX_COLOR_SIZE + VERTEX_UV_SIZE));
+    // positions as normalized shorts, colors as normalized bytes and uvs as half floats: 16 bytes a vertex instead of 36
+    final VertexFormat VERTEX_FORMAT = new VertexFormat.Builder()
+            .add(0, VERTEX_POS_SIZE, VertexFormat.Type.SHORT_NORM)
+            .add(1, VERTEX_COLOR_SIZE, VertexFormat.Type.UNSIGNED_BYTE_NORM)
+            .add(2, VERTEX_UV_SIZE, VertexFormat.Type.HALF_FLOAT)
+            .build();
 
     private int vbo;
     private int vao;
@@ -87,6 +70,10 @@ public class Transformations implements Runner {
     private Shader shaderProgram;
     private int texture1;
     private int texture2;
+    private TextureLoader textures;
+
+    private UniformUploader uniforms;
+    private int transformLoc;
 
     public void run() {
         init();
@@ -95,6 +82,12 @@ public class Transformations implements Runner {
     }
 
     private void init() {
+        if (HeadlessContext.isRequested()) {
+            // no window and no display, the chapter draws into an offscreen framebuffer instead
+            headless = HeadlessContext.create(windowWidth, windowHeight);
+            return;
+        }
+
         // Setup an error callback. The default implementation
         // will print the error message in System.err.
         GLFWErrorCallback.createPrint(System.err).set();
@@ -161,6 +154,8 @@ public class Transformations implements Runner {
         }
 
         this.shaderProgram = Shader.createShader(vs, null, fs);
+        this.transformLoc = shaderProgram.getUniformLocation("transform");
+        this.uniforms = new UniformUploader(1, shaderProgram);
     }
 
     private void createVertexData() {
@@ -185,22 +180,13 @@ public class Transformations implements Runner {
             glBindVertexArray(vao);
 
             glBindBuffer(GL_ARRAY_BUFFER, vbo);
-            glBufferData(GL_ARRAY_BUFFER, vertices, GL_STATIC_DRAW);
+            glBufferData(GL_ARRAY_BUFFER, VERTEX_FORMAT.pack(vertices), GL_STATIC_DRAW);
 
             glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ebo);
             glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
 
-            // position attribute
-            glVertexAttribPointer(0, VERTEX_POS_SIZE, GL_FLOAT, false, VERTEX_STRIDE, 0);
-            glEnableVertexAttribArray(0);
-
-            // color attribute
-            glVertexAttribPointer(1, VERTEX_COLOR_SIZE, GL_FLOAT, false, VERTEX_STRIDE, VERTEX_POS_SIZE * BYTES_PER_FLOAT);
-            glEnableVertexAttribArray(1);
-
-            // texture coord attribute
-            glVertexAttribPointer(2, VERTEX_UV_SIZE, GL_FLOAT, false, VERTEX_STRIDE, (VERTEX_POS_SIZE + VERTEX_COLOR_SIZE) * BYTES_PER_FLOAT);
-            glEnableVertexAttribArray(2);
+            // position, color and texture coord attributes
+            VERTEX_FORMAT.setup();
 
             // note that this is allowed, the call to glVertexAttribPointer registered VBO as the vertex attribute's bound vertex buffer object so afterwards we can safely unbind
             glBindBuffer(GL_ARRAY_BUFFER, 0);
@@ -210,69 +196,14 @@ public class Transformations implements Runner {
     }
 
     private void createTextures() {
-        this.texture1 = glGenTextures();
-        {
-            glBindTexture(GL_TEXTURE_2D, texture1);
-            // set the texture wrapping parameters
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);    // set texture wrapping to GL_REPEAT (default wrapping method)
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
-            // set texture filtering parameters
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-
-            STBImage.stbi_set_flip_vertically_on_load(true);
-            IntBuffer w1 = BufferUtils.createIntBuffer(1);
-            IntBuffer h1 = BufferUtils.createIntBuffer(1);
-            IntBuffer d1 = BufferUtils.createIntBuffer(1);
-            String path = null;
-            try {
-                path = Paths.get(getClass().getClassLoader().getResource("images/container.jpg").toURI()).toAbsolutePath().toString();
-            } catch (URISyntaxException e) {
-                e.printStackTrace();
-            }
-            ByteBuffer image1 = STBImage.stbi_load(path, w1, h1, d1, 0);
-            if (Objects.nonNull(image1) && image1.capacity() > 0) {
-                glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB, w1.get(), h1.get(), 0, GL_RGB, GL_UNSIGNED_BYTE, image1);
-                glGenerateMipmap(GL_TEXTURE_2D);
-            } else {
-                System.out.println("Failed to load texture");
-            }
-            STBImage.stbi_image_free(image1);
-        }
+        // decoded on worker threads, both handles show a placeholder until the pixels have been uploaded
+        this.textures = new TextureLoader(gl);
+        this.texture1 = textures.load("images/container.jpg");
+        this.texture2 = textures.load("images/awesomeface.png");
 
-        this.texture2 = glGenTextures();
-        {
-            glBindTexture(GL_TEXTURE_2D, texture2);
-            // set the texture wrapping parameters
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);    // set texture wrapping to GL_REPEAT (default wrapping method)
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
-            // set texture filtering parameters
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-
-            IntBuffer w2 = BufferUtils.createIntBuffer(1);
-            IntBuffer h2 = BufferUtils.createIntBuffer(1);
-            IntBuffer d2 = BufferUtils.createIntBuffer(1);
-            String path2 = null;
-            try {
-                path2 = Paths.get(getClass().getClassLoader().getResource("images/awesomeface.png").toURI()).toAbsolutePath().toString();
-            } catch (URISyntaxException e) {
-                e.printStackTrace();
-            }
-            ByteBuffer image2 = STBImage.stbi_load(path2, w2, h2, d2, 0);
-            if (Objects.nonNull(image2) && image2.capacity() > 0) {
-                glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB, w2.get(), h2.get(), 0, GL_RGBA, GL_UNSIGNED_BYTE, image2);
-                glGenerateMipmap(GL_TEXTURE_2D);
-            } else {
-                System.out.println("Failed to load texture");
-            }
-
-            STBImage.stbi_image_free(image2);
-        }
-
-        glUseProgram(shaderProgram.getHandle());
-        glUniform1i(glGetUniformLocation(shaderProgram.getHandle(), "texture1"), 0);
-        glUniform1i(glGetUniformLocation(shaderProgram.getHandle(), "texture2"), 1);
+        gl.useProgram(shaderProgram.getHandle());
+        shaderProgram.setInt("texture1", 0);
+        shaderProgram.setInt("texture2", 1);
 
     }
 
@@ -280,7 +211,7 @@ public class Transformations implements Runner {
         GL.createCapabilities();
 
         // Set the clear color
-        glClearColor(0.2f, 0.3f, 0.3f, 1.0f);
+        gl.clearColor(0.2f, 0.3f, 0.3f, 1.0f);
 
         createShaders();
         createVertexData();
@@ -288,42 +219,46 @@ public class Transformations implements Runner {
 
         // Run the rendering loop until the user has attempted to close
         // the window or has pressed the ESCAPE key.
-        while ( !glfwWindowShouldClose(window) ) {
+        loop = headless != null ? new RenderLoop(headless) : new RenderLoop(window);
+        loop.run(this::update, this::render);
+    }
 
-            // render
-            // ------
-            glClearColor(0.2f, 0.3f, 0.3f, 1.0f);
-            glClear(GL_COLOR_BUFFER_BIT); // clear the framebuffer
+    private void update() {
+        // finish any texture uploads that are ready, within a small per-frame budget
+        textures.update(TextureLoader.DEFAULT_FRAME_BUDGET_NANOS);
+    }
 
+    private void render() {
+        // render
+        // ------
+        gl.clearColor(0.2f, 0.3f, 0.3f, 1.0f);
+        glClear(GL_COLOR_BUFFER_BIT); // clear the framebuffer
 
-            glActiveTexture(GL_TEXTURE0);
-            glBindTexture(GL_TEXTURE_2D, texture1);
-            glActiveTexture(GL_TEXTURE1);
-            glBindTexture(GL_TEXTURE_2D, texture2);
+        gl.bindTexture(0, GL_TEXTURE_2D, texture1);
+        gl.bindTexture(1, GL_TEXTURE_2D, texture2);
 
+        gl.useProgram(shaderProgram.getHandle());
 
-            glUseProgram(shaderProgram.getHandle());
+        uniforms.beginFrame();
+        uniforms.getModel().identity().rotate((float) loop.getTime(), 0.0f, 0.0f, 1.0f);
 
-            FloatBuffer fb = BufferUtils.createFloatBuffer(16);
-            int matrixLoc = glGetUniformLocation(shaderProgram.getHandle(), "transform");
-            new Matrix4f().identity().rotate((float) glfwGetTime(), 0.0f, 0.0f, 1.0f).get(fb);
+        uniforms.uniformMatrix4(transformLoc, uniforms.getModel());
 
-            glUniformMatrix4fv(matrixLoc, false, fb);
+        gl.bindVertexArray(vao);
+        //glDrawArrays(GL_TRIANGLES, 0, 6);
+        glDrawElements(GL_TRIANGLES, indices.length,GL_UNSIGNED_INT, 0);
+    }
 
-            glBindVertexArray(vao);
-            //glDrawArrays(GL_TRIANGLES, 0, 6);
-            glDrawElements(GL_TRIANGLES, indices.length,GL_UNSIGNED_INT, 0);
-            glBindVertexArray(0); // no need to unbind it every time
+    private void destroy() {
+        System.out.print(gl.summary());
 
+        textures.destroy();
 
-            glfwSwapBuffers(window); // swap the color buffers
-            // Poll for window events. The key callback above will only be
-            // invoked during this call.
-            glfwPollEvents();
+        if (headless != null) {
+            headless.destroy();
+            return;
         }
-    }
 
-    private void destroy() {
         // Free the window callbacks and destroy the window
         glfwFreeCallbacks(window);
         glfwDestroyWindow(window);
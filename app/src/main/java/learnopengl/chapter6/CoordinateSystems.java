@@ -4,90 +4,156 @@ import com.google.common.base.Charsets;
 import com.google.common.io.CharStreams;
 import learnopengl.Runner;
 import learnopengl.chapter5.Transformations;
+import learnopengl.utils.FrustumCuller;
+import learnopengl.utils.GLState;
+import learnopengl.utils.GpuProfiler;
+import learnopengl.utils.HeadlessContext;
+import learnopengl.utils.Mesh;
+import learnopengl.utils.RenderLoop;
+import learnopengl.utils.RenderQueue;
 import learnopengl.utils.Shader;
+import learnopengl.utils.ShaderBatch;
+import learnopengl.utils.StreamBuffer;
+import learnopengl.utils.TextureLoader;
+import learnopengl.utils.TransformStage;
+import learnopengl.utils.TransformStore;
+import learnopengl.utils.TripleBuffer;
+import learnopengl.utils.UniformUploader;
+import learnopengl.utils.UpdateThread;
+import learnopengl.utils.VertexFormat;
 import org.joml.Matrix4f;
-import org.joml.Vector3f;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.opengl.GL;
-import org.lwjgl.stb.STBImage;
 import org.lwjgl.system.MemoryStack;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.URISyntaxException;
-import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.GL_COLOR_BUFFER_BIT;
 import static org.lwjgl.opengl.GL11.GL_FLOAT;
-import static org.lwjgl.opengl.GL11.GL_LINEAR;
-import static org.lwjgl.opengl.GL11.GL_REPEAT;
-import static org.lwjgl.opengl.GL11.GL_RGB;
-import static org.lwjgl.opengl.GL11.GL_RGBA;
 import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
-import static org.lwjgl.opengl.GL11.GL_TEXTURE_MAG_FILTER;
-import static org.lwjgl.opengl.GL11.GL_TEXTURE_MIN_FILTER;
-import static org.lwjgl.opengl.GL11.GL_TEXTURE_WRAP_S;
-import static org.lwjgl.opengl.GL11.GL_TEXTURE_WRAP_T;
 import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
-import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
-import static org.lwjgl.opengl.GL11.glBindTexture;
 import static org.lwjgl.opengl.GL11.glClear;
-import static org.lwjgl.opengl.GL11.glClearColor;
-import static org.lwjgl.opengl.GL11.glGenTextures;
-import static org.lwjgl.opengl.GL11.glTexImage2D;
-import static org.lwjgl.opengl.GL11.glTexParameteri;
-import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
-import static org.lwjgl.opengl.GL13.GL_TEXTURE1;
-import static org.lwjgl.opengl.GL13.glActiveTexture;
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
-import static org.lwjgl.opengl.GL20.glGetUniformLocation;
-import static org.lwjgl.opengl.GL20.glUniform1i;
-import static org.lwjgl.opengl.GL20.glUniformMatrix4fv;
-import static org.lwjgl.opengl.GL20.glUseProgram;
 import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
 import static org.lwjgl.opengl.GL30.*;
 import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
 import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memCopy;
 
 public class CoordinateSystems implements Runner {
 
     // The window handle
     private long window;
+    private HeadlessContext headless;
+    private RenderLoop loop;
 
     private int windowWidth = 800;
     private int windowHeight = 600;
 
+    // filters redundant binds and state changes in the render loop
+    private final GLState gl = new GLState();
+
     final int BYTES_PER_FLOAT = 4;
 
     final int VERTEX_POS_SIZE   = 3; // x, y
     final int VERTEX_COLOR_SIZE = 4; // r, g, b, and a
     final int VERTEX_UV_SIZE = 2; // u,v
 
-    final int VERTEX_STRIDE =  ( BYTES_PER_FLOAT * (VERTEX_POS_SIZE + VERTEX_COLOR_SIZE + VERTEX_UV_SIZE));
+    // positions as normalized shorts, colors as normalized bytes and uvs as half floats: 16 bytes a vertex instead of 36
+    final VertexFormat VERTEX_FORMAT = new VertexFormat.Builder()
+            .add(0, VERTEX_POS_SIZE, VertexFormat.Type.SHORT_NORM)
+            .add(1, VERTEX_COLOR_SIZE, VertexFormat.Type.UNSIGNED_BYTE_NORM)
+            .add(2, VERTEX_UV_SIZE, VertexFormat.Type.HALF_FLOAT)
+            .build();
+
+    final int INSTANCE_MATRIX_LOCATION = 3; // mat4 attribute, occupies locations 3..6
+    final int INSTANCE_STRIDE = BYTES_PER_FLOAT * 16;
 
     private int vbo;
     private int vao;
     private int ebo;
+    private StreamBuffer instanceStream;
+
+    // -Dlearnopengl.cubes=100000 scales the field, -Dlearnopengl.instanced=true starts on the instanced path.
+    // Press I at runtime to switch between the two paths.
+    private final int cubeCount;
+    private boolean instanced;
+
+    private double frameTimeAccumulator;
+    private int framesSinceTitleUpdate;
 
     private float[] vertices;
+    private Mesh cubeMesh;
 
     private Shader shaderProgram;
+    private ShaderBatch shaders;
+    private CompletableFuture<Shader> pendingProgram;
     private int texture1;
     private int texture2;
-    private ArrayList<Vector3f> cubePositions;
+    private TextureLoader textures;
+    private TransformStore cubes;
+
+    private UniformUploader uniforms;
+    private RenderQueue renderQueue;
+    private RenderQueue.Backend renderBackend;
+    private FrustumCuller culler;
+    private TransformStage transforms;
+    private final GpuProfiler profiler = GpuProfiler.fromSystemProperties();
+    private final Matrix4f viewProjection = new Matrix4f();
+
+    // -Dlearnopengl.updateHz=120 moves the camera, culling and model matrices onto their own thread at that rate,
+    // render then draws whichever snapshot is newest; without it they are simulated at the start of every frame
+    private final double updateRate = UpdateThread.requestedRate();
+    private UpdateThread<Snapshot> updateThread;
+    private Snapshot snapshot; // what render() draws
+
+    private int modelLoc;
+    private int viewLoc;
+    private int projectionLoc;
+    private int instancedLoc;
+
+    // everything render() needs from one simulation step, filled completely each step and only read after that
+    private static class Snapshot {
+        final Matrix4f view = new Matrix4f();
+        final Matrix4f projection = new Matrix4f();
+        float camX;
+        float camZ;
+        final int[] visible;
+        int visibleCount;
+        final FloatBuffer matrices; // the visible cubes' model matrices, in the order of visible
+
+        Snapshot(int capacity) {
+            this.visible = new int[capacity];
+            this.matrices = BufferUtils.createFloatBuffer(capacity * UniformUploader.MATRIX_FLOATS);
+        }
+    }
+
+    // the update thread has its own, disabled profiler; GpuProfiler belongs to the GL thread
+    private static final GpuProfiler NO_PROFILER = new GpuProfiler(false);
+
+    public CoordinateSystems() {
+        this(Integer.getInteger("learnopengl.cubes", 10), Boolean.getBoolean("learnopengl.instanced"));
+    }
+
+    public CoordinateSystems(int cubeCount, boolean instanced) {
+        this.cubeCount = Math.max(1, cubeCount);
+        this.instanced = instanced;
+    }
 
     public void run() {
         init();
@@ -96,6 +162,12 @@ public class CoordinateSystems implements Runner {
     }
 
     private void init() {
+        if (HeadlessContext.isRequested()) {
+            // no window and no display, the chapter draws into an offscreen framebuffer instead
+            headless = HeadlessContext.create(windowWidth, windowHeight);
+            return;
+        }
+
         // Setup an error callback. The default implementation
         // will print the error message in System.err.
         GLFWErrorCallback.createPrint(System.err).set();
@@ -118,6 +190,8 @@ public class CoordinateSystems implements Runner {
         glfwSetKeyCallback(window, (window, key, scancode, action, mods) -> {
             if ( key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE )
                 glfwSetWindowShouldClose(window, true); // We will detect this in the rendering loop
+            if ( key == GLFW_KEY_I && action == GLFW_RELEASE )
+                instanced = !instanced; // compare one draw per cube against a single instanced draw
         });
 
         // Get the thread stack and push a new frame
@@ -161,7 +235,22 @@ public class CoordinateSystems implements Runner {
             fs = null;
         }
 
-        this.shaderProgram = Shader.createShader(vs, null, fs);
+        // compiled in the background while the textures start loading, finishShaders() picks the program up
+        this.shaders = new ShaderBatch();
+        this.pendingProgram = shaders.add("coordinatesystems", vs, null, fs);
+        shaders.submit();
+    }
+
+    private void finishShaders() {
+        shaders.finish();
+        this.shaderProgram = pendingProgram.join();
+        this.modelLoc = shaderProgram.getUniformLocation("model");
+        this.viewLoc = shaderProgram.getUniformLocation("view");
+        this.projectionLoc = shaderProgram.getUniformLocation("projection");
+        this.instancedLoc = shaderProgram.getUniformLocation("instanced");
+        gl.useProgram(shaderProgram.getHandle());
+        shaderProgram.setInt("texture1", 0);
+        shaderProgram.setInt("texture2", 1);
     }
 
     private void createVertexData() {
@@ -211,183 +300,268 @@ public class CoordinateSystems implements Runner {
         };
 
 
+        // the 36 listed vertices weld down to 16 unique ones, drawn through a vertex cache friendly index buffer
+        cubeMesh = new Mesh.Builder(VERTEX_POS_SIZE + VERTEX_COLOR_SIZE + VERTEX_UV_SIZE)
+                .triangles(vertices)
+                .build();
+        System.out.println("cube mesh: " + cubeMesh.summary());
+
         vao = glGenVertexArrays();
         vbo = glGenBuffers();
+        ebo = glGenBuffers();
         {
             glBindVertexArray(vao);
 
             glBindBuffer(GL_ARRAY_BUFFER, vbo);
-            glBufferData(GL_ARRAY_BUFFER, vertices, GL_STATIC_DRAW);
-
-            // position attribute
-            glVertexAttribPointer(0, VERTEX_POS_SIZE, GL_FLOAT, false, VERTEX_STRIDE, 0);
-            glEnableVertexAttribArray(0);
-
-            // color attribute
-            glVertexAttribPointer(1, VERTEX_COLOR_SIZE, GL_FLOAT, false, VERTEX_STRIDE, VERTEX_POS_SIZE * BYTES_PER_FLOAT);
-            glEnableVertexAttribArray(1);
-
-            // texture coord attribute
-            glVertexAttribPointer(2, VERTEX_UV_SIZE, GL_FLOAT, false, VERTEX_STRIDE, (VERTEX_POS_SIZE + VERTEX_COLOR_SIZE) * BYTES_PER_FLOAT);
-            glEnableVertexAttribArray(2);
+            glBufferData(GL_ARRAY_BUFFER, VERTEX_FORMAT.pack(cubeMesh.getVertices()), GL_STATIC_DRAW);
+
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ebo);
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, cubeMesh.getIndices(), GL_STATIC_DRAW);
+
+            // position, color and texture coord attributes
+            VERTEX_FORMAT.setup();
+
+            // per-instance model matrices, one vec4 column per attribute location, advanced once per instance;
+            // they are rewritten every frame, so they live in a ring of per-frame regions
+            instanceStream = new StreamBuffer(gl, GL_ARRAY_BUFFER, cubeCount * INSTANCE_STRIDE);
+            System.out.println("instance matrices: " + (instanceStream.isPersistent() ? "persistent mapped" : "orphaned") + " stream buffer");
+            setInstanceMatrixOffset(0);
+            for (int column = 0; column < 4; column++) {
+                int location = INSTANCE_MATRIX_LOCATION + column;
+                glEnableVertexAttribArray(location);
+                glVertexAttribDivisor(location, 1);
+            }
 
             // note that this is allowed, the call to glVertexAttribPointer registered VBO as the vertex attribute's bound vertex buffer object so afterwards we can safely unbind
-            glBindBuffer(GL_ARRAY_BUFFER, 0);
+            gl.bindBuffer(GL_ARRAY_BUFFER, 0);
 
             glBindVertexArray(0);
 
-            this.cubePositions = new ArrayList<>();
-            cubePositions.add(new Vector3f( 0.0f,  0.0f,  0.0f));
-            cubePositions.add(new Vector3f( 2.0f,  5.0f, -15.0f));
-            cubePositions.add(new Vector3f(-1.5f, -2.2f, -2.5f));
-            cubePositions.add(new Vector3f(-3.8f, -2.0f, -12.3f));
-            cubePositions.add(new Vector3f( 2.4f, -0.4f, -3.5f));
-            cubePositions.add(new Vector3f(-1.7f,  3.0f, -7.5f));
-            cubePositions.add(new Vector3f( 1.3f, -2.0f, -2.5f));
-            cubePositions.add(new Vector3f( 1.5f,  2.0f, -2.5f));
-            cubePositions.add(new Vector3f( 1.5f,  0.2f, -1.5f));
-            cubePositions.add(new Vector3f(-1.3f,  1.0f, -1.5f));
-        }
-    }
-
-    private void createTextures() {
-        this.texture1 = glGenTextures();
-        {
-            glBindTexture(GL_TEXTURE_2D, texture1);
-            // set the texture wrapping parameters
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);    // set texture wrapping to GL_REPEAT (default wrapping method)
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
-            // set texture filtering parameters
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-
-            STBImage.stbi_set_flip_vertically_on_load(true);
-            IntBuffer w1 = BufferUtils.createIntBuffer(1);
-            IntBuffer h1 = BufferUtils.createIntBuffer(1);
-            IntBuffer d1 = BufferUtils.createIntBuffer(1);
-            String path = null;
-            try {
-                path = Paths.get(getClass().getClassLoader().getResource("images/container.jpg").toURI()).toAbsolutePath().toString();
-            } catch (URISyntaxException e) {
-                e.printStackTrace();
+            this.cubes = new TransformStore(cubeCount);
+            cubes.create( 0.0f,  0.0f,  0.0f);
+            cubes.create( 2.0f,  5.0f, -15.0f);
+            cubes.create(-1.5f, -2.2f, -2.5f);
+            cubes.create(-3.8f, -2.0f, -12.3f);
+            cubes.create( 2.4f, -0.4f, -3.5f);
+            cubes.create(-1.7f,  3.0f, -7.5f);
+            cubes.create( 1.3f, -2.0f, -2.5f);
+            cubes.create( 1.5f,  2.0f, -2.5f);
+            cubes.create( 1.5f,  0.2f, -1.5f);
+            cubes.create(-1.3f,  1.0f, -1.5f);
+
+            // anything past the original ten is scattered through a cube that grows with the count
+            Random random = new Random(42);
+            float extent = Math.max(15.0f, 2.0f * (float) Math.cbrt(cubeCount));
+            while (cubes.size() < cubeCount) {
+                cubes.create(
+                        (random.nextFloat() - 0.5f) * extent,
+                        (random.nextFloat() - 0.5f) * extent,
+                        (random.nextFloat() - 0.5f) * extent);
             }
-            ByteBuffer image1 = STBImage.stbi_load(path, w1, h1, d1, 0);
-            if (Objects.nonNull(image1) && image1.capacity() > 0) {
-                glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB, w1.get(), h1.get(), 0, GL_RGB, GL_UNSIGNED_BYTE, image1);
-                glGenerateMipmap(GL_TEXTURE_2D);
-            } else {
-                System.out.println("Failed to load texture");
+            while (cubes.size() > cubeCount) {
+                cubes.remove(cubes.handleAt(cubes.size() - 1));
             }
-            STBImage.stbi_image_free(image1);
-        }
-
-        this.texture2 = glGenTextures();
-        {
-            glBindTexture(GL_TEXTURE_2D, texture2);
-            // set the texture wrapping parameters
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);    // set texture wrapping to GL_REPEAT (default wrapping method)
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
-            // set texture filtering parameters
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-
-            IntBuffer w2 = BufferUtils.createIntBuffer(1);
-            IntBuffer h2 = BufferUtils.createIntBuffer(1);
-            IntBuffer d2 = BufferUtils.createIntBuffer(1);
-            String path2 = null;
-            try {
-                path2 = Paths.get(getClass().getClassLoader().getResource("images/awesomeface.png").toURI()).toAbsolutePath().toString();
-            } catch (URISyntaxException e) {
-                e.printStackTrace();
-            }
-            ByteBuffer image2 = STBImage.stbi_load(path2, w2, h2, d2, 0);
-            if (Objects.nonNull(image2) && image2.capacity() > 0) {
-                glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB, w2.get(), h2.get(), 0, GL_RGBA, GL_UNSIGNED_BYTE, image2);
-                glGenerateMipmap(GL_TEXTURE_2D);
-            } else {
-                System.out.println("Failed to load texture");
+            // The axis is normalized, as glm::rotate does in the original chapter. Passing it to JOML as given
+            // used to stretch and shear the cubes a little, since (1, .3, .5) is not unit length.
+            for (int i = 0; i < cubes.size(); i++) {
+                float angle = 20.0f * i;
+                cubes.setRotation(cubes.handleAt(i), (float) Math.toRadians(angle), 1.0f, .3f, .5f);
             }
 
-            STBImage.stbi_image_free(image2);
-        }
+            this.uniforms = new UniformUploader(0, shaderProgram); // only view and projection go through it
+            this.renderQueue = new RenderQueue(cubes.size());
+            this.renderBackend = new RenderQueue.GLBackend(gl);
+
+            // a unit cube fits in a sphere of radius sqrt(3) / 2 whichever way it is rotated
+            this.culler = new FrustumCuller(cubes.size());
+            cubes.forEachPosition((index, x, y, z) -> culler.addSphere(x, y, z, 0.866f));
 
-        glUseProgram(shaderProgram.getHandle());
-        glUniform1i(glGetUniformLocation(shaderProgram.getHandle(), "texture1"), 0);
-        glUniform1i(glGetUniformLocation(shaderProgram.getHandle(), "texture2"), 1);
+            // model matrices are built from the store on a fork-join pool once there are enough cubes to split
+            this.transforms = new TransformStage(cubes.size());
+            for (int i = 0; i < cubes.size(); i++) {
+                transforms.add(cubes, i, 0.0f);
+            }
+        }
+    }
 
+    private void createTextures() {
+        // decoded on worker threads, both handles show a placeholder until the pixels have been uploaded
+        this.textures = new TextureLoader(gl);
+        this.texture1 = textures.load("images/container.jpg");
+        this.texture2 = textures.load("images/awesomeface.png");
     }
 
     private void loop() {
         GL.createCapabilities();
 
         // Set the clear color
-        glClearColor(0.2f, 0.3f, 0.3f, 1.0f);
-        glEnable(GL_DEPTH_TEST);
+        gl.clearColor(0.2f, 0.3f, 0.3f, 1.0f);
+        gl.enable(GL_DEPTH_TEST);
 
         createShaders();
-        createVertexData();
         createTextures();
+        finishShaders();
+        createVertexData();
 
         // Run the rendering loop until the user has attempted to close
         // the window or has pressed the ESCAPE key.
-        while ( !glfwWindowShouldClose(window) ) {
-
-            // render
-            // ------
-            glClearColor(0.2f, 0.3f, 0.3f, 1.0f);
-            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT); // also clear the depth buffer now!
-
-            glActiveTexture(GL_TEXTURE0);
-            glBindTexture(GL_TEXTURE_2D, texture1);
-            glActiveTexture(GL_TEXTURE1);
-            glBindTexture(GL_TEXTURE_2D, texture2);
-
-            glUseProgram(shaderProgram.getHandle());
-            glBindVertexArray(vao);
+        loop = headless != null ? new RenderLoop(headless) : new RenderLoop(window);
+        if (updateRate > 0.0) {
+            // the culler, the transform stage and viewProjection belong to the update thread from here on
+            TripleBuffer<Snapshot> snapshots = new TripleBuffer<>(() -> new Snapshot(cubes.size()));
+            updateThread = new UpdateThread<>(snapshots, updateRate, (next, time) -> simulate(next, (float) time, NO_PROFILER));
+            updateThread.start();
+            System.out.printf("simulating on an update thread at %.0f Hz%n", updateRate);
+        } else {
+            snapshot = new Snapshot(cubes.size());
+        }
+        try {
+            loop.run(this::update, this::render);
+        } finally {
+            if (updateThread != null) {
+                updateThread.stop();
+                System.out.print(updateThread.summary());
+            }
+        }
+    }
 
-            float radius = 10.0f;
-            float camX = (float) Math.sin(1.0f*glfwGetTime()) * radius;
-            float camZ = (float) Math.cos(1.0f*glfwGetTime()) * radius;
+    // GL side work that has to happen before drawing, and the simulation when it has no thread of its own
+    private void update() {
+        profiler.beginFrame();
 
-            FloatBuffer view = BufferUtils.createFloatBuffer(16);
-            int viewLoc = glGetUniformLocation(shaderProgram.getHandle(), "view");
-            new Matrix4f()
-                    .lookAt(new Vector3f(camX, 0.0f, camZ), new Vector3f(0.0f), new Vector3f(0.0f, 1.0f, 0.0f))
-                    .get(view);
+        // finish any texture uploads that are ready, within a small per-frame budget
+        textures.update(TextureLoader.DEFAULT_FRAME_BUDGET_NANOS);
 
+        uniforms.beginFrame();
 
-            FloatBuffer projection = BufferUtils.createFloatBuffer(16);
-            int projectionLoc = glGetUniformLocation(shaderProgram.getHandle(), "projection");
-            new Matrix4f().identity()
-                    .perspective((float) Math.toRadians(45.0), (float)windowWidth/(float)windowHeight, 0.1f, 100.0f)
-                    .get(projection);
+        if (updateThread != null) {
+            snapshot = updateThread.latest();
+        } else {
+            simulate(snapshot, (float) loop.getTime(), profiler);
+        }
+    }
 
-            glUniformMatrix4fv(viewLoc, false, view);
-            glUniformMatrix4fv(projectionLoc, false, projection);
+    // everything up to the draws runs on the CPU only: camera, culling and the model matrices
+    private void simulate(Snapshot next, float time, GpuProfiler profiler) {
+        float radius = 10.0f;
+        next.camX = (float) Math.sin(1.0f*time) * radius;
+        next.camZ = (float) Math.cos(1.0f*time) * radius;
+
+        next.view
+                .setLookAt(next.camX, 0.0f, next.camZ, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+
+        next.projection
+                .setPerspective((float) Math.toRadians(45.0), (float)windowWidth/(float)windowHeight, 0.1f, 100.0f);
+
+        // skip everything outside the view frustum before building its model matrix
+        profiler.begin("cull");
+        culler.update(next.projection.mul(next.view, viewProjection));
+        next.visibleCount = culler.cull();
+        System.arraycopy(culler.getVisible(), 0, next.visible, 0, next.visibleCount);
+        profiler.end();
+
+        // calculate the model matrix for each visible object up front, straight into an off-heap buffer;
+        // render() only uploads and draws
+        profiler.begin("transforms");
+        transforms.compute(next.visible, next.visibleCount, time, next.matrices);
+        profiler.end();
+    }
 
-            int i = 0;
-            for (Vector3f m : cubePositions) {
-                // calculate the model matrix for each object and pass it to shader before drawing
+    private void render() {
+        gl.clearColor(0.2f, 0.3f, 0.3f, 1.0f);
+        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT); // also clear the depth buffer now!
+
+        gl.bindTexture(0, GL_TEXTURE_2D, texture1);
+        gl.bindTexture(1, GL_TEXTURE_2D, texture2);
+
+        gl.useProgram(shaderProgram.getHandle());
+        gl.bindVertexArray(vao);
+
+        uniforms.uniformMatrix4(viewLoc, snapshot.view);
+        uniforms.uniformMatrix4(projectionLoc, snapshot.projection);
+
+        profiler.begin(instanced ? "draw instanced" : "draw per cube");
+        shaderProgram.setInt(instancedLoc, instanced ? 1 : 0);
+        if (instanced) {
+            // every model matrix copied into this frame's region and a single draw call for the whole field
+            int bytes = snapshot.visibleCount * INSTANCE_STRIDE;
+            instanceStream.beginFrame();
+            long offset = instanceStream.allocate(bytes);
+            memCopy(memAddress(snapshot.matrices), instanceStream.getAddress(offset), bytes);
+            instanceStream.endWrites();
+            setInstanceMatrixOffset(offset);
+            glDrawElementsInstanced(GL_TRIANGLES, cubeMesh.getIndexCount(), cubeMesh.getIndexType(), 0, snapshot.visibleCount);
+        } else {
+            // every cube becomes a draw packet that the render queue sorts before drawing
+            int[] visible = snapshot.visible;
+            renderQueue.clear();
+            for (int v = 0; v < snapshot.visibleCount; v++) {
+                renderQueue.packet()
+                        .program(shaderProgram.getHandle())
+                        .vertexArray(vao)
+                        .texture(0, texture1)
+                        .texture(1, texture2)
+                        .model(modelLoc, snapshot.matrices, v)
+                        .depth(distance(visible[v], snapshot.camX, 0.0f, snapshot.camZ))
+                        .drawElements(GL_TRIANGLES, cubeMesh.getIndexCount(), cubeMesh.getIndexType(), 0);
+            }
+            renderQueue.execute(renderBackend);
+        }
+        profiler.end();
 
-                FloatBuffer model = BufferUtils.createFloatBuffer(16);
-                int modelLoc = glGetUniformLocation(shaderProgram.getHandle(), "model");
-                float angle = 20.0f * i++;
+        updateTitle();
+    }
 
-                new Matrix4f().identity().translate(m).rotate((float) Math.toRadians(angle), 1.0f, .3f, .5f).get(model);
-                glUniformMatrix4fv(modelLoc, false, model);
-                glDrawArrays(GL_TRIANGLES, 0, 36);
-            }
+    // points the instance matrix attributes of the bound vertex array at a region of the stream buffer
+    private void setInstanceMatrixOffset(long offset) {
+        gl.bindBuffer(GL_ARRAY_BUFFER, instanceStream.getHandle());
+        for (int column = 0; column < 4; column++) {
+            glVertexAttribPointer(INSTANCE_MATRIX_LOCATION + column, 4, GL_FLOAT, false, INSTANCE_STRIDE, offset + (long) column * 4 * BYTES_PER_FLOAT);
+        }
+    }
 
-            glBindVertexArray(0); // no need to unbind it every time
+    private float distance(int cube, float x, float y, float z) {
+        float dx = cubes.getPositionX(cube) - x;
+        float dy = cubes.getPositionY(cube) - y;
+        float dz = cubes.getPositionZ(cube) - z;
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
 
-            glfwSwapBuffers(window); // swap the color buffers
-            // Poll for window events. The key callback above will only be
-            // invoked during this call.
-            glfwPollEvents();
+    // average frame time over roughly a second, so both draw paths can be compared at a glance
+    private void updateTitle() {
+        if (headless != null) {
+            return; // no title to show it in, and the headless clock is not wall time
+        }
+        double now = glfwGetTime();
+        if (framesSinceTitleUpdate++ == 0) {
+            frameTimeAccumulator = now;
+            return;
+        }
+        double elapsed = now - frameTimeAccumulator;
+        if (elapsed >= 1.0) {
+            glfwSetWindowTitle(window, String.format("%d cubes, %d visible, %s: %.2f ms/frame",
+                    cubes.size(), snapshot.visibleCount, instanced ? "instanced" : "draw per cube", 1000.0 * elapsed / (framesSinceTitleUpdate - 1)));
+            framesSinceTitleUpdate = 0;
         }
     }
 
     private void destroy() {
+        System.out.print(gl.summary());
+        profiler.destroy();
+
+        textures.destroy();
+        cubes.free();
+        if (instanceStream.getStalls() > 0) {
+            System.out.printf("instance stream buffer waited on the GPU %d times, %.2f ms in total%n",
+                    instanceStream.getStalls(), instanceStream.getStallNanos() / 1e6);
+        }
+        instanceStream.destroy();
+
+        if (headless != null) {
+            headless.destroy();
+            return;
+        }
+
         // Free the window callbacks and destroy the window
         glfwFreeCallbacks(window);
         glfwDestroyWindow(window);
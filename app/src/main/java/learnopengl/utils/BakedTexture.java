@@ -0,0 +1,353 @@
+package learnopengl.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.system.MemoryUtil.memSlice;
+import static org.lwjgl.util.lz4.LZ4.LZ4_compressBound;
+import static org.lwjgl.util.lz4.LZ4.LZ4_compress_default;
+import static org.lwjgl.util.lz4.LZ4.LZ4_decompress_safe;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_compress;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_compressBound;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_decompress;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_getErrorName;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_isError;
+
+/**
+ * A texture with its full mip chain already computed, stored in one tightly packed pixel buffer.
+ *
+ * On disk every level is compressed separately with zstd or lz4 behind a small little endian header:
+ * <pre>
+ *  magic 'LTEX', version, width, height, channels, levels, codec, reserved      (8 ints)
+ *  per level: width, height (ints), raw size, data offset, data size (longs)     (32 bytes each)
+ *  compressed level data
+ * </pre>
+ * Files are read through a memory mapping and decompressed straight into the pixel buffer, no image decoding involved.
+ */
+public class BakedTexture {
+
+    public static final int MAGIC = 0x5845544C; // "LTEX"
+    public static final int VERSION = 1;
+
+    public static final int CODEC_NONE = 0;
+    public static final int CODEC_ZSTD = 1;
+    public static final int CODEC_LZ4 = 2;
+
+    public static final String FILE_EXTENSION = ".ltex";
+
+    static final int HEADER_BYTES = 8 * 4;
+    static final int LEVEL_ENTRY_BYTES = 2 * 4 + 3 * 8;
+    static final int MAX_LEVELS = 32;
+
+    private static final int ZSTD_LEVEL = 9;
+
+    private final int width;
+    private final int height;
+    private final int channels;
+    private final int[] levelWidths;
+    private final int[] levelHeights;
+    private final long[] levelOffsets;
+    private final ByteBuffer pixels; // allocated with memAlloc, released by free()
+
+    private BakedTexture(int width, int height, int channels, int[] levelWidths, int[] levelHeights, long[] levelOffsets, ByteBuffer pixels) {
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.levelWidths = levelWidths;
+        this.levelHeights = levelHeights;
+        this.levelOffsets = levelOffsets;
+        this.pixels = pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getLevelCount() {
+        return levelWidths.length;
+    }
+
+    public int getLevelWidth(int level) {
+        return levelWidths[level];
+    }
+
+    public int getLevelHeight(int level) {
+        return levelHeights[level];
+    }
+
+    // byte offset of a level inside getPixels()
+    public long getLevelOffset(int level) {
+        return levelOffsets[level];
+    }
+
+    public long getLevelSize(int level) {
+        return (long) levelWidths[level] * levelHeights[level] * channels;
+    }
+
+    // every level back to back, level 0 first
+    public ByteBuffer getPixels() {
+        return pixels;
+    }
+
+    public void free() {
+        memFree(pixels);
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------//
+    //  baking                                                                                                         //
+    // ---------------------------------------------------------------------------------------------------------------//
+
+    public static int levelCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    // copies level 0 out of the decoded image and box filters the rest of the chain on the CPU
+    public static BakedTexture fromPixels(ByteBuffer image, int width, int height, int channels) {
+        int levels = levelCount(width, height);
+        int[] widths = new int[levels];
+        int[] heights = new int[levels];
+        long[] offsets = new long[levels];
+
+        long total = 0;
+        for (int level = 0, w = width, h = height; level < levels; level++, w = Math.max(1, w / 2), h = Math.max(1, h / 2)) {
+            widths[level] = w;
+            heights[level] = h;
+            offsets[level] = total;
+            total += (long) w * h * channels;
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Texture too large to bake: " + width + "x" + height);
+        }
+
+        ByteBuffer pixels = memAlloc((int) total);
+        ByteBuffer level0 = memSlice(pixels, 0, width * height * channels);
+        level0.put(image.duplicate().limit(image.position() + width * height * channels));
+
+        for (int level = 1; level < levels; level++) {
+            ByteBuffer src = memSlice(pixels, (int) offsets[level - 1], widths[level - 1] * heights[level - 1] * channels);
+            ByteBuffer dst = memSlice(pixels, (int) offsets[level], widths[level] * heights[level] * channels);
+            downsample(src, widths[level - 1], heights[level - 1], dst, widths[level], heights[level], channels);
+        }
+
+        return new BakedTexture(width, height, channels, widths, heights, offsets, pixels);
+    }
+
+    // 2x2 box filter; odd edges reuse the last row/column
+    static void downsample(ByteBuffer src, int srcWidth, int srcHeight, ByteBuffer dst, int dstWidth, int dstHeight, int channels) {
+        int srcBase = src.position();
+        int dstBase = dst.position();
+        int srcStride = srcWidth * channels;
+        for (int y = 0; y < dstHeight; y++) {
+            int y0 = Math.min(2 * y, srcHeight - 1);
+            int y1 = Math.min(2 * y + 1, srcHeight - 1);
+            for (int x = 0; x < dstWidth; x++) {
+                int x0 = Math.min(2 * x, srcWidth - 1);
+                int x1 = Math.min(2 * x + 1, srcWidth - 1);
+                for (int c = 0; c < channels; c++) {
+                    int sum = (src.get(srcBase + y0 * srcStride + x0 * channels + c) & 0xFF)
+                            + (src.get(srcBase + y0 * srcStride + x1 * channels + c) & 0xFF)
+                            + (src.get(srcBase + y1 * srcStride + x0 * channels + c) & 0xFF)
+                            + (src.get(srcBase + y1 * srcStride + x1 * channels + c) & 0xFF);
+                    dst.put(dstBase + (y * dstWidth + x) * channels + c, (byte) ((sum + 2) >> 2));
+                }
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------//
+    //  file io                                                                                                        //
+    // ---------------------------------------------------------------------------------------------------------------//
+
+    public void write(Path file, int codec) throws IOException {
+        int levels = getLevelCount();
+        long tableEnd = HEADER_BYTES + (long) levels * LEVEL_ENTRY_BYTES;
+
+        ByteBuffer header = ByteBuffer.allocate((int) tableEnd).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(channels).putInt(levels).putInt(codec).putInt(0);
+
+        ByteBuffer[] blocks = new ByteBuffer[levels];
+        try {
+            long offset = tableEnd;
+            for (int level = 0; level < levels; level++) {
+                ByteBuffer raw = memSlice(pixels, (int) levelOffsets[level], (int) getLevelSize(level));
+                blocks[level] = compress(raw, codec);
+                header.putInt(levelWidths[level]).putInt(levelHeights[level])
+                        .putLong(raw.remaining()).putLong(offset).putLong(blocks[level].remaining());
+                offset += blocks[level].remaining();
+            }
+            header.flip();
+
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                for (ByteBuffer block : blocks) {
+                    while (block.hasRemaining()) {
+                        channel.write(block);
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            for (ByteBuffer block : blocks) {
+                if (block != null) {
+                    memFree(block);
+                }
+            }
+        }
+    }
+
+    public static BakedTexture read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES) {
+                throw new IOException("truncated baked texture " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            int magic = mapped.getInt(0);
+            int version = mapped.getInt(4);
+            int width = mapped.getInt(8);
+            int height = mapped.getInt(12);
+            int channels = mapped.getInt(16);
+            int levels = mapped.getInt(20);
+            int codec = mapped.getInt(24);
+            if (magic != MAGIC || version != VERSION) {
+                throw new IOException("not a version " + VERSION + " baked texture: " + file);
+            }
+            if (width <= 0 || height <= 0 || channels < 1 || channels > 4 || levels < 1 || levels > MAX_LEVELS
+                    || codec < CODEC_NONE || codec > CODEC_LZ4) {
+                throw new IOException("corrupt baked texture header: " + file);
+            }
+            long tableEnd = HEADER_BYTES + (long) levels * LEVEL_ENTRY_BYTES;
+            if (tableEnd > fileSize) {
+                throw new IOException("truncated baked texture " + file);
+            }
+
+            int[] widths = new int[levels];
+            int[] heights = new int[levels];
+            long[] offsets = new long[levels];
+            long total = 0;
+            for (int level = 0, w = width, h = height; level < levels; level++, w = Math.max(1, w / 2), h = Math.max(1, h / 2)) {
+                int entry = HEADER_BYTES + level * LEVEL_ENTRY_BYTES;
+                widths[level] = mapped.getInt(entry);
+                heights[level] = mapped.getInt(entry + 4);
+                long rawSize = mapped.getLong(entry + 8);
+                long dataOffset = mapped.getLong(entry + 16);
+                long dataSize = mapped.getLong(entry + 24);
+                if (widths[level] != w || heights[level] != h || rawSize != (long) w * h * channels
+                        || dataOffset < tableEnd || dataSize < 0 || dataOffset + dataSize > fileSize) {
+                    throw new IOException("corrupt level " + level + " in baked texture " + file);
+                }
+                offsets[level] = total;
+                total += rawSize;
+            }
+            if (total > Integer.MAX_VALUE) {
+                throw new IOException("baked texture too large: " + file);
+            }
+
+            ByteBuffer pixels = memAlloc((int) total);
+            try {
+                for (int level = 0; level < levels; level++) {
+                    int entry = HEADER_BYTES + level * LEVEL_ENTRY_BYTES;
+                    long dataOffset = mapped.getLong(entry + 16);
+                    long dataSize = mapped.getLong(entry + 24);
+                    ByteBuffer src = memSlice(mapped, (int) dataOffset, (int) dataSize);
+                    ByteBuffer dst = memSlice(pixels, (int) offsets[level], widths[level] * heights[level] * channels);
+                    decompress(src, dst, codec);
+                }
+            } catch (IOException | RuntimeException e) {
+                memFree(pixels);
+                throw e;
+            }
+            return new BakedTexture(width, height, channels, widths, heights, offsets, pixels);
+        }
+    }
+
+    // returned buffer is memAlloc'd, positioned over the compressed bytes
+    static ByteBuffer compress(ByteBuffer raw, int codec) throws IOException {
+        switch (codec) {
+            case CODEC_ZSTD: {
+                ByteBuffer dst = memAlloc((int) ZSTD_compressBound(raw.remaining()));
+                long written = ZSTD_compress(dst, raw, ZSTD_LEVEL);
+                if (ZSTD_isError(written)) {
+                    memFree(dst);
+                    throw new IOException("zstd compression failed: " + ZSTD_getErrorName(written));
+                }
+                dst.limit((int) written);
+                return dst;
+            }
+            case CODEC_LZ4: {
+                ByteBuffer dst = memAlloc(LZ4_compressBound(raw.remaining()));
+                int written = LZ4_compress_default(raw, dst);
+                if (written <= 0) {
+                    memFree(dst);
+                    throw new IOException("lz4 compression failed");
+                }
+                dst.limit(written);
+                return dst;
+            }
+            default: {
+                ByteBuffer dst = memAlloc(raw.remaining());
+                dst.put(raw.duplicate()).flip();
+                return dst;
+            }
+        }
+    }
+
+    static void decompress(ByteBuffer src, ByteBuffer dst, int codec) throws IOException {
+        long expected = dst.remaining();
+        long written;
+        switch (codec) {
+            case CODEC_ZSTD:
+                written = ZSTD_decompress(dst, src);
+                if (ZSTD_isError(written)) {
+                    throw new IOException("zstd decompression failed: " + ZSTD_getErrorName(written));
+                }
+                break;
+            case CODEC_LZ4:
+                written = LZ4_decompress_safe(src, dst);
+                break;
+            default:
+                written = Math.min(src.remaining(), dst.remaining());
+                dst.put(src.duplicate().limit(src.position() + (int) written));
+                break;
+        }
+        if (written != expected) {
+            throw new IOException("level decompressed to " + written + " bytes, expected " + expected);
+        }
+    }
+
+    public static int codecFromName(String name) {
+        switch (name.toLowerCase()) {
+            case "none":
+                return CODEC_NONE;
+            case "lz4":
+                return CODEC_LZ4;
+            case "zstd":
+                return CODEC_ZSTD;
+            default:
+                throw new IllegalArgumentException("Unknown texture codec " + name + ", expected zstd, lz4 or none");
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package learnopengl.utils;
+
+import org.lwjgl.system.MemoryStack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.GL_STREAM_READ;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL15.glUnmapBuffer;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_PACK_BUFFER;
+import static org.lwjgl.opengl.GL30.GL_MAP_READ_BIT;
+import static org.lwjgl.opengl.GL30.glMapBufferRange;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.stb.STBImageWrite.stbi_write_png;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memCopy;
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_compress;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_compressBound;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_getErrorName;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_isError;
+
+/**
+ * Records every frame the render loop draws without making it wait for the pixels.
+ *
+ * {@link #capture()} runs after the frame's draws and only queues a glReadPixels of the read framebuffer into the
+ * next of a ring of pixel pack buffers, plus a fence behind it. The buffer is mapped on a later frame once its fence
+ * has signaled, so the copy has long finished by then; the render thread only waits when the GPU is a whole ring
+ * behind. The pixels are copied out of the mapping into one of a few spare frames and a single background thread
+ * flips them upright and writes them out, either as one zstd frame each appended to frames-WxH.rgba.zst, which
+ * decompresses to plain RGBA frames back to back, or as a PNG per frame. When the encoder falls behind and no spare
+ * frame is free, the frame is dropped rather than holding up the loop; PNG usually cannot keep up at 60 fps.
+ *
+ * The size comes from the viewport of the first captured frame. The pack buffer binding is left at 0.
+ *
+ * When disabled, which is the default, every call returns after a single field check without touching GL.
+ * -Dlearnopengl.capture=directory turns it on and -Dlearnopengl.captureFormat=zstd|png picks the output.
+ */
+public class FrameCapture {
+
+    public enum Format {
+        ZSTD,
+        PNG
+    }
+
+    public static final int DEFAULT_RING_SIZE = 3;
+    public static final int DEFAULT_SPARE_FRAMES = 6;
+
+    private static final int ZSTD_LEVEL = 1; // fast enough to keep up with 60 fps at chapter sizes
+    private static final long WAIT_TIMEOUT_NANOS = 1_000_000_000L;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final Format format;
+    private final int ringSize;
+    private final int spareFrames;
+
+    private boolean created;
+    private int width;
+    private int height;
+    private int frameBytes;
+
+    private int[] pbos;
+    private long[] fences;
+    private int[] frameNumbers;
+    private int next;
+    private int pending;
+    private int frame;
+
+    private ExecutorService encoder;
+    private BlockingQueue<ByteBuffer> spares;
+    private ByteBuffer flipped; // encoder thread only
+    private ByteBuffer compressed; // encoder thread only
+    private FileChannel zstdFile; // encoder thread only, once created
+
+    private long captured;
+    private long dropped;
+    private volatile long encodeFailures;
+    private long stalls;
+    private long renderThreadNanos;
+    private long maxRenderThreadNanos;
+
+    public FrameCapture(Path directory, Format format) {
+        this(directory, format, DEFAULT_RING_SIZE, DEFAULT_SPARE_FRAMES);
+    }
+
+    public FrameCapture(Path directory, Format format, int ringSize, int spareFrames) {
+        if (directory != null && (ringSize < 2 || spareFrames < 1)) {
+            throw new IllegalArgumentException("Frame capture needs at least two pack buffers and one spare frame");
+        }
+        this.enabled = directory != null;
+        this.directory = directory;
+        this.format = format;
+        this.ringSize = ringSize;
+        this.spareFrames = spareFrames;
+    }
+
+    public static FrameCapture fromSystemProperties() {
+        String directory = System.getProperty("learnopengl.capture");
+        String format = System.getProperty("learnopengl.captureFormat", "zstd");
+        Format parsed;
+        try {
+            parsed = Format.valueOf(format.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("learnopengl.captureFormat has to be zstd or png, not " + format, e);
+        }
+        return new FrameCapture(directory != null ? Path.of(directory) : null, parsed);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getCapturedFrames() {
+        return captured;
+    }
+
+    // frames lost because every spare frame was still queued for the encoder
+    public long getDroppedFrames() {
+        return dropped;
+    }
+
+    // times the render thread had to wait for a readback, because the GPU was a whole ring behind
+    public long getStalls() {
+        return stalls;
+    }
+
+    // call after the frame's draws and before the swap, with the framebuffer to capture bound for reading
+    public void capture() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        if (!created) {
+            create();
+        }
+
+        // hand on every earlier frame that is done on the GPU, oldest first
+        while (pending > 0 && isSignaled(oldest())) {
+            readBack(oldest(), false);
+        }
+        if (pending == ringSize) {
+            stalls++;
+            waitFor(oldest());
+            readBack(oldest(), false);
+        }
+
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, pbos[next]);
+        glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, 0L);
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+        fences[next] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        frameNumbers[next] = frame++;
+        next = (next + 1) % ringSize;
+        pending++;
+
+        long nanos = System.nanoTime() - start;
+        renderThreadNanos += nanos;
+        maxRenderThreadNanos = Math.max(maxRenderThreadNanos, nanos);
+    }
+
+    private void create() {
+        try (MemoryStack stack = stackPush()) {
+            IntBuffer viewport = stack.mallocInt(4);
+            glGetIntegerv(GL_VIEWPORT, viewport);
+            width = viewport.get(2);
+            height = viewport.get(3);
+        }
+        frameBytes = width * height * 4;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create the capture directory " + directory + " :: " + e.getMessage(), e);
+        }
+
+        pbos = new int[ringSize];
+        fences = new long[ringSize];
+        frameNumbers = new int[ringSize];
+        for (int i = 0; i < ringSize; i++) {
+            pbos[i] = glGenBuffers();
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, pbos[i]);
+            // STREAM_READ asks for storage the CPU can read back quickly
+            glBufferData(GL_PIXEL_PACK_BUFFER, frameBytes, GL_STREAM_READ);
+        }
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+        glPixelStorei(GL_PACK_ALIGNMENT, 1);
+
+        spares = new ArrayBlockingQueue<>(spareFrames);
+        for (int i = 0; i < spareFrames; i++) {
+            spares.add(memAlloc(frameBytes));
+        }
+        flipped = memAlloc(frameBytes);
+        if (format == Format.ZSTD) {
+            compressed = memAlloc((int) ZSTD_compressBound(frameBytes));
+        }
+        encoder = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "frame-encoder");
+            t.setDaemon(true);
+            return t;
+        });
+        created = true;
+    }
+
+    private int oldest() {
+        return (next - pending + ringSize) % ringSize;
+    }
+
+    private boolean isSignaled(int slot) {
+        // a timeout of 0 only polls, without flushing
+        int status = glClientWaitSync(fences[slot], 0, 0);
+        if (status == GL_WAIT_FAILED) {
+            throw new IllegalStateException("glClientWaitSync failed on captured frame " + frameNumbers[slot]);
+        }
+        return status != GL_TIMEOUT_EXPIRED;
+    }
+
+    private void waitFor(int slot) {
+        int status;
+        do {
+            status = glClientWaitSync(fences[slot], GL_SYNC_FLUSH_COMMANDS_BIT, WAIT_TIMEOUT_NANOS);
+        } while (status == GL_TIMEOUT_EXPIRED);
+        if (status == GL_WAIT_FAILED) {
+            throw new IllegalStateException("glClientWaitSync failed on captured frame " + frameNumbers[slot]);
+        }
+    }
+
+    // the slot's fence has signaled; copies its pixels out to a spare frame and queues that for the encoder
+    private void readBack(int slot, boolean waitForSpare) {
+        glDeleteSync(fences[slot]);
+        fences[slot] = NULL;
+        pending--;
+
+        ByteBuffer pixels = waitForSpare ? takeSpare() : spares.poll();
+        if (pixels == null) {
+            dropped++;
+            return;
+        }
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, pbos[slot]);
+        ByteBuffer mapping = glMapBufferRange(GL_PIXEL_PACK_BUFFER, 0, frameBytes, GL_MAP_READ_BIT);
+        if (mapping == null) {
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+            spares.add(pixels);
+            throw new IllegalStateException("Failed to map the pack buffer of captured frame " + frameNumbers[slot]);
+        }
+        memCopy(memAddress(mapping), memAddress(pixels), frameBytes);
+        glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+
+        int number = frameNumbers[slot];
+        captured++;
+        encoder.execute(() -> encode(pixels, number));
+    }
+
+    private ByteBuffer takeSpare() {
+        try {
+            return spares.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // runs on the encoder thread
+    private void encode(ByteBuffer pixels, int number) {
+        try {
+            // glReadPixels starts at the bottom row
+            int stride = width * 4;
+            for (int row = 0; row < height; row++) {
+                memCopy(memAddress(pixels) + (long) (height - 1 - row) * stride, memAddress(flipped) + (long) row * stride, stride);
+            }
+            if (format == Format.PNG) {
+                Path file = directory.resolve(String.format("frame-%06d.png", number));
+                if (!stbi_write_png(file.toString(), width, height, 4, flipped, stride)) {
+                    throw new IOException("stbi_write_png failed on " + file);
+                }
+            } else {
+                writeZstd();
+            }
+        } catch (IOException e) {
+            if (encodeFailures++ == 0) {
+                System.out.printf("Failed to write captured frame %d :: %s%n", number, e.getMessage());
+            }
+        } finally {
+            spares.add(pixels);
+        }
+    }
+
+    private void writeZstd() throws IOException {
+        if (zstdFile == null) {
+            zstdFile = FileChannel.open(zstdPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        compressed.clear();
+        long written = ZSTD_compress(compressed, flipped, ZSTD_LEVEL);
+        if (ZSTD_isError(written)) {
+            throw new IOException("zstd compression failed: " + ZSTD_getErrorName(written));
+        }
+        compressed.limit((int) written);
+        while (compressed.hasRemaining()) {
+            zstdFile.write(compressed);
+        }
+    }
+
+    private Path zstdPath() {
+        return directory.resolve("frames-" + width + "x" + height + ".rgba.zst");
+    }
+
+    public String summary() {
+        if (!created) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("captured %d frames of %dx%d to %s, %d dropped with the encoder behind, %d readback stalls%n",
+                captured, width, height, (format == Format.PNG ? directory : zstdPath()).toAbsolutePath(), dropped, stalls));
+        sb.append(String.format("capture cost on the render thread: %.1f us/frame on average, %.1f us at most%n",
+                frame > 0 ? renderThreadNanos / 1e3 / frame : 0.0, maxRenderThreadNanos / 1e3));
+        if (encodeFailures > 0) {
+            sb.append(String.format("%d frames failed to encode%n", encodeFailures));
+        }
+        if (format == Format.ZSTD) {
+            sb.append(String.format("play back with: zstd -dc %s | ffplay -f rawvideo -pixel_format rgba -video_size %dx%d -framerate 60 -%n",
+                    zstdPath().getFileName(), width, height));
+        }
+        return sb.toString();
+    }
+
+    // needs the context still current; reads back what is in flight and waits for the encoder to finish
+    public void destroy() {
+        if (pbos == null) {
+            return;
+        }
+        while (pending > 0) {
+            waitFor(oldest());
+            readBack(oldest(), true);
+        }
+        glDeleteBuffers(pbos);
+        pbos = null;
+
+        encoder.shutdown();
+        boolean finished = false;
+        try {
+            finished = encoder.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!finished) {
+            // the encoder may still be using the frames, so they are left to the process exit
+            System.out.println("Frame encoder did not finish, the capture is incomplete");
+            encoder.shutdownNow();
+            return;
+        }
+        if (zstdFile != null) {
+            try {
+                zstdFile.close();
+            } catch (IOException e) {
+                System.out.printf("Failed to close %s :: %s%n", zstdPath(), e.getMessage());
+            }
+        }
+        for (ByteBuffer spare : spares) {
+            memFree(spare);
+        }
+        spares.clear();
+        memFree(flipped);
+        if (compressed != null) {
+            memFree(compressed);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package learnopengl.utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Frame, update, render and swap times of a render loop, each in a {@link LatencyHistogram}, plus how many frames
+ * were dropped, i.e. ran into the next refresh interval, and how many refreshes they missed in total. Recording
+ * allocates nothing; {@link #summary()} and {@link #writeCsv(Path)} are meant for the end of a run.
+ */
+public class FrameStats {
+
+    public enum Phase {
+        FRAME,
+        UPDATE,
+        RENDER,
+        SWAP
+    }
+
+    private static final double[] PERCENTILES = {0.50, 0.95, 0.99};
+
+    private final long refreshIntervalNanos;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+    private final AtomicLong[] overInterval = new AtomicLong[Phase.values().length];
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong missedRefreshes = new AtomicLong();
+
+    public FrameStats(long refreshIntervalNanos) {
+        if (refreshIntervalNanos <= 0) {
+            throw new IllegalArgumentException("Refresh interval has to be positive, not " + refreshIntervalNanos);
+        }
+        this.refreshIntervalNanos = refreshIntervalNanos;
+        for (int p = 0; p < histograms.length; p++) {
+            histograms[p] = new LatencyHistogram();
+            overInterval[p] = new AtomicLong();
+        }
+    }
+
+    public static FrameStats forRefreshRate(int hertz) {
+        return new FrameStats(1_000_000_000L / (hertz > 0 ? hertz : 60));
+    }
+
+    public long getRefreshIntervalNanos() {
+        return refreshIntervalNanos;
+    }
+
+    public LatencyHistogram get(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    public void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+        if (nanos > refreshIntervalNanos) {
+            overInterval[phase.ordinal()].incrementAndGet();
+        }
+    }
+
+    // a frame is the time from one frame start to the next
+    public void recordFrame(long frameNanos, long updateNanos, long renderNanos, long swapNanos) {
+        record(Phase.FRAME, frameNanos);
+        record(Phase.UPDATE, updateNanos);
+        record(Phase.RENDER, renderNanos);
+        record(Phase.SWAP, swapNanos);
+        // half an interval of slack, so jitter right around the refresh rate does not count as a drop
+        long missed = (frameNanos + refreshIntervalNanos / 2) / refreshIntervalNanos - 1;
+        if (missed > 0) {
+            droppedFrames.incrementAndGet();
+            missedRefreshes.addAndGet(missed);
+        }
+    }
+
+    // samples longer than one refresh interval, without any slack
+    public long getOverInterval(Phase phase) {
+        return overInterval[phase.ordinal()].get();
+    }
+
+    // frames at least one and a half refresh intervals long
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long getMissedRefreshes() {
+        return missedRefreshes.get();
+    }
+
+    public void reset() {
+        for (int p = 0; p < histograms.length; p++) {
+            histograms[p].reset();
+            overInterval[p].set(0);
+        }
+        droppedFrames.set(0);
+        missedRefreshes.set(0);
+    }
+
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-8s %8s %9s %9s %9s %9s %9s%n", "phase", "samples", "mean ms", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram h = get(phase);
+            sb.append(String.format("%-8s %8d %9.3f", phase.name().toLowerCase(Locale.ROOT), h.getCount(), h.getMeanNanos() / 1e6));
+            for (double percentile : PERCENTILES) {
+                sb.append(String.format(" %9.3f", h.getPercentileNanos(percentile) / 1e6));
+            }
+            sb.append(String.format(" %9.3f%n", h.getMaxNanos() / 1e6));
+        }
+        sb.append(String.format("%d of %d frames dropped at a %.2f ms refresh interval, %d refreshes missed%n",
+                getDroppedFrames(), get(Phase.FRAME).getCount(), refreshIntervalNanos / 1e6, getMissedRefreshes()));
+        return sb.toString();
+    }
+
+    // one row per phase; the dropped and missed columns only apply to whole frames and are left empty otherwise
+    public void writeCsv(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("phase,samples,mean_ms,p50_ms,p95_ms,p99_ms,max_ms,over_interval,refresh_interval_ms,dropped_frames,missed_refreshes\n");
+            for (Phase phase : Phase.values()) {
+                LatencyHistogram h = get(phase);
+                out.write(String.format(Locale.ROOT, "%s,%d,%.4f,%.4f,%.4f,%.4f,%.4f,%d,%.4f",
+                        phase.name().toLowerCase(Locale.ROOT), h.getCount(), h.getMeanNanos() / 1e6,
+                        h.getPercentileNanos(0.50) / 1e6, h.getPercentileNanos(0.95) / 1e6,
+                        h.getPercentileNanos(0.99) / 1e6, h.getMaxNanos() / 1e6,
+                        getOverInterval(phase), refreshIntervalNanos / 1e6));
+                out.write(phase == Phase.FRAME ? "," + getDroppedFrames() + "," + getMissedRefreshes() + "\n" : ",,\n");
+            }
+        }
+    }
+}
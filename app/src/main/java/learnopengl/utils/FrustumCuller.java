@@ -0,0 +1,158 @@
+package learnopengl.utils;
+
+import org.joml.Matrix4fc;
+import org.joml.Vector4f;
+
+import java.util.Arrays;
+
+/**
+ * Tests bounding volumes against the six planes of a view-projection matrix.
+ *
+ * Bounds are kept as a structure of arrays: a center, a sphere radius and half extents of an axis aligned box, one
+ * float array each. A sphere has zero extents, a box has zero radius. {@link #cull()} walks the arrays once per plane
+ * with nothing but multiplies, adds and a min in the loop body, so the JIT can vectorize it, and then compacts the
+ * indices of everything that survived.
+ */
+public class FrustumCuller {
+
+    private static final int PLANES = 6;
+
+    private final int capacity;
+    private int count;
+
+    private final float[] centerX;
+    private final float[] centerY;
+    private final float[] centerZ;
+    private final float[] radius;
+    private final float[] extentX;
+    private final float[] extentY;
+    private final float[] extentZ;
+
+    // smallest signed distance of each volume to any plane seen so far, negative means outside
+    private final float[] distance;
+    private final int[] visible;
+    private int visibleCount;
+
+    private final float[] planeX = new float[PLANES];
+    private final float[] planeY = new float[PLANES];
+    private final float[] planeZ = new float[PLANES];
+    private final float[] planeW = new float[PLANES];
+    private final Vector4f plane = new Vector4f();
+
+    public FrustumCuller(int capacity) {
+        this.capacity = capacity;
+        this.centerX = new float[capacity];
+        this.centerY = new float[capacity];
+        this.centerZ = new float[capacity];
+        this.radius = new float[capacity];
+        this.extentX = new float[capacity];
+        this.extentY = new float[capacity];
+        this.extentZ = new float[capacity];
+        this.distance = new float[capacity];
+        this.visible = new int[capacity];
+    }
+
+    public int addSphere(float x, float y, float z, float r) {
+        return add(x, y, z, r, 0.0f, 0.0f, 0.0f);
+    }
+
+    public int addBox(float x, float y, float z, float halfX, float halfY, float halfZ) {
+        return add(x, y, z, 0.0f, halfX, halfY, halfZ);
+    }
+
+    private int add(float x, float y, float z, float r, float halfX, float halfY, float halfZ) {
+        if (count == capacity) {
+            throw new IllegalStateException("Frustum culler is full (" + capacity + " volumes)");
+        }
+        int i = count++;
+        set(i, x, y, z, r, halfX, halfY, halfZ);
+        return i;
+    }
+
+    public void set(int i, float x, float y, float z, float r, float halfX, float halfY, float halfZ) {
+        centerX[i] = x;
+        centerY[i] = y;
+        centerZ[i] = z;
+        radius[i] = r;
+        extentX[i] = halfX;
+        extentY[i] = halfY;
+        extentZ[i] = halfZ;
+    }
+
+    public void setCenter(int i, float x, float y, float z) {
+        centerX[i] = x;
+        centerY[i] = y;
+        centerZ[i] = z;
+    }
+
+    public void clear() {
+        count = 0;
+        visibleCount = 0;
+    }
+
+    // planes point inwards and are normalized, so a plane equation gives the signed distance in world units
+    public void update(Matrix4fc viewProjection) {
+        for (int p = 0; p < PLANES; p++) {
+            viewProjection.frustumPlane(p, plane);
+            planeX[p] = plane.x;
+            planeY[p] = plane.y;
+            planeZ[p] = plane.z;
+            planeW[p] = plane.w;
+        }
+    }
+
+    // returns the number of visible volumes, their indices are in getVisible()
+    public int cull() {
+        int n = count;
+        Arrays.fill(distance, 0, n, Float.POSITIVE_INFINITY);
+        for (int p = 0; p < PLANES; p++) {
+            float px = planeX[p];
+            float py = planeY[p];
+            float pz = planeZ[p];
+            float pw = planeW[p];
+            // a box reaches furthest along the plane normal by the extents projected onto its absolute value
+            float ax = Math.abs(px);
+            float ay = Math.abs(py);
+            float az = Math.abs(pz);
+            for (int i = 0; i < n; i++) {
+                float d = px * centerX[i] + py * centerY[i] + pz * centerZ[i] + pw
+                        + radius[i] + ax * extentX[i] + ay * extentY[i] + az * extentZ[i];
+                distance[i] = Math.min(distance[i], d);
+            }
+        }
+
+        int v = 0;
+        for (int i = 0; i < n; i++) {
+            if (distance[i] >= 0.0f) {
+                visible[v++] = i;
+            }
+        }
+        visibleCount = v;
+        return v;
+    }
+
+    public boolean isVisible(int i) {
+        return distance[i] >= 0.0f;
+    }
+
+    // indices of the visible volumes in ascending order, valid up to getVisibleCount()
+    public int[] getVisible() {
+        return visible;
+    }
+
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    public int getCulledCount() {
+        return count - visibleCount;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,266 @@
+package learnopengl.utils;
+
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL11.glClearColor;
+import static org.lwjgl.opengl.GL11.glDisable;
+import static org.lwjgl.opengl.GL11.glEnable;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_3D;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE_CUBE_MAP;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL20.glUseProgram;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_PACK_BUFFER;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_UNPACK_BUFFER;
+import static org.lwjgl.opengl.GL30.GL_TEXTURE_2D_ARRAY;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+
+/**
+ * Shadows the bits of GL state the chapters touch every frame and drops calls that would not change anything.
+ *
+ * Everything starts out unknown, so the first call of each kind always reaches the driver. Code that changes state
+ * behind this class' back has to call {@link #invalidate()} afterwards. Counters keep track of how many calls were
+ * issued and how many were elided.
+ */
+public class GLState {
+
+    public enum Call {
+        USE_PROGRAM,
+        BIND_VERTEX_ARRAY,
+        BIND_BUFFER,
+        ACTIVE_TEXTURE,
+        BIND_TEXTURE,
+        CAPABILITY,
+        CLEAR_COLOR
+    }
+
+    private static final int UNKNOWN = -1;
+
+    public static final int MAX_TEXTURE_UNITS = 32;
+
+    private static final int[] BUFFER_TARGETS = {
+            GL_ARRAY_BUFFER, GL_ELEMENT_ARRAY_BUFFER, GL_PIXEL_PACK_BUFFER, GL_PIXEL_UNPACK_BUFFER, GL_UNIFORM_BUFFER
+    };
+    private static final int[] TEXTURE_TARGETS = {
+            GL_TEXTURE_2D, GL_TEXTURE_3D, GL_TEXTURE_CUBE_MAP, GL_TEXTURE_2D_ARRAY
+    };
+    private static final int ELEMENT_ARRAY_INDEX = 1;
+
+    private int program;
+    private int vertexArray;
+    private final int[] buffers = new int[BUFFER_TARGETS.length];
+    private int activeTextureUnit;
+    private final int[][] textures = new int[MAX_TEXTURE_UNITS][TEXTURE_TARGETS.length];
+    private final IntIntMap capabilities = new IntIntMap(16, UNKNOWN);
+    private boolean clearColorKnown;
+    private float clearRed, clearGreen, clearBlue, clearAlpha;
+
+    private final long[] issued = new long[Call.values().length];
+    private final long[] elided = new long[Call.values().length];
+
+    public GLState() {
+        invalidate();
+    }
+
+    // forget everything, the next call of every kind goes to the driver
+    public void invalidate() {
+        program = UNKNOWN;
+        vertexArray = UNKNOWN;
+        Arrays.fill(buffers, UNKNOWN);
+        activeTextureUnit = UNKNOWN;
+        for (int[] unit : textures) {
+            Arrays.fill(unit, UNKNOWN);
+        }
+        capabilities.clear();
+        clearColorKnown = false;
+    }
+
+    public void useProgram(int program) {
+        if (this.program == program) {
+            elided[Call.USE_PROGRAM.ordinal()]++;
+            return;
+        }
+        this.program = program;
+        issued[Call.USE_PROGRAM.ordinal()]++;
+        glUseProgram(program);
+    }
+
+    public void bindVertexArray(int vertexArray) {
+        if (this.vertexArray == vertexArray) {
+            elided[Call.BIND_VERTEX_ARRAY.ordinal()]++;
+            return;
+        }
+        this.vertexArray = vertexArray;
+        // the element array binding is part of the vertex array object
+        buffers[ELEMENT_ARRAY_INDEX] = UNKNOWN;
+        issued[Call.BIND_VERTEX_ARRAY.ordinal()]++;
+        glBindVertexArray(vertexArray);
+    }
+
+    public void bindBuffer(int target, int buffer) {
+        int index = indexOf(BUFFER_TARGETS, target);
+        if (index >= 0) {
+            if (buffers[index] == buffer) {
+                elided[Call.BIND_BUFFER.ordinal()]++;
+                return;
+            }
+            buffers[index] = buffer;
+        }
+        issued[Call.BIND_BUFFER.ordinal()]++;
+        glBindBuffer(target, buffer);
+    }
+
+    // unit is zero based, i.e. 1 for GL_TEXTURE1
+    public void activeTexture(int unit) {
+        if (activeTextureUnit == unit) {
+            elided[Call.ACTIVE_TEXTURE.ordinal()]++;
+            return;
+        }
+        activeTextureUnit = unit;
+        issued[Call.ACTIVE_TEXTURE.ordinal()]++;
+        glActiveTexture(GL_TEXTURE0 + unit);
+    }
+
+    // binds to whichever unit is active
+    public void bindTexture(int target, int texture) {
+        int index = indexOf(TEXTURE_TARGETS, target);
+        if (index >= 0 && activeTextureUnit >= 0 && activeTextureUnit < MAX_TEXTURE_UNITS) {
+            if (textures[activeTextureUnit][index] == texture) {
+                elided[Call.BIND_TEXTURE.ordinal()]++;
+                return;
+            }
+            textures[activeTextureUnit][index] = texture;
+        }
+        issued[Call.BIND_TEXTURE.ordinal()]++;
+        glBindTexture(target, texture);
+    }
+
+    // glActiveTexture + glBindTexture, each only when needed
+    public void bindTexture(int unit, int target, int texture) {
+        int index = indexOf(TEXTURE_TARGETS, target);
+        if (index >= 0 && unit < MAX_TEXTURE_UNITS && textures[unit][index] == texture) {
+            elided[Call.BIND_TEXTURE.ordinal()]++;
+            return;
+        }
+        activeTexture(unit);
+        bindTexture(target, texture);
+    }
+
+    // a deleted texture name can be reused by glGenTextures, so drop it from every unit
+    public void forgetTexture(int texture) {
+        for (int[] unit : textures) {
+            for (int i = 0; i < unit.length; i++) {
+                if (unit[i] == texture) {
+                    unit[i] = UNKNOWN;
+                }
+            }
+        }
+    }
+
+    public void enable(int capability) {
+        setCapability(capability, true);
+    }
+
+    public void disable(int capability) {
+        setCapability(capability, false);
+    }
+
+    private void setCapability(int capability, boolean enabled) {
+        int value = enabled ? 1 : 0;
+        if (capabilities.get(capability) == value) {
+            elided[Call.CAPABILITY.ordinal()]++;
+            return;
+        }
+        capabilities.put(capability, value);
+        issued[Call.CAPABILITY.ordinal()]++;
+        if (enabled) {
+            glEnable(capability);
+        } else {
+            glDisable(capability);
+        }
+    }
+
+    public void clearColor(float red, float green, float blue, float alpha) {
+        if (clearColorKnown && clearRed == red && clearGreen == green && clearBlue == blue && clearAlpha == alpha) {
+            elided[Call.CLEAR_COLOR.ordinal()]++;
+            return;
+        }
+        clearColorKnown = true;
+        clearRed = red;
+        clearGreen = green;
+        clearBlue = blue;
+        clearAlpha = alpha;
+        issued[Call.CLEAR_COLOR.ordinal()]++;
+        glClearColor(red, green, blue, alpha);
+    }
+
+    public int getProgram() {
+        return program;
+    }
+
+    public int getVertexArray() {
+        return vertexArray;
+    }
+
+    public int getActiveTextureUnit() {
+        return activeTextureUnit;
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------//
+    //  counters                                                                                                       //
+    // ---------------------------------------------------------------------------------------------------------------//
+
+    public long getIssued(Call call) {
+        return issued[call.ordinal()];
+    }
+
+    public long getElided(Call call) {
+        return elided[call.ordinal()];
+    }
+
+    public long getIssuedTotal() {
+        long total = 0;
+        for (long count : issued) {
+            total += count;
+        }
+        return total;
+    }
+
+    public long getElidedTotal() {
+        long total = 0;
+        for (long count : elided) {
+            total += count;
+        }
+        return total;
+    }
+
+    public void resetCounters() {
+        Arrays.fill(issued, 0);
+        Arrays.fill(elided, 0);
+    }
+
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-18s %12s %12s%n", "gl state call", "issued", "elided"));
+        for (Call call : Call.values()) {
+            sb.append(String.format("%-18s %12d %12d%n", call.name().toLowerCase(), issued[call.ordinal()], elided[call.ordinal()]));
+        }
+        sb.append(String.format("%-18s %12d %12d%n", "total", getIssuedTotal(), getElidedTotal()));
+        return sb.toString();
+    }
+
+    private static int indexOf(int[] targets, int target) {
+        for (int i = 0; i < targets.length; i++) {
+            if (targets[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
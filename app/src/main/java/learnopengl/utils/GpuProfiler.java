@@ -0,0 +1,238 @@
+package learnopengl.utils;
+
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.lwjgl.opengl.GL.getCapabilities;
+import static org.lwjgl.opengl.GL11.GL_TRUE;
+import static org.lwjgl.opengl.GL15.GL_QUERY_RESULT;
+import static org.lwjgl.opengl.GL15.GL_QUERY_RESULT_AVAILABLE;
+import static org.lwjgl.opengl.GL15.glDeleteQueries;
+import static org.lwjgl.opengl.GL15.glGenQueries;
+import static org.lwjgl.opengl.GL15.glGetQueryObjecti;
+import static org.lwjgl.opengl.GL33.GL_TIMESTAMP;
+import static org.lwjgl.opengl.GL33.glGetInteger64;
+import static org.lwjgl.opengl.GL33.glGetQueryObjectui64;
+import static org.lwjgl.opengl.GL33.glQueryCounter;
+
+/**
+ * Times named, nestable scopes on the CPU with System.nanoTime and on the GPU with GL_TIMESTAMP queries, and records
+ * both into a {@link TraceRecorder}.
+ *
+ * Every frame owns a slice of a query pool allocated up front. Results are collected at the start of a later frame,
+ * and only once the driver reports them available, so reading them never waits on the GPU; a frame whose queries
+ * are still not done when its slice comes around again loses its GPU spans instead. Timestamps rather than
+ * GL_TIME_ELAPSED because elapsed-time queries cannot nest. GPU times are moved onto the CPU clock with an offset
+ * taken once at startup, so the two tracks line up in the trace.
+ *
+ * When disabled, which is the default, every call returns after a single field check without touching GL.
+ * -Dlearnopengl.profile=true turns it on and -Dlearnopengl.traceFile picks where the trace is written.
+ */
+public class GpuProfiler {
+
+    public static final int DEFAULT_FRAMES_IN_FLIGHT = 4;
+    public static final int DEFAULT_SCOPES_PER_FRAME = 64;
+    public static final int MAX_DEPTH = 32;
+
+    private final boolean enabled;
+    private final TraceRecorder trace;
+    private final int framesInFlight;
+    private final int scopesPerFrame;
+
+    private boolean gpuTiming;
+    private int[] queries; // [frame slot][scope][start, end]
+    private long gpuToCpuNanos;
+
+    private final String[][] names;
+    private final long[][] cpuStarts;
+    private final long[][] cpuEnds;
+    private final int[] scopeCounts;
+    private final int[] lastEnded; // the scope whose end query was issued last, it becomes available last
+    private final boolean[] pending;
+    private int slot = -1;
+
+    private final int[] stack = new int[MAX_DEPTH];
+    private int depth;
+
+    private long droppedFrames;
+    private long overflowedScopes;
+
+    public GpuProfiler(boolean enabled) {
+        this(enabled, DEFAULT_FRAMES_IN_FLIGHT, DEFAULT_SCOPES_PER_FRAME);
+    }
+
+    public GpuProfiler(boolean enabled, int framesInFlight, int scopesPerFrame) {
+        this.enabled = enabled;
+        this.framesInFlight = framesInFlight;
+        this.scopesPerFrame = scopesPerFrame;
+        int frames = enabled ? framesInFlight : 0;
+        this.trace = new TraceRecorder();
+        this.names = new String[frames][scopesPerFrame];
+        this.cpuStarts = new long[frames][scopesPerFrame];
+        this.cpuEnds = new long[frames][scopesPerFrame];
+        this.scopeCounts = new int[frames];
+        this.lastEnded = new int[frames];
+        this.pending = new boolean[frames];
+    }
+
+    public static GpuProfiler fromSystemProperties() {
+        return new GpuProfiler(Boolean.parseBoolean(System.getProperty("learnopengl.profile", "false")));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // false until the first frame, or when the context has no timer queries and only CPU spans are recorded
+    public boolean isGpuTiming() {
+        return gpuTiming;
+    }
+
+    public TraceRecorder getTrace() {
+        return trace;
+    }
+
+    // frames whose GPU spans were lost because their queries were not done in time
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    // needs the current context; collects whatever earlier frames have finished on the GPU
+    public void beginFrame() {
+        if (!enabled) {
+            return;
+        }
+        if (depth != 0) {
+            throw new IllegalStateException(depth + " profiler scopes still open at the start of a frame");
+        }
+        if (queries == null) {
+            createQueries();
+        }
+        slot = (slot + 1) % framesInFlight;
+        // the slot about to be reused holds the oldest frame
+        collect(slot, false);
+        if (pending[slot]) {
+            // the GPU is a whole pool behind, keep the CPU side and move on rather than wait
+            finishFrame(slot, false);
+            droppedFrames++;
+        }
+        scopeCounts[slot] = 0;
+    }
+
+    public void begin(String name) {
+        if (!enabled) {
+            return;
+        }
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("Profiler scopes nested deeper than " + MAX_DEPTH);
+        }
+        if (slot < 0) {
+            throw new IllegalStateException("begin() before the first beginFrame()");
+        }
+        int scope = scopeCounts[slot];
+        if (scope == scopesPerFrame) {
+            overflowedScopes++;
+            stack[depth++] = -1;
+            return;
+        }
+        scopeCounts[slot] = scope + 1;
+        stack[depth++] = scope;
+        names[slot][scope] = name;
+        if (gpuTiming) {
+            glQueryCounter(query(slot, scope, 0), GL_TIMESTAMP);
+        }
+        cpuStarts[slot][scope] = System.nanoTime();
+    }
+
+    public void end() {
+        if (!enabled) {
+            return;
+        }
+        if (depth == 0) {
+            throw new IllegalStateException("end() without a matching begin()");
+        }
+        int scope = stack[--depth];
+        if (scope < 0) {
+            return;
+        }
+        cpuEnds[slot][scope] = System.nanoTime();
+        if (gpuTiming) {
+            glQueryCounter(query(slot, scope, 1), GL_TIMESTAMP);
+        }
+        lastEnded[slot] = scope;
+        pending[slot] = true;
+    }
+
+    private void createQueries() {
+        GLCapabilities caps = getCapabilities();
+        gpuTiming = caps.OpenGL33 || caps.GL_ARB_timer_query;
+        queries = new int[gpuTiming ? framesInFlight * scopesPerFrame * 2 : 0];
+        if (gpuTiming) {
+            glGenQueries(queries);
+            // GL_TIMESTAMP as a plain get is taken when the command is processed, close enough to line the clocks up
+            gpuToCpuNanos = System.nanoTime() - glGetInteger64(GL_TIMESTAMP);
+        }
+    }
+
+    private int query(int slot, int scope, int end) {
+        return queries[(slot * scopesPerFrame + scope) * 2 + end];
+    }
+
+    // Goes from the oldest frame to the newest. They finish on the GPU in that order, so this stops at the first
+    // one that is not done, unless told to wait.
+    private void collect(int oldest, boolean wait) {
+        for (int i = 0; i < framesInFlight; i++) {
+            int frame = (oldest + i) % framesInFlight;
+            if (!pending[frame]) {
+                continue;
+            }
+            if (!wait && gpuTiming && !available(frame)) {
+                break;
+            }
+            finishFrame(frame, gpuTiming);
+        }
+    }
+
+    private boolean available(int frame) {
+        return glGetQueryObjecti(query(frame, lastEnded[frame], 1), GL_QUERY_RESULT_AVAILABLE) == GL_TRUE;
+    }
+
+    private void finishFrame(int frame, boolean withGpu) {
+        for (int scope = 0; scope < scopeCounts[frame]; scope++) {
+            String name = names[frame][scope];
+            trace.add(name, TraceRecorder.CPU_TRACK, cpuStarts[frame][scope], cpuEnds[frame][scope] - cpuStarts[frame][scope]);
+            if (withGpu) {
+                long start = glGetQueryObjectui64(query(frame, scope, 0), GL_QUERY_RESULT);
+                long end = glGetQueryObjectui64(query(frame, scope, 1), GL_QUERY_RESULT);
+                trace.add(name, TraceRecorder.GPU_TRACK, start + gpuToCpuNanos, end - start);
+            }
+            names[frame][scope] = null;
+        }
+        pending[frame] = false;
+    }
+
+    // collects every outstanding frame, waiting for the GPU if it has to, then writes the trace when profiling
+    public void destroy() {
+        if (!enabled) {
+            return;
+        }
+        collect((slot + 1) % framesInFlight, true);
+        if (queries != null && queries.length > 0) {
+            glDeleteQueries(queries);
+        }
+        Path file = Path.of(System.getProperty("learnopengl.traceFile", "learnopengl-trace-"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json"));
+        try {
+            trace.writeChromeTrace(file);
+            System.out.print(trace.summary());
+            System.out.printf("profiler trace written to %s (%d frames lost their GPU spans, %d scopes past the per-frame limit)%n",
+                    file.toAbsolutePath(), droppedFrames, overflowedScopes);
+        } catch (IOException e) {
+            System.out.printf("Failed to write the profiler trace %s :: %s%n", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package learnopengl.utils;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.egl.EGLCapabilities;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+
+import static org.lwjgl.egl.EGL.createDisplayCapabilities;
+import static org.lwjgl.egl.EGL10.*;
+import static org.lwjgl.egl.EGL12.EGL_RENDERABLE_TYPE;
+import static org.lwjgl.egl.EGL12.eglBindAPI;
+import static org.lwjgl.egl.EGL14.EGL_DEFAULT_DISPLAY;
+import static org.lwjgl.egl.EGL14.EGL_OPENGL_API;
+import static org.lwjgl.egl.EGL14.EGL_OPENGL_BIT;
+import static org.lwjgl.egl.EGL15.EGL_CONTEXT_MAJOR_VERSION;
+import static org.lwjgl.egl.EGL15.EGL_CONTEXT_MINOR_VERSION;
+import static org.lwjgl.egl.EGL15.EGL_CONTEXT_OPENGL_CORE_PROFILE_BIT;
+import static org.lwjgl.egl.EGL15.EGL_CONTEXT_OPENGL_PROFILE_MASK;
+import static org.lwjgl.egl.EXTPlatformBase.eglGetPlatformDisplayEXT;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.stb.STBImageWrite.stbi_flip_vertically_on_write;
+import static org.lwjgl.stb.STBImageWrite.stbi_write_png;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+/**
+ * An OpenGL 3.3 core context without a window or a display, for running chapters on build machines. The context
+ * comes from EGL, on Mesa's surfaceless platform when it is there so not even an X server is needed, and works with
+ * llvmpipe software rendering. Everything is drawn into an offscreen framebuffer of the requested size, which stays
+ * bound as the default one for the lifetime of the context.
+ *
+ * As a {@link RenderLoop.Surface} it closes after a fixed number of frames, and its clock advances exactly 1/60s per
+ * frame whatever the real frame time is, so two runs of a chapter draw the same frames. A swap waits until the frame
+ * before the last one has finished on the GPU, the same two frames of latency a double buffered window gives.
+ *
+ * -Dlearnopengl.headless=frames turns chapters headless, and -Dlearnopengl.headlessCapture=file.png saves the last
+ * frame when the context is destroyed.
+ */
+public class HeadlessContext implements RenderLoop.Surface {
+
+    public static final int DEFAULT_FRAMES = 600;
+    public static final double FRAME_SECONDS = 1.0 / 60.0;
+
+    // from EGL_MESA_platform_surfaceless, which LWJGL has no class for
+    private static final int EGL_PLATFORM_SURFACELESS_MESA = 0x31DD;
+    private static final long WAIT_TIMEOUT_NANOS = 1_000_000_000L;
+
+    private final int width;
+    private final int height;
+    private final int frames;
+
+    private long display = EGL_NO_DISPLAY;
+    private long surface = EGL_NO_SURFACE;
+    private long context = EGL_NO_CONTEXT;
+
+    private int framebuffer;
+    private int colorBuffer;
+    private int depthBuffer;
+
+    private final long[] fences = new long[2];
+    private int frame;
+
+    private HeadlessContext(int width, int height, int frames) {
+        this.width = width;
+        this.height = height;
+        this.frames = frames;
+    }
+
+    public static boolean isRequested() {
+        return System.getProperty("learnopengl.headless") != null;
+    }
+
+    // -Dlearnopengl.headless without a number runs the default frame count
+    public static int requestedFrames() {
+        String frames = System.getProperty("learnopengl.headless", "");
+        try {
+            return frames.isBlank() || frames.equals("true") ? DEFAULT_FRAMES : Integer.parseInt(frames.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("learnopengl.headless has to be a frame count, not " + frames, e);
+        }
+    }
+
+    public static HeadlessContext create(int width, int height) {
+        return create(width, height, requestedFrames());
+    }
+
+    // makes the context current on the calling thread and creates its GL capabilities
+    public static HeadlessContext create(int width, int height, int frames) {
+        HeadlessContext headless = new HeadlessContext(width, height, frames);
+        try {
+            headless.createContext();
+            headless.createFramebuffer();
+        } catch (RuntimeException e) {
+            headless.destroyContext();
+            throw e;
+        }
+        return headless;
+    }
+
+    private void createContext() {
+        String clientExtensions = eglQueryString(EGL_NO_DISPLAY, EGL_EXTENSIONS);
+        boolean surfacelessPlatform = clientExtensions != null
+                && clientExtensions.contains("EGL_MESA_platform_surfaceless")
+                && clientExtensions.contains("EGL_EXT_platform_base");
+        display = surfacelessPlatform
+                ? eglGetPlatformDisplayEXT(EGL_PLATFORM_SURFACELESS_MESA, EGL_DEFAULT_DISPLAY, (IntBuffer) null)
+                : eglGetDisplay(EGL_DEFAULT_DISPLAY);
+        if (display == EGL_NO_DISPLAY) {
+            throw new IllegalStateException("No EGL display :: " + eglError());
+        }
+
+        try (MemoryStack stack = stackPush()) {
+            IntBuffer major = stack.mallocInt(1);
+            IntBuffer minor = stack.mallocInt(1);
+            if (!eglInitialize(display, major, minor)) {
+                throw new IllegalStateException("Unable to initialize EGL :: " + eglError());
+            }
+            EGLCapabilities egl = createDisplayCapabilities(display, major.get(0), minor.get(0));
+            if (!egl.EGL15) {
+                throw new IllegalStateException("EGL " + major.get(0) + "." + minor.get(0) + " is too old, the context needs EGL 1.5");
+            }
+            // the framebuffer object is all that gets drawn to, so a pbuffer is only a fallback for drivers that
+            // cannot make a context current without a surface
+            boolean surfaceless = egl.EGL_KHR_surfaceless_context;
+
+            if (!eglBindAPI(EGL_OPENGL_API)) {
+                throw new IllegalStateException("EGL has no desktop OpenGL :: " + eglError());
+            }
+
+            IntBuffer configAttributes = stack.ints(
+                    EGL_SURFACE_TYPE, surfaceless ? 0 : EGL_PBUFFER_BIT,
+                    EGL_RENDERABLE_TYPE, EGL_OPENGL_BIT,
+                    EGL_NONE
+            );
+            PointerBuffer config = stack.mallocPointer(1);
+            IntBuffer configCount = stack.mallocInt(1);
+            if (!eglChooseConfig(display, configAttributes, config, configCount) || configCount.get(0) == 0) {
+                throw new IllegalStateException("No EGL config for desktop OpenGL :: " + eglError());
+            }
+
+            IntBuffer contextAttributes = stack.ints(
+                    EGL_CONTEXT_MAJOR_VERSION, 3,
+                    EGL_CONTEXT_MINOR_VERSION, 3,
+                    EGL_CONTEXT_OPENGL_PROFILE_MASK, EGL_CONTEXT_OPENGL_CORE_PROFILE_BIT,
+                    EGL_NONE
+            );
+            context = eglCreateContext(display, config.get(0), EGL_NO_CONTEXT, contextAttributes);
+            if (context == EGL_NO_CONTEXT) {
+                throw new IllegalStateException("Unable to create an OpenGL 3.3 core context :: " + eglError());
+            }
+
+            if (!surfaceless) {
+                surface = eglCreatePbufferSurface(display, config.get(0), stack.ints(EGL_WIDTH, 1, EGL_HEIGHT, 1, EGL_NONE));
+                if (surface == EGL_NO_SURFACE) {
+                    throw new IllegalStateException("Unable to create a pbuffer :: " + eglError());
+                }
+            }
+        }
+
+        if (!eglMakeCurrent(display, surface, surface, context)) {
+            throw new IllegalStateException("Unable to make the EGL context current :: " + eglError());
+        }
+        // LWJGL loads GL through libGL, which hands the calls to whichever context is current, GLX or EGL
+        GL.createCapabilities();
+    }
+
+    private void createFramebuffer() {
+        framebuffer = glGenFramebuffers();
+        glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+
+        colorBuffer = glGenRenderbuffers();
+        glBindRenderbuffer(GL_RENDERBUFFER, colorBuffer);
+        glRenderbufferStorage(GL_RENDERBUFFER, GL_RGBA8, width, height);
+        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_RENDERBUFFER, colorBuffer);
+
+        depthBuffer = glGenRenderbuffers();
+        glBindRenderbuffer(GL_RENDERBUFFER, depthBuffer);
+        glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH24_STENCIL8, width, height);
+        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_STENCIL_ATTACHMENT, GL_RENDERBUFFER, depthBuffer);
+        glBindRenderbuffer(GL_RENDERBUFFER, 0);
+
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        if (status != GL_FRAMEBUFFER_COMPLETE) {
+            throw new IllegalStateException("Offscreen framebuffer incomplete :: 0x" + Integer.toHexString(status));
+        }
+        glViewport(0, 0, width, height);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+
+    public int getFramebuffer() {
+        return framebuffer;
+    }
+
+    @Override
+    public boolean shouldClose() {
+        return frame >= frames;
+    }
+
+    @Override
+    public void swapBuffers() {
+        int slot = frame % fences.length;
+        fences[slot] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        frame++;
+        // the oldest fence belongs to the frame before this one
+        waitFor(frame % fences.length);
+    }
+
+    @Override
+    public void pollEvents() {
+        // nothing to poll without a window
+    }
+
+    @Override
+    public double getTime() {
+        return frame * FRAME_SECONDS;
+    }
+
+    private void waitFor(int slot) {
+        long fence = fences[slot];
+        if (fence == NULL) {
+            return;
+        }
+        int status;
+        do {
+            status = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, WAIT_TIMEOUT_NANOS);
+        } while (status == GL_TIMEOUT_EXPIRED);
+        if (status == GL_WAIT_FAILED) {
+            throw new IllegalStateException("glClientWaitSync failed on headless frame " + frame);
+        }
+        glDeleteSync(fence);
+        fences[slot] = NULL;
+    }
+
+    // reads the offscreen color buffer back as a PNG, top row first
+    public void capture(Path file) {
+        ByteBuffer pixels = memAlloc(width * height * 4);
+        try {
+            glBindFramebuffer(GL_READ_FRAMEBUFFER, framebuffer);
+            glPixelStorei(GL_PACK_ALIGNMENT, 1);
+            glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+            stbi_flip_vertically_on_write(true);
+            if (!stbi_write_png(file.toString(), width, height, 4, pixels, width * 4)) {
+                throw new IllegalStateException("Failed to write " + file);
+            }
+        } finally {
+            stbi_flip_vertically_on_write(false);
+            memFree(pixels);
+        }
+    }
+
+    public void destroy() {
+        String capture = System.getProperty("learnopengl.headlessCapture");
+        if (capture != null && framebuffer != 0) {
+            capture(Path.of(capture));
+            System.out.printf("last headless frame written to %s%n", Path.of(capture).toAbsolutePath());
+        }
+        for (int slot = 0; slot < fences.length; slot++) {
+            if (fences[slot] != NULL) {
+                glDeleteSync(fences[slot]);
+                fences[slot] = NULL;
+            }
+        }
+        if (framebuffer != 0) {
+            glBindFramebuffer(GL_FRAMEBUFFER, 0);
+            glDeleteFramebuffers(framebuffer);
+            glDeleteRenderbuffers(colorBuffer);
+            glDeleteRenderbuffers(depthBuffer);
+            framebuffer = 0;
+        }
+        destroyContext();
+    }
+
+    private void destroyContext() {
+        if (display == EGL_NO_DISPLAY) {
+            return;
+        }
+        eglMakeCurrent(display, EGL_NO_SURFACE, EGL_NO_SURFACE, EGL_NO_CONTEXT);
+        if (context != EGL_NO_CONTEXT) {
+            eglDestroyContext(display, context);
+            context = EGL_NO_CONTEXT;
+        }
+        if (surface != EGL_NO_SURFACE) {
+            eglDestroySurface(display, surface);
+            surface = EGL_NO_SURFACE;
+        }
+        eglTerminate(display);
+        display = EGL_NO_DISPLAY;
+    }
+
+    private static String eglError() {
+        return "EGL error 0x" + Integer.toHexString(eglGetError());
+    }
+}
@@ -0,0 +1,215 @@
+package learnopengl.utils;
+
+import java.nio.FloatBuffer;
+
+import static learnopengl.utils.UniformUploader.MATRIX_FLOATS;
+
+/**
+ * Matrix math over whole arrays instead of one JOML object at a time. Matrices are 16 floats each, column-major like
+ * JOML and OpenGL, packed back to back in a float[] or a FloatBuffer; points are x, y, z triples; rotations are unit
+ * quaternions as x, y, z, w. Buffers are read and written from their position on, which is left alone, and may be
+ * heap or direct.
+ *
+ * This class is the scalar implementation. {@link #get()} returns one built on jdk.incubator.vector when the JVM runs
+ * with --add-modules jdk.incubator.vector, unless -Dlearnopengl.simd=false, and this one otherwise. Both give the
+ * same results up to rounding, the vector one fuses multiply-adds.
+ */
+public class MatrixBatch {
+
+    public static final int POINT_FLOATS = 3;
+    public static final int QUATERNION_FLOATS = 4;
+
+    // Buffers go through the array code a chunk at a time, copying in and out of these. Bulk copies are cheaper than
+    // element by element access to a buffer, and the vector loads and stores are much faster on arrays.
+    private static final int CHUNK = 256;
+    private static final ThreadLocal<float[][]> SCRATCH = ThreadLocal.withInitial(() -> new float[3][CHUNK * MATRIX_FLOATS]);
+
+    private static final MatrixBatch SCALAR = new MatrixBatch();
+    private static final MatrixBatch DEFAULT = select();
+
+    MatrixBatch() {
+    }
+
+    public static MatrixBatch get() {
+        return DEFAULT;
+    }
+
+    public static MatrixBatch scalar() {
+        return SCALAR;
+    }
+
+    public boolean isVectorized() {
+        return false;
+    }
+
+    private static MatrixBatch select() {
+        if (!Boolean.parseBoolean(System.getProperty("learnopengl.simd", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            // by name, so the vector classes are never linked when the module is missing
+            return (MatrixBatch) Class.forName("learnopengl.utils.VectorMatrixBatch").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.printf("Vector API not usable, matrix batches stay scalar :: %s%n", e);
+            return SCALAR;
+        }
+    }
+
+    // dst[i] = a[i] * b[i]; dst may be a or b
+    public void mul(float[] a, float[] b, float[] dst, int count) {
+        requireFloats(a.length, count, MATRIX_FLOATS, "a");
+        requireFloats(b.length, count, MATRIX_FLOATS, "b");
+        requireFloats(dst.length, count, MATRIX_FLOATS, "dst");
+        for (int i = 0; i < count; i++) {
+            int o = i * MATRIX_FLOATS;
+            mul(a, o, b, o, dst, o);
+        }
+    }
+
+    // dst[i] = left * right[i], e.g. the view projection times every model matrix; dst may be right
+    public void mulAll(float[] left, float[] right, float[] dst, int count) {
+        requireFloats(left.length, 1, MATRIX_FLOATS, "left");
+        requireFloats(right.length, count, MATRIX_FLOATS, "right");
+        requireFloats(dst.length, count, MATRIX_FLOATS, "dst");
+        for (int i = 0; i < count; i++) {
+            int o = i * MATRIX_FLOATS;
+            mul(left, 0, right, o, dst, o);
+        }
+    }
+
+    public void mul(FloatBuffer a, FloatBuffer b, FloatBuffer dst, int count) {
+        requireFloats(a.remaining(), count, MATRIX_FLOATS, "a");
+        requireFloats(b.remaining(), count, MATRIX_FLOATS, "b");
+        requireFloats(dst.remaining(), count, MATRIX_FLOATS, "dst");
+        float[][] scratch = SCRATCH.get();
+        for (int done = 0; done < count; done += CHUNK) {
+            int n = Math.min(CHUNK, count - done);
+            int o = done * MATRIX_FLOATS;
+            a.get(a.position() + o, scratch[0], 0, n * MATRIX_FLOATS);
+            b.get(b.position() + o, scratch[1], 0, n * MATRIX_FLOATS);
+            mul(scratch[0], scratch[1], scratch[2], n);
+            dst.put(dst.position() + o, scratch[2], 0, n * MATRIX_FLOATS);
+        }
+    }
+
+    public void mulAll(FloatBuffer left, FloatBuffer right, FloatBuffer dst, int count) {
+        requireFloats(left.remaining(), 1, MATRIX_FLOATS, "left");
+        requireFloats(right.remaining(), count, MATRIX_FLOATS, "right");
+        requireFloats(dst.remaining(), count, MATRIX_FLOATS, "dst");
+        float[][] scratch = SCRATCH.get();
+        left.get(left.position(), scratch[0], 0, MATRIX_FLOATS);
+        for (int done = 0; done < count; done += CHUNK) {
+            int n = Math.min(CHUNK, count - done);
+            int o = done * MATRIX_FLOATS;
+            right.get(right.position() + o, scratch[1], 0, n * MATRIX_FLOATS);
+            mulAll(scratch[0], scratch[1], scratch[2], n);
+            dst.put(dst.position() + o, scratch[2], 0, n * MATRIX_FLOATS);
+        }
+    }
+
+    // all of a is read before anything is written, so dst can alias either side
+    private static void mul(float[] a, int ao, float[] b, int bo, float[] dst, int o) {
+        float a00 = a[ao], a01 = a[ao + 1], a02 = a[ao + 2], a03 = a[ao + 3];
+        float a10 = a[ao + 4], a11 = a[ao + 5], a12 = a[ao + 6], a13 = a[ao + 7];
+        float a20 = a[ao + 8], a21 = a[ao + 9], a22 = a[ao + 10], a23 = a[ao + 11];
+        float a30 = a[ao + 12], a31 = a[ao + 13], a32 = a[ao + 14], a33 = a[ao + 15];
+        for (int c = 0; c < MATRIX_FLOATS; c += 4) {
+            float b0 = b[bo + c], b1 = b[bo + c + 1], b2 = b[bo + c + 2], b3 = b[bo + c + 3];
+            dst[o + c] = a00 * b0 + a10 * b1 + a20 * b2 + a30 * b3;
+            dst[o + c + 1] = a01 * b0 + a11 * b1 + a21 * b2 + a31 * b3;
+            dst[o + c + 2] = a02 * b0 + a12 * b1 + a22 * b2 + a32 * b3;
+            dst[o + c + 3] = a03 * b0 + a13 * b1 + a23 * b2 + a33 * b3;
+        }
+    }
+
+    // dst[i] = translate(translations[i]) * rotate(rotations[i]) * scale(scales[i]), like Matrix4f.translationRotateScale
+    public void composeTrs(float[] translations, float[] rotations, float[] scales, float[] dst, int count) {
+        requireFloats(translations.length, count, POINT_FLOATS, "translations");
+        requireFloats(rotations.length, count, QUATERNION_FLOATS, "rotations");
+        requireFloats(scales.length, count, POINT_FLOATS, "scales");
+        requireFloats(dst.length, count, MATRIX_FLOATS, "dst");
+        for (int i = 0; i < count; i++) {
+            composeTrs(translations, rotations, scales, i, dst, i * MATRIX_FLOATS);
+        }
+    }
+
+    public void composeTrs(float[] translations, float[] rotations, float[] scales, FloatBuffer dst, int count) {
+        requireFloats(translations.length, count, POINT_FLOATS, "translations");
+        requireFloats(rotations.length, count, QUATERNION_FLOATS, "rotations");
+        requireFloats(scales.length, count, POINT_FLOATS, "scales");
+        requireFloats(dst.remaining(), count, MATRIX_FLOATS, "dst");
+        float[] matrices = SCRATCH.get()[2];
+        for (int done = 0; done < count; done += CHUNK) {
+            int n = Math.min(CHUNK, count - done);
+            for (int i = 0; i < n; i++) {
+                composeTrs(translations, rotations, scales, done + i, matrices, i * MATRIX_FLOATS);
+            }
+            dst.put(dst.position() + done * MATRIX_FLOATS, matrices, 0, n * MATRIX_FLOATS);
+        }
+    }
+
+    static void composeTrs(float[] translations, float[] rotations, float[] scales, int i, float[] dst, int o) {
+        int t = i * POINT_FLOATS;
+        int q = i * QUATERNION_FLOATS;
+        float x = rotations[q], y = rotations[q + 1], z = rotations[q + 2], w = rotations[q + 3];
+        float sx = scales[t], sy = scales[t + 1], sz = scales[t + 2];
+        float xx = x * x, yy = y * y, zz = z * z;
+        float xy = x * y, xz = x * z, yz = y * z;
+        float xw = x * w, yw = y * w, zw = z * w;
+        dst[o] = (1.0f - 2.0f * (yy + zz)) * sx;
+        dst[o + 1] = 2.0f * (xy + zw) * sx;
+        dst[o + 2] = 2.0f * (xz - yw) * sx;
+        dst[o + 3] = 0.0f;
+        dst[o + 4] = 2.0f * (xy - zw) * sy;
+        dst[o + 5] = (1.0f - 2.0f * (xx + zz)) * sy;
+        dst[o + 6] = 2.0f * (yz + xw) * sy;
+        dst[o + 7] = 0.0f;
+        dst[o + 8] = 2.0f * (xz + yw) * sz;
+        dst[o + 9] = 2.0f * (yz - xw) * sz;
+        dst[o + 10] = (1.0f - 2.0f * (xx + yy)) * sz;
+        dst[o + 11] = 0.0f;
+        dst[o + 12] = translations[t];
+        dst[o + 13] = translations[t + 1];
+        dst[o + 14] = translations[t + 2];
+        dst[o + 15] = 1.0f;
+    }
+
+    // dst[i] = matrix * (points[i], 1), affine only: the bottom row is ignored; dst may be points
+    public void transformPoints(float[] matrix, float[] points, float[] dst, int count) {
+        requireFloats(matrix.length, 1, MATRIX_FLOATS, "matrix");
+        requireFloats(points.length, count, POINT_FLOATS, "points");
+        requireFloats(dst.length, count, POINT_FLOATS, "dst");
+        for (int i = 0; i < count; i++) {
+            int o = i * POINT_FLOATS;
+            transformPoint(matrix, points[o], points[o + 1], points[o + 2], dst, o);
+        }
+    }
+
+    public void transformPoints(float[] matrix, FloatBuffer points, FloatBuffer dst, int count) {
+        requireFloats(matrix.length, 1, MATRIX_FLOATS, "matrix");
+        requireFloats(points.remaining(), count, POINT_FLOATS, "points");
+        requireFloats(dst.remaining(), count, POINT_FLOATS, "dst");
+        float[] chunk = SCRATCH.get()[0];
+        // a chunk of matrices holds more than a chunk of points
+        for (int done = 0; done < count; done += CHUNK) {
+            int n = Math.min(CHUNK, count - done);
+            int o = done * POINT_FLOATS;
+            points.get(points.position() + o, chunk, 0, n * POINT_FLOATS);
+            transformPoints(matrix, chunk, chunk, n);
+            dst.put(dst.position() + o, chunk, 0, n * POINT_FLOATS);
+        }
+    }
+
+    static void transformPoint(float[] m, float x, float y, float z, float[] dst, int o) {
+        dst[o] = m[0] * x + m[4] * y + m[8] * z + m[12];
+        dst[o + 1] = m[1] * x + m[5] * y + m[9] * z + m[13];
+        dst[o + 2] = m[2] * x + m[6] * y + m[10] * z + m[14];
+    }
+
+    static void requireFloats(int available, int count, int stride, String name) {
+        if (count < 0 || (long) count * stride > available) {
+            throw new IllegalArgumentException(name + " holds " + available + " floats, " + count + " x " + stride + " needed");
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package learnopengl.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static org.lwjgl.system.MemoryUtil.memSlice;
+
+/**
+ * A mesh stored exactly the way the GPU buffers hold it, so loading is a memory mapping and nothing else.
+ *
+ * Everything is little endian:
+ * <pre>
+ *  magic 'LMSH', version, header size, vertex stride, attribute count, index type, vertex count, index count (8 ints)
+ *  vertex block offset, vertex block size, index block offset, index block size                       (4 longs)
+ *  per attribute: location, components, {@link VertexFormat.Type} ordinal, offset                       (4 ints)
+ *  vertex block, then index block, each starting on a {@link #BLOCK_ALIGNMENT} boundary
+ * </pre>
+ * {@link #open} maps the file and checks the header; {@link #getVertices()} and {@link #getIndices()} are slices of
+ * the mapping that can go straight to glBufferData, no copy on the Java heap. The indices themselves are not
+ * scanned, a file is trusted to only reference vertices it contains once its header checks out.
+ */
+public class MeshFile {
+
+    public static final int MAGIC = 0x48534D4C; // "LMSH"
+    public static final int VERSION = 1;
+    public static final String FILE_EXTENSION = ".lmsh";
+
+    // page aligned, so each block starts a fresh page of the mapping
+    public static final int BLOCK_ALIGNMENT = 4096;
+
+    static final int HEADER_BYTES = 8 * 4 + 4 * 8;
+    static final int ATTRIBUTE_BYTES = 4 * 4;
+    static final int MAX_ATTRIBUTES = 16;
+
+    private final VertexFormat format;
+    private final int vertexCount;
+    private final int indexCount;
+    private final int indexType;
+    private final ByteBuffer vertices;
+    private final ByteBuffer indices;
+
+    private MeshFile(VertexFormat format, int vertexCount, int indexCount, int indexType, ByteBuffer vertices, ByteBuffer indices) {
+        this.format = format;
+        this.vertexCount = vertexCount;
+        this.indexCount = indexCount;
+        this.indexType = indexType;
+        this.vertices = vertices;
+        this.indices = indices;
+    }
+
+    public VertexFormat getFormat() {
+        return format;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    public int getIndexType() {
+        return indexType;
+    }
+
+    // slice of the mapping, valid for as long as this object is reachable
+    public ByteBuffer getVertices() {
+        return vertices;
+    }
+
+    public ByteBuffer getIndices() {
+        return indices;
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------//
+    //  writing                                                                                                        //
+    // ---------------------------------------------------------------------------------------------------------------//
+
+    // packs a built mesh with the given format, which has to take as many floats as the mesh has per vertex
+    public static void write(Path file, VertexFormat format, Mesh mesh) throws IOException {
+        if (format.getFloatsPerVertex() != mesh.getFloatsPerVertex()) {
+            throw new IllegalArgumentException("Format takes " + format.getFloatsPerVertex()
+                    + " floats per vertex, the mesh has " + mesh.getFloatsPerVertex());
+        }
+        write(file, format, format.pack(mesh.getVertices()), mesh.getIndices(), mesh.getIndexType());
+    }
+
+    // vertices already packed in the given format, indices in native order
+    public static void write(Path file, VertexFormat format, ByteBuffer vertices, ByteBuffer indices, int indexType) throws IOException {
+        if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+            throw new IOException("Mesh files can only be written on little endian machines");
+        }
+        int stride = format.getStride();
+        if (vertices.remaining() % stride != 0) {
+            throw new IllegalArgumentException(vertices.remaining() + " bytes is not a whole number of " + stride + "-byte vertices");
+        }
+        if (!vertices.hasRemaining() || !indices.hasRemaining()) {
+            throw new IllegalArgumentException("A mesh file needs at least one vertex and one triangle");
+        }
+        int indexBytes = indexSize(indexType);
+        if (indexBytes == 0 || indices.remaining() % (3 * indexBytes) != 0) {
+            throw new IllegalArgumentException("Indices are not a list of " + indexType + " triangles");
+        }
+        List<VertexFormat.Attribute> attributes = format.getAttributes();
+        if (attributes.isEmpty() || attributes.size() > MAX_ATTRIBUTES) {
+            throw new IllegalArgumentException("A mesh file holds 1 to " + MAX_ATTRIBUTES + " attributes, not " + attributes.size());
+        }
+
+        int headerSize = HEADER_BYTES + attributes.size() * ATTRIBUTE_BYTES;
+        long vertexOffset = align(headerSize);
+        long indexOffset = align(vertexOffset + vertices.remaining());
+
+        ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(headerSize).putInt(stride).putInt(attributes.size()).putInt(indexType)
+                .putInt(vertices.remaining() / stride).putInt(indices.remaining() / indexBytes)
+                .putLong(vertexOffset).putLong(vertices.remaining()).putLong(indexOffset).putLong(indices.remaining());
+        for (VertexFormat.Attribute attribute : attributes) {
+            header.putInt(attribute.getLocation()).putInt(attribute.getComponents())
+                    .putInt(attribute.getType().ordinal()).putInt(attribute.getOffset());
+        }
+        header.flip();
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            writeFully(channel, header, 0);
+            writeFully(channel, vertices.duplicate(), vertexOffset);
+            writeFully(channel, indices.duplicate(), indexOffset);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+
+    static long align(long offset) {
+        return (offset + BLOCK_ALIGNMENT - 1) & -BLOCK_ALIGNMENT;
+    }
+
+    private static int indexSize(int indexType) {
+        switch (indexType) {
+            case GL_UNSIGNED_SHORT:
+                return Short.BYTES;
+            case GL_UNSIGNED_INT:
+                return Integer.BYTES;
+            default:
+                return 0;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------//
+    //  loading                                                                                                        //
+    // ---------------------------------------------------------------------------------------------------------------//
+
+    public static MeshFile open(Path file) throws IOException {
+        if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+            throw new IOException("Mesh files can only be used on little endian machines");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES) {
+                throw new IOException("truncated mesh file " + file);
+            }
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("mesh file larger than 2GB: " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            int magic = mapped.getInt(0);
+            int version = mapped.getInt(4);
+            int headerSize = mapped.getInt(8);
+            int stride = mapped.getInt(12);
+            int attributeCount = mapped.getInt(16);
+            int indexType = mapped.getInt(20);
+            int vertexCount = mapped.getInt(24);
+            int indexCount = mapped.getInt(28);
+            long vertexOffset = mapped.getLong(32);
+            long vertexBytes = mapped.getLong(40);
+            long indexOffset = mapped.getLong(48);
+            long indexBytes = mapped.getLong(56);
+            if (magic != MAGIC || version != VERSION) {
+                throw new IOException("not a version " + VERSION + " mesh file: " + file);
+            }
+            if (attributeCount < 1 || attributeCount > MAX_ATTRIBUTES
+                    || headerSize != HEADER_BYTES + attributeCount * ATTRIBUTE_BYTES || headerSize > fileSize) {
+                throw new IOException("corrupt mesh file header: " + file);
+            }
+
+            VertexFormat format = readFormat(mapped, attributeCount, file);
+            int indexSize = indexSize(indexType);
+            if (format.getStride() != stride || indexSize == 0
+                    || vertexCount <= 0 || vertexBytes != (long) vertexCount * stride
+                    || indexCount <= 0 || indexCount % 3 != 0 || indexBytes != (long) indexCount * indexSize) {
+                throw new IOException("corrupt mesh file header: " + file);
+            }
+            if (vertexOffset % BLOCK_ALIGNMENT != 0 || indexOffset % BLOCK_ALIGNMENT != 0
+                    || vertexOffset < headerSize || indexOffset < vertexOffset + vertexBytes
+                    || indexOffset + indexBytes > fileSize) {
+                throw new IOException("mesh file blocks out of place: " + file);
+            }
+
+            ByteBuffer vertices = memSlice(mapped, (int) vertexOffset, (int) vertexBytes).order(ByteOrder.nativeOrder());
+            ByteBuffer indices = memSlice(mapped, (int) indexOffset, (int) indexBytes).order(ByteOrder.nativeOrder());
+            return new MeshFile(format, vertexCount, indexCount, indexType, vertices, indices);
+        }
+    }
+
+    // rebuilds the format and checks every attribute lands where the file says it does
+    private static VertexFormat readFormat(ByteBuffer mapped, int attributeCount, Path file) throws IOException {
+        VertexFormat.Type[] types = VertexFormat.Type.values();
+        VertexFormat.Builder builder = new VertexFormat.Builder();
+        int[] offsets = new int[attributeCount];
+        try {
+            for (int a = 0; a < attributeCount; a++) {
+                int entry = HEADER_BYTES + a * ATTRIBUTE_BYTES;
+                int type = mapped.getInt(entry + 8);
+                if (type < 0 || type >= types.length) {
+                    throw new IOException("unknown attribute type " + type + " in mesh file " + file);
+                }
+                builder.add(mapped.getInt(entry), mapped.getInt(entry + 4), types[type]);
+                offsets[a] = mapped.getInt(entry + 12);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("corrupt attribute in mesh file " + file + " :: " + e.getMessage(), e);
+        }
+        VertexFormat format = builder.build();
+        for (int a = 0; a < attributeCount; a++) {
+            if (format.getAttributes().get(a).getOffset() != offsets[a]) {
+                throw new IOException("attribute " + a + " out of place in mesh file " + file);
+            }
+        }
+        return format;
+    }
+}
@@ -0,0 +1,57 @@
+package learnopengl.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes every mesh of the given model files as a {@link MeshFile} next to its source, e.g. backpack.obj gives
+ * backpack-0.lmsh, backpack-1.lmsh and so on. Run through the packMeshes gradle task with the files as arguments.
+ * The models go through {@link ModelLoader} and its mesh cache first, so packing an already baked model skips Assimp.
+ */
+public class MeshPacker {
+
+    // the chapter layout with full precision positions, the colors and uvs do not need it: 20 bytes instead of 36
+    public static final VertexFormat FORMAT = new VertexFormat.Builder()
+            .add(0, 3, VertexFormat.Type.FLOAT)
+            .add(1, 4, VertexFormat.Type.UNSIGNED_BYTE_NORM)
+            .add(2, 2, VertexFormat.Type.HALF_FLOAT)
+            .build();
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Pass the model files to pack, e.g. gradle packMeshes --args=\"models/backpack.obj\"");
+            return;
+        }
+
+        for (String arg : args) {
+            Path source = Path.of(arg).toAbsolutePath();
+            try {
+                long start = System.nanoTime();
+                Model model = ModelLoader.loadCached(source, ModelLoader.defaultCacheDirectory(),
+                        BakedTexture.codecFromName(System.getProperty("learnopengl.modelCodec", "zstd")),
+                        ModelLoader.NO_PROGRESS, () -> false);
+                for (int m = 0; m < model.getMeshes().size(); m++) {
+                    Mesh mesh = model.getMeshes().get(m);
+                    if (mesh.getVertexCount() == 0 || mesh.getIndexCount() == 0) {
+                        System.out.printf("  %s: empty, skipped%n", model.getNames().get(m));
+                        continue;
+                    }
+                    Path file = packedFile(source, m);
+                    MeshFile.write(file, FORMAT, mesh);
+                    System.out.printf("  %s -> %s, %d bytes%n", model.getNames().get(m), file.getFileName(), Files.size(file));
+                }
+                System.out.printf("%s: %d meshes packed in %.1f ms%n", arg, model.getMeshes().size(), (System.nanoTime() - start) / 1e6);
+            } catch (IOException | RuntimeException e) {
+                System.out.printf("%s: packing failed :: %s%n", arg, e.getMessage());
+            }
+        }
+    }
+
+    public static Path packedFile(Path source, int meshIndex) {
+        String name = source.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        return source.resolveSibling(stem + "-" + meshIndex + MeshFile.FILE_EXTENSION);
+    }
+}
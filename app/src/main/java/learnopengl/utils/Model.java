@@ -0,0 +1,73 @@
+package learnopengl.utils;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An imported model: one {@link Mesh} per source mesh, all in the chapter vertex layout of
+ * {@link ModelLoader#FLOATS_PER_VERTEX} floats (position, rgba color, uv), plus the bounds of every position.
+ */
+public class Model {
+
+    private final List<String> names;
+    private final List<Mesh> meshes;
+    private final float[] min;
+    private final float[] max;
+    private final boolean fromCache;
+
+    Model(List<String> names, List<Mesh> meshes, boolean fromCache) {
+        this.names = Collections.unmodifiableList(names);
+        this.meshes = Collections.unmodifiableList(meshes);
+        this.fromCache = fromCache;
+        this.min = new float[]{Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+        this.max = new float[]{Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        for (Mesh mesh : meshes) {
+            for (int v = 0; v < mesh.getVertexCount(); v++) {
+                int base = v * mesh.getFloatsPerVertex();
+                for (int c = 0; c < 3; c++) {
+                    float value = mesh.getVertices().get(base + c);
+                    min[c] = Math.min(min[c], value);
+                    max[c] = Math.max(max[c], value);
+                }
+            }
+        }
+    }
+
+    public List<Mesh> getMeshes() {
+        return meshes;
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    // component 0, 1 or 2; infinite for a model without vertices
+    public float getMin(int component) {
+        return min[component];
+    }
+
+    public float getMax(int component) {
+        return max[component];
+    }
+
+    public int getVertexCount() {
+        int count = 0;
+        for (Mesh mesh : meshes) {
+            count += mesh.getVertexCount();
+        }
+        return count;
+    }
+
+    public int getTriangleCount() {
+        int count = 0;
+        for (Mesh mesh : meshes) {
+            count += mesh.getIndexCount() / 3;
+        }
+        return count;
+    }
+
+    // true when the model was read back from the mesh cache and Assimp never ran
+    public boolean isFromCache() {
+        return fromCache;
+    }
+}
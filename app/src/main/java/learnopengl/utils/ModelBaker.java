@@ -0,0 +1,49 @@
+package learnopengl.utils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Imports model files ahead of time so the first run already reads them from the mesh cache. Run through the
+ * bakeModels gradle task with the files as arguments; they are imported in parallel and progress is printed as it
+ * comes in. Running it twice shows the cached load time.
+ */
+public class ModelBaker {
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length == 0) {
+            System.out.println("Pass the model files to import, e.g. gradle bakeModels --args=\"models/backpack.obj\"");
+            return;
+        }
+        if (ModelLoader.defaultCacheDirectory() == null) {
+            System.out.println("Model caching is disabled (learnopengl.modelCache=false), the files are only imported");
+        }
+
+        ModelLoader loader = new ModelLoader();
+        List<CompletableFuture<Model>> loads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (String arg : args) {
+            loads.add(loader.load(Path.of(arg), (file, stage, fraction) ->
+                    System.out.printf("%s: %s %3.0f%%%n", file.getFileName(), stage, 100.0f * fraction)));
+        }
+
+        for (int i = 0; i < args.length; i++) {
+            try {
+                Model model = loads.get(i).get();
+                System.out.printf("%s: %d meshes, %d vertices, %d triangles%s%n", args[i], model.getMeshes().size(),
+                        model.getVertexCount(), model.getTriangleCount(), model.isFromCache() ? " (cached)" : "");
+                for (int m = 0; m < model.getMeshes().size(); m++) {
+                    System.out.printf("  %s: %s%n", model.getNames().get(m), model.getMeshes().get(m).summary());
+                }
+            } catch (ExecutionException e) {
+                System.out.printf("%s: import failed :: %s%n", args[i], e.getCause().getMessage());
+            }
+        }
+        System.out.printf("done in %.1f ms, cached models are in %s%n",
+                (System.nanoTime() - start) / 1e6, ModelLoader.defaultCacheDirectory());
+        loader.destroy();
+    }
+}
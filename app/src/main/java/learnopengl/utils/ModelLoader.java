@@ -0,0 +1,456 @@
+package learnopengl.utils;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.assimp.AIColor4D;
+import org.lwjgl.assimp.AIFace;
+import org.lwjgl.assimp.AIMesh;
+import org.lwjgl.assimp.AIScene;
+import org.lwjgl.assimp.AIVector3D;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.lwjgl.assimp.Assimp.aiGetErrorString;
+import static org.lwjgl.assimp.Assimp.aiImportFile;
+import static org.lwjgl.assimp.Assimp.aiProcess_JoinIdenticalVertices;
+import static org.lwjgl.assimp.Assimp.aiProcess_PreTransformVertices;
+import static org.lwjgl.assimp.Assimp.aiProcess_SortByPType;
+import static org.lwjgl.assimp.Assimp.aiProcess_Triangulate;
+import static org.lwjgl.assimp.Assimp.aiReleaseImport;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.util.xxhash.XXHash.XXH64;
+
+/**
+ * Imports OBJ, glTF, FBX and whatever else Assimp understands on a worker pool, converted to {@link Mesh}es in the
+ * chapter vertex layout: position, rgba color (white when the file has none) and uv.
+ *
+ * {@link #load} returns a future right away. Progress is reported per stage and per mesh through a listener that is
+ * called on the worker thread. Cancelling the future stops the import at the next checkpoint; the Assimp call itself
+ * cannot be interrupted, everything before and after it can.
+ *
+ * The converted model, already welded and reordered for the vertex cache, is cached in a compressed file keyed by the
+ * hash of the source file, so loading the same file again never reaches Assimp. Only the main file is hashed: an
+ * edited .mtl or .bin next to it is not noticed until the cache file is deleted.
+ */
+public class ModelLoader {
+
+    public static final int FLOATS_PER_VERTEX = 3 + 4 + 2;
+
+    public static final int MAGIC = 0x4C444D4C; // "LMDL"
+    public static final int VERSION = 1;
+    public static final String FILE_EXTENSION = ".lmdl";
+
+    static final int HEADER_BYTES = 8 * 4;
+
+    private static final int IMPORT_FLAGS = aiProcess_Triangulate | aiProcess_JoinIdenticalVertices
+            | aiProcess_PreTransformVertices | aiProcess_SortByPType;
+
+    public interface ProgressListener {
+        // fraction runs from 0 to 1 over the whole load, stage says what is going on
+        void progress(Path source, String stage, float fraction);
+    }
+
+    public static final ProgressListener NO_PROGRESS = (source, stage, fraction) -> { };
+
+    private final ExecutorService workers;
+    private final Path cacheDirectory; // null disables the mesh cache
+    private final int cacheCodec;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public ModelLoader() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), defaultCacheDirectory(),
+                BakedTexture.codecFromName(System.getProperty("learnopengl.modelCodec", "zstd")));
+    }
+
+    // -Dlearnopengl.modelCache=false always imports, -Dlearnopengl.modelCacheDir moves the cached files
+    public static Path defaultCacheDirectory() {
+        if (!Boolean.parseBoolean(System.getProperty("learnopengl.modelCache", "true"))) {
+            return null;
+        }
+        String dir = System.getProperty("learnopengl.modelCacheDir");
+        return dir != null
+                ? Path.of(dir)
+                : Path.of(System.getProperty("user.home"), ".cache", "learnopengl-with-lwjgl", "models");
+    }
+
+    public ModelLoader(int workerThreads, Path cacheDirectory, int cacheCodec) {
+        this.cacheDirectory = cacheDirectory;
+        this.cacheCodec = cacheCodec;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(r, "model-import-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public CompletableFuture<Model> load(Path file) {
+        return load(file, NO_PROGRESS);
+    }
+
+    // cancel the returned future to abandon the import
+    public CompletableFuture<Model> load(Path file, ProgressListener listener) {
+        CompletableFuture<Model> result = new CompletableFuture<>();
+        pending.incrementAndGet();
+        workers.execute(() -> {
+            try {
+                result.complete(loadCached(file, cacheDirectory, cacheCodec, listener, result::isCancelled));
+            } catch (CancellationException e) {
+                result.cancel(false);
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            } finally {
+                pending.decrementAndGet();
+            }
+        });
+        return result;
+    }
+
+    // Reads the cached model for a file when one exists for its current contents. Otherwise imports it with Assimp,
+    // converts every mesh and writes the cache file so the next load skips Assimp.
+    public static Model loadCached(Path file, Path cacheDirectory, int codec, ProgressListener listener,
+                                   BooleanSupplier cancelled) throws IOException {
+        checkCancelled(cancelled);
+        listener.progress(file, "hashing", 0.0f);
+        Path cacheFile = null;
+        if (cacheDirectory != null) {
+            cacheFile = cacheFile(file, cacheDirectory);
+            if (Files.isRegularFile(cacheFile)) {
+                try {
+                    List<String> names = new ArrayList<>();
+                    List<Mesh> meshes = read(cacheFile, names);
+                    listener.progress(file, "done", 1.0f);
+                    return new Model(names, meshes, true);
+                } catch (IOException e) {
+                    System.out.printf("Discarding cached model %s :: %s%n", cacheFile, e.getMessage());
+                    Files.deleteIfExists(cacheFile);
+                }
+            }
+        }
+        checkCancelled(cancelled);
+
+        Model model = importModel(file, listener, cancelled);
+        if (cacheFile != null) {
+            checkCancelled(cancelled);
+            listener.progress(file, "caching", 0.95f);
+            try {
+                write(cacheFile, model.getNames(), model.getMeshes(), codec);
+            } catch (IOException e) {
+                System.out.printf("Could not write cached model %s :: %s%n", cacheFile, e.getMessage());
+            }
+        }
+        listener.progress(file, "done", 1.0f);
+        return model;
+    }
+
+    // the cache file name is the hash of the source file, hashed straight from a mapping
+    static Path cacheFile(Path file, Path cacheDirectory) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer source = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return cacheDirectory.resolve(String.format("%016x%s", XXH64(source, 0L), FILE_EXTENSION));
+        }
+    }
+
+    public static Model importModel(Path file, ProgressListener listener, BooleanSupplier cancelled) throws IOException {
+        listener.progress(file, "importing", 0.1f);
+        AIScene scene = aiImportFile(file.toAbsolutePath().toString(), IMPORT_FLAGS);
+        if (scene == null) {
+            throw new IOException("Assimp could not import " + file + " :: " + aiGetErrorString());
+        }
+        try {
+            int meshCount = scene.mNumMeshes();
+            PointerBuffer meshPointers = scene.mMeshes();
+            List<String> names = new ArrayList<>(meshCount);
+            List<Mesh> meshes = new ArrayList<>(meshCount);
+            for (int m = 0; m < meshCount; m++) {
+                checkCancelled(cancelled);
+                listener.progress(file, "converting", 0.3f + 0.6f * m / meshCount);
+                AIMesh mesh = AIMesh.create(meshPointers.get(m));
+                Mesh converted = convert(mesh);
+                // point and line meshes are sorted out by the import flags and come back empty
+                if (converted != null) {
+                    names.add(mesh.mName().dataString());
+                    meshes.add(converted);
+                }
+            }
+            return new Model(names, meshes, false);
+        } finally {
+            aiReleaseImport(scene);
+        }
+    }
+
+    // interleaved position, color, uv; null if the mesh has no triangles
+    static Mesh convert(AIMesh mesh) {
+        int vertexCount = mesh.mNumVertices();
+        AIVector3D.Buffer positions = mesh.mVertices();
+        AIColor4D.Buffer colors = mesh.mColors(0);
+        AIVector3D.Buffer uvs = mesh.mTextureCoords(0);
+
+        float[] vertices = new float[vertexCount * FLOATS_PER_VERTEX];
+        for (int v = 0; v < vertexCount; v++) {
+            int o = v * FLOATS_PER_VERTEX;
+            AIVector3D position = positions.get(v);
+            vertices[o] = position.x();
+            vertices[o + 1] = position.y();
+            vertices[o + 2] = position.z();
+            if (colors != null) {
+                AIColor4D color = colors.get(v);
+                vertices[o + 3] = color.r();
+                vertices[o + 4] = color.g();
+                vertices[o + 5] = color.b();
+                vertices[o + 6] = color.a();
+            } else {
+                vertices[o + 3] = vertices[o + 4] = vertices[o + 5] = vertices[o + 6] = 1.0f;
+            }
+            if (uvs != null) {
+                AIVector3D uv = uvs.get(v);
+                vertices[o + 7] = uv.x();
+                vertices[o + 8] = uv.y();
+            }
+        }
+
+        int faceCount = mesh.mNumFaces();
+        AIFace.Buffer faces = mesh.mFaces();
+        int[] indices = new int[faceCount * 3];
+        int indexCount = 0;
+        for (int f = 0; f < faceCount; f++) {
+            AIFace face = faces.get(f);
+            if (face.mNumIndices() != 3) {
+                continue;
+            }
+            indices[indexCount++] = face.mIndices().get(0);
+            indices[indexCount++] = face.mIndices().get(1);
+            indices[indexCount++] = face.mIndices().get(2);
+        }
+        if (indexCount == 0) {
+            return null;
+        }
+        if (indexCount < indices.length) {
+            indices = Arrays.copyOf(indices, indexCount);
+        }
+        return new Mesh.Builder(FLOATS_PER_VERTEX).indexed(vertices, indices).build();
+    }
+
+    private static void checkCancelled(BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------//
+    //  cache file                                                                                                     //
+    // ---------------------------------------------------------------------------------------------------------------//
+
+    // Little endian. The header is stored as is, everything after it is one zstd or lz4 compressed block:
+    //  header:   magic 'LMDL', version, codec, mesh count, raw block size (long), reserved, reserved    (8 ints)
+    //  per mesh: name length, utf-8 name padded to 4 bytes,
+    //            floats per vertex, input vertex count, vertex count, index type, index count,
+    //            acmr before, acmr after (floats), reordered, vertices, indices padded to 4 bytes
+    static void write(Path file, List<String> names, List<Mesh> meshes, int codec) throws IOException {
+        byte[][] encodedNames = new byte[meshes.size()][];
+        long rawSize = 0;
+        for (int m = 0; m < meshes.size(); m++) {
+            Mesh mesh = meshes.get(m);
+            encodedNames[m] = names.get(m).getBytes(StandardCharsets.UTF_8);
+            rawSize += 4 + align4(encodedNames[m].length) + 8 * 4
+                    + (long) mesh.getVertices().remaining() * Float.BYTES + align4(mesh.getIndices().remaining());
+        }
+        if (rawSize > Integer.MAX_VALUE) {
+            throw new IOException("Model too large to cache: " + rawSize + " bytes");
+        }
+
+        // memAlloc(0) may not hand out a usable buffer
+        ByteBuffer raw = memAlloc((int) Math.max(1, rawSize)).order(ByteOrder.LITTLE_ENDIAN);
+        raw.limit((int) rawSize);
+        ByteBuffer block = null;
+        try {
+            for (int m = 0; m < meshes.size(); m++) {
+                Mesh mesh = meshes.get(m);
+                raw.putInt(encodedNames[m].length).put(encodedNames[m]);
+                pad(raw);
+                raw.putInt(mesh.getFloatsPerVertex()).putInt(mesh.getInputVertexCount()).putInt(mesh.getVertexCount())
+                        .putInt(mesh.getIndexType()).putInt(mesh.getIndexCount())
+                        .putFloat(mesh.getAcmrBefore()).putFloat(mesh.getAcmrAfter()).putInt(mesh.isReordered() ? 1 : 0);
+                FloatBuffer vertices = mesh.getVertices();
+                for (int i = 0; i < vertices.remaining(); i++) {
+                    raw.putFloat(vertices.get(vertices.position() + i));
+                }
+                ByteBuffer indices = mesh.getIndices();
+                for (int i = 0; i < mesh.getIndexCount(); i++) {
+                    if (mesh.getIndexType() == GL_UNSIGNED_SHORT) {
+                        raw.putShort(indices.getShort(indices.position() + i * Short.BYTES));
+                    } else {
+                        raw.putInt(indices.getInt(indices.position() + i * Integer.BYTES));
+                    }
+                }
+                pad(raw);
+            }
+            raw.flip();
+            block = BakedTexture.compress(raw, codec);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(codec).putInt(meshes.size()).putLong(rawSize).putInt(0).putInt(0);
+            header.flip();
+
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                while (block.hasRemaining()) {
+                    channel.write(block);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            memFree(raw);
+            if (block != null) {
+                memFree(block);
+            }
+        }
+    }
+
+    static List<Mesh> read(Path file, List<String> names) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES) {
+                throw new IOException("truncated cached model " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            int magic = mapped.getInt(0);
+            int version = mapped.getInt(4);
+            int codec = mapped.getInt(8);
+            int meshCount = mapped.getInt(12);
+            long rawSize = mapped.getLong(16);
+            if (magic != MAGIC || version != VERSION) {
+                throw new IOException("not a version " + VERSION + " cached model: " + file);
+            }
+            if (codec < BakedTexture.CODEC_NONE || codec > BakedTexture.CODEC_LZ4 || meshCount < 0
+                    || rawSize < 0 || rawSize > Integer.MAX_VALUE) {
+                throw new IOException("corrupt cached model header: " + file);
+            }
+
+            ByteBuffer raw = memAlloc((int) Math.max(1, rawSize)).order(ByteOrder.LITTLE_ENDIAN);
+            raw.limit((int) rawSize);
+            try {
+                mapped.position(HEADER_BYTES);
+                BakedTexture.decompress(mapped.slice(), raw, codec);
+                // zstd and lz4 leave the position where it was, only the uncompressed copy moves it
+                raw.position(0).limit((int) rawSize);
+
+                List<Mesh> meshes = new ArrayList<>(meshCount);
+                for (int m = 0; m < meshCount; m++) {
+                    byte[] name = new byte[checkedLength(raw, 1, file)];
+                    raw.get(name);
+                    skipPadding(raw);
+                    names.add(new String(name, StandardCharsets.UTF_8));
+                    meshes.add(readMesh(raw, file));
+                }
+                return meshes;
+            } catch (RuntimeException e) {
+                // a short or mangled block shows up as buffer underflows and bad arguments
+                throw new IOException("corrupt cached model " + file + " :: " + e, e);
+            } finally {
+                memFree(raw);
+            }
+        }
+    }
+
+    private static Mesh readMesh(ByteBuffer raw, Path file) throws IOException {
+        int floatsPerVertex = raw.getInt();
+        int inputVertexCount = raw.getInt();
+        int vertexCount = raw.getInt();
+        int indexType = raw.getInt();
+        int indexCount = raw.getInt();
+        float acmrBefore = raw.getFloat();
+        float acmrAfter = raw.getFloat();
+        boolean reordered = raw.getInt() != 0;
+        if (floatsPerVertex != FLOATS_PER_VERTEX || vertexCount < 0 || indexCount < 0 || indexCount % 3 != 0
+                || indexType != GL_UNSIGNED_SHORT && indexType != GL_UNSIGNED_INT) {
+            throw new IOException("corrupt mesh in cached model " + file);
+        }
+
+        FloatBuffer vertices = BufferUtils.createFloatBuffer(checkedCount(raw, vertexCount, floatsPerVertex * Float.BYTES, file) * floatsPerVertex);
+        for (int i = 0; i < vertices.capacity(); i++) {
+            vertices.put(i, raw.getFloat());
+        }
+        int indexBytes = indexType == GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES;
+        ByteBuffer indices = BufferUtils.createByteBuffer(checkedCount(raw, indexCount, indexBytes, file) * indexBytes);
+        for (int i = 0; i < indexCount; i++) {
+            int index = indexType == GL_UNSIGNED_SHORT ? raw.getShort() & 0xFFFF : raw.getInt();
+            if (index < 0 || index >= vertexCount) {
+                throw new IOException("index out of range in cached model " + file);
+            }
+            if (indexType == GL_UNSIGNED_SHORT) {
+                indices.putShort(i * Short.BYTES, (short) index);
+            } else {
+                indices.putInt(i * Integer.BYTES, index);
+            }
+        }
+        skipPadding(raw);
+        return new Mesh(floatsPerVertex, inputVertexCount, vertices, indices, indexType, acmrBefore, acmrAfter, reordered);
+    }
+
+    // a length read from the block, refused when the block cannot hold that many elements
+    private static int checkedLength(ByteBuffer raw, int elementBytes, Path file) throws IOException {
+        return checkedCount(raw, raw.getInt(), elementBytes, file);
+    }
+
+    private static int checkedCount(ByteBuffer raw, int count, int elementBytes, Path file) throws IOException {
+        if (count < 0 || (long) count * elementBytes > raw.remaining()) {
+            throw new IOException("truncated cached model " + file);
+        }
+        return count;
+    }
+
+    private static int align4(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+
+    private static void pad(ByteBuffer buffer) {
+        while ((buffer.position() & 3) != 0) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private static void skipPadding(ByteBuffer buffer) {
+        buffer.position(align4(buffer.position()));
+    }
+
+    public boolean isIdle() {
+        return pending.get() == 0;
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public void destroy() {
+        workers.shutdownNow();
+    }
+}
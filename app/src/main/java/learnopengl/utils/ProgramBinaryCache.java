@@ -0,0 +1,179 @@
+package learnopengl.utils;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryStack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static org.lwjgl.opengl.GL11.GL_RENDERER;
+import static org.lwjgl.opengl.GL11.GL_TRUE;
+import static org.lwjgl.opengl.GL11.GL_VENDOR;
+import static org.lwjgl.opengl.GL11.GL_VERSION;
+import static org.lwjgl.opengl.GL11.glGetInteger;
+import static org.lwjgl.opengl.GL11.glGetString;
+import static org.lwjgl.opengl.GL20.GL_LINK_STATUS;
+import static org.lwjgl.opengl.GL20.glCreateProgram;
+import static org.lwjgl.opengl.GL20.glDeleteProgram;
+import static org.lwjgl.opengl.GL20.glGetProgrami;
+import static org.lwjgl.opengl.GL41.GL_NUM_PROGRAM_BINARY_FORMATS;
+import static org.lwjgl.opengl.GL41.GL_PROGRAM_BINARY_LENGTH;
+import static org.lwjgl.opengl.GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT;
+import static org.lwjgl.opengl.GL41.glGetProgramBinary;
+import static org.lwjgl.opengl.GL41.glProgramBinary;
+import static org.lwjgl.opengl.GL41.glProgramParameteri;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.system.MemoryUtil.memUTF8;
+import static org.lwjgl.util.xxhash.XXHash.XXH64;
+
+/**
+ * Stores linked programs with glGetProgramBinary and restores them with glProgramBinary on the next launch.
+ *
+ * Entries are keyed by an xxhash of the shader sources together with the vendor, renderer and version strings,
+ * so a driver update simply misses the cache. A binary the driver rejects is deleted and the caller compiles
+ * from source again.
+ */
+public class ProgramBinaryCache {
+
+    private static final int HEADER_BYTES = 4; // binary format enum
+
+    private final Path directory;
+    private final boolean enabled;
+
+    private Boolean supported;
+    private String driver;
+
+    public ProgramBinaryCache(Path directory, boolean enabled) {
+        this.directory = directory;
+        this.enabled = enabled;
+    }
+
+    // -Dlearnopengl.shaderCache=false turns the cache off, -Dlearnopengl.shaderCacheDir moves it
+    public static ProgramBinaryCache fromSystemProperties() {
+        String dir = System.getProperty("learnopengl.shaderCacheDir");
+        Path directory = dir != null
+                ? Path.of(dir)
+                : Path.of(System.getProperty("user.home"), ".cache", "learnopengl-with-lwjgl", "programs");
+        boolean enabled = Boolean.parseBoolean(System.getProperty("learnopengl.shaderCache", "true"));
+        return new ProgramBinaryCache(directory, enabled);
+    }
+
+    // needs a current context, the answer is remembered afterwards
+    public boolean isAvailable() {
+        if (!enabled) {
+            return false;
+        }
+        if (supported == null) {
+            GLCapabilities caps = GL.getCapabilities();
+            supported = (caps.OpenGL41 || caps.GL_ARB_get_program_binary) && glGetInteger(GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+            driver = glGetString(GL_VENDOR) + "\n" + glGetString(GL_RENDERER) + "\n" + glGetString(GL_VERSION);
+        }
+        return supported;
+    }
+
+    public long key(String vshader, String gshader, String fshader) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(driver).append('\0');
+        sb.append(vshader == null ? "" : vshader).append('\0');
+        sb.append(gshader == null ? "" : gshader).append('\0');
+        sb.append(fshader == null ? "" : fshader);
+        ByteBuffer bytes = memUTF8(sb, false);
+        try {
+            return XXH64(bytes, 0L);
+        } finally {
+            memFree(bytes);
+        }
+    }
+
+    // has to be set before glLinkProgram, otherwise some drivers return an empty binary
+    public void prepareForLink(int program) {
+        glProgramParameteri(program, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+    }
+
+    // returns a linked program, or 0 when there is no usable entry for the key
+    public int load(long key) {
+        Path file = fileFor(key);
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+
+        int program = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= HEADER_BYTES) {
+                throw new IOException("truncated program binary " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            int format = mapped.getInt(0);
+            ByteBuffer binary = mapped.position(HEADER_BYTES).slice();
+
+            program = glCreateProgram();
+            glProgramBinary(program, format, binary);
+            if (glGetProgrami(program, GL_LINK_STATUS) == GL_TRUE) {
+                return program;
+            }
+            System.out.printf("program binary %s was rejected by the driver, recompiling%n", file.getFileName());
+        } catch (IOException e) {
+            System.out.printf("could not read program binary %s :: %s%n", file, e.getMessage());
+        }
+
+        if (program != 0) {
+            glDeleteProgram(program);
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // the next store() overwrites it anyway
+        }
+        return 0;
+    }
+
+    public void store(long key, int program) {
+        int length = glGetProgrami(program, GL_PROGRAM_BINARY_LENGTH);
+        if (length <= 0) {
+            return;
+        }
+
+        ByteBuffer data = memAlloc(HEADER_BYTES + length).order(ByteOrder.LITTLE_ENDIAN);
+        try (MemoryStack stack = stackPush()) {
+            IntBuffer written = stack.mallocInt(1);
+            IntBuffer format = stack.mallocInt(1);
+            ByteBuffer binary = data.position(HEADER_BYTES).slice();
+            glGetProgramBinary(program, written, format, binary);
+
+            data.putInt(0, format.get(0));
+            data.position(0).limit(HEADER_BYTES + written.get(0));
+
+            // write to a temp file first so a crash never leaves a half written entry behind
+            Files.createDirectories(directory);
+            Path file = fileFor(key);
+            Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.printf("could not write program binary :: %s%n", e.getMessage());
+        } finally {
+            memFree(data);
+        }
+    }
+
+    private Path fileFor(long key) {
+        return directory.resolve(String.format("%016x.bin", key));
+    }
+}
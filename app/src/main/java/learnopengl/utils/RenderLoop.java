@@ -0,0 +1,150 @@
+package learnopengl.utils;
+
+import org.lwjgl.glfw.GLFWVidMode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.lwjgl.glfw.GLFW.*;
+
+/**
+ * The loop every chapter runs: update, render, swap and poll events until the window is closed, with each of those
+ * timed into a {@link FrameStats}. The frame time is measured from one frame start to the next, so it includes the
+ * event polling and any time the driver blocks in the swap.
+ *
+ * What is swapped and polled is a {@link Surface}, a GLFW window or a {@link HeadlessContext}.
+ *
+ * The statistics are printed when the window closes; -Dlearnopengl.frameStatsCsv=file also writes them as CSV.
+ * -Dlearnopengl.capture=directory records every frame through a {@link FrameCapture}, whose cost on the loop is
+ * counted as render time and printed with the statistics.
+ */
+public class RenderLoop {
+
+    public interface Surface {
+
+        boolean shouldClose();
+
+        void swapBuffers();
+
+        void pollEvents();
+
+        // seconds, what chapters animate with
+        double getTime();
+    }
+
+    private final Surface surface;
+    private final FrameStats stats;
+    private final FrameCapture capture = FrameCapture.fromSystemProperties();
+
+    // needs GLFW to be initialized, the refresh interval comes from the primary monitor
+    public RenderLoop(long window) {
+        this(new WindowSurface(window), FrameStats.forRefreshRate(refreshRate()));
+    }
+
+    public RenderLoop(long window, FrameStats stats) {
+        this(new WindowSurface(window), stats);
+    }
+
+    // without a monitor the frame statistics count drops against 60Hz
+    public RenderLoop(Surface surface) {
+        this(surface, FrameStats.forRefreshRate(0));
+    }
+
+    public RenderLoop(Surface surface, FrameStats stats) {
+        this.surface = surface;
+        this.stats = stats;
+    }
+
+    public FrameStats getStats() {
+        return stats;
+    }
+
+    public FrameCapture getCapture() {
+        return capture;
+    }
+
+    public double getTime() {
+        return surface.getTime();
+    }
+
+    // update is for CPU work and whatever has to happen before drawing, render issues the draws
+    public void run(Runnable update, Runnable render) {
+        long previousStart = 0;
+        long updateNanos = 0, renderNanos = 0, swapNanos = 0;
+        while ( !surface.shouldClose() ) {
+            long start = System.nanoTime();
+            if (previousStart != 0) {
+                stats.recordFrame(start - previousStart, updateNanos, renderNanos, swapNanos);
+            }
+            previousStart = start;
+
+            update.run();
+            long updated = System.nanoTime();
+            render.run();
+            capture.capture(); // only queues the readback of what render drew
+            long rendered = System.nanoTime();
+            surface.swapBuffers(); // swap the color buffers
+            long swapped = System.nanoTime();
+
+            updateNanos = updated - start;
+            renderNanos = rendered - updated;
+            swapNanos = swapped - rendered;
+
+            // Poll for window events. The key callback of the chapter will only be
+            // invoked during this call.
+            surface.pollEvents();
+        }
+        // the context is still current, the last frames in flight can be read back
+        capture.destroy();
+        report();
+    }
+
+    private void report() {
+        System.out.print(stats.summary());
+        System.out.print(capture.summary());
+        String csv = System.getProperty("learnopengl.frameStatsCsv");
+        if (csv != null) {
+            try {
+                stats.writeCsv(Path.of(csv));
+                System.out.printf("frame statistics written to %s%n", Path.of(csv).toAbsolutePath());
+            } catch (IOException e) {
+                System.out.printf("Failed to write the frame statistics to %s :: %s%n", csv, e.getMessage());
+            }
+        }
+    }
+
+    private static int refreshRate() {
+        long monitor = glfwGetPrimaryMonitor();
+        GLFWVidMode mode = monitor != 0 ? glfwGetVideoMode(monitor) : null;
+        return mode != null ? mode.refreshRate() : 0;
+    }
+
+    private static class WindowSurface implements Surface {
+
+        private final long window;
+
+        WindowSurface(long window) {
+            this.window = window;
+        }
+
+        @Override
+        public boolean shouldClose() {
+            return glfwWindowShouldClose(window);
+        }
+
+        @Override
+        public void swapBuffers() {
+            glfwSwapBuffers(window);
+        }
+
+        @Override
+        public void pollEvents() {
+            glfwPollEvents();
+        }
+
+        @Override
+        public double getTime() {
+            return glfwGetTime();
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package learnopengl.utils;
+
+import org.joml.Matrix4fc;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.glDrawArrays;
+import static org.lwjgl.opengl.GL11.glDrawElements;
+import static org.lwjgl.opengl.GL20.glUniformMatrix4fv;
+
+/**
+ * Collects draw packets for a frame, sorts them by a packed 64-bit key and replays them through a {@link Backend}.
+ *
+ * The key puts the program in the top bits, then the vertex array, then the two texture units and finally a
+ * quantized depth, so sorting groups packets that share state and draws them front to back inside each group.
+ * GL names are interned to small ids the first time they are seen, the ids stay stable for the queue's lifetime.
+ * Packets live in pre-allocated arrays, submitting and executing a frame does not allocate.
+ */
+public class RenderQueue {
+
+    public static final int TEXTURE_UNITS = 2;
+
+    // key layout, most significant first: program | vertex array | texture 0 | texture 1 | depth
+    static final int DEPTH_BITS = 24;
+    static final int TEXTURE_BITS = 8;
+    static final int VERTEX_ARRAY_BITS = 12;
+    static final int PROGRAM_BITS = 12;
+
+    static final int TEXTURE1_SHIFT = DEPTH_BITS;
+    static final int TEXTURE0_SHIFT = TEXTURE1_SHIFT + TEXTURE_BITS;
+    static final int VERTEX_ARRAY_SHIFT = TEXTURE0_SHIFT + TEXTURE_BITS;
+    static final int PROGRAM_SHIFT = VERTEX_ARRAY_SHIFT + VERTEX_ARRAY_BITS;
+
+    private static final int DRAW_ARRAYS = 0;
+    private static final int DRAW_ELEMENTS = 1;
+
+    private static final int NONE = -1;
+
+    // What executing the queue turns into. The GL backend talks to the driver, tests record the calls instead.
+    public interface Backend {
+        void useProgram(int program);
+        void bindVertexArray(int vertexArray);
+        void bindTexture(int unit, int texture);
+        void uniformMatrix4(int location, FloatBuffer value);
+        void drawArrays(int mode, int first, int count);
+        void drawElements(int mode, int count, int type, long offset);
+    }
+
+    public static class GLBackend implements Backend {
+        private final GLState gl;
+
+        public GLBackend(GLState gl) {
+            this.gl = gl;
+        }
+
+        @Override
+        public void useProgram(int program) {
+            gl.useProgram(program);
+        }
+
+        @Override
+        public void bindVertexArray(int vertexArray) {
+            gl.bindVertexArray(vertexArray);
+        }
+
+        @Override
+        public void bindTexture(int unit, int texture) {
+            gl.bindTexture(unit, GL_TEXTURE_2D, texture);
+        }
+
+        @Override
+        public void uniformMatrix4(int location, FloatBuffer value) {
+            glUniformMatrix4fv(location, false, value);
+        }
+
+        @Override
+        public void drawArrays(int mode, int first, int count) {
+            glDrawArrays(mode, first, count);
+        }
+
+        @Override
+        public void drawElements(int mode, int count, int type, long offset) {
+            glDrawElements(mode, count, type, offset);
+        }
+    }
+
+    /**
+     * The packet being filled in. Handed out by {@link #packet()} and reused, it is only valid until the next
+     * draw call on it, which is what appends it to the queue.
+     */
+    public class Packet {
+        private int program;
+        private int vertexArray;
+        private final int[] textures = new int[TEXTURE_UNITS];
+        private int modelLocation;
+        private float depth;
+
+        private void reset() {
+            program = 0;
+            vertexArray = 0;
+            Arrays.fill(textures, 0);
+            modelLocation = NONE;
+            depth = 0.0f;
+            model.clear();
+        }
+
+        public Packet program(int program) {
+            this.program = program;
+            return this;
+        }
+
+        public Packet vertexArray(int vertexArray) {
+            this.vertexArray = vertexArray;
+            return this;
+        }
+
+        // 0 leaves the unit alone
+        public Packet texture(int unit, int texture) {
+            textures[unit] = texture;
+            return this;
+        }
+
+        public Packet model(int location, Matrix4fc matrix) {
+            this.modelLocation = location;
+            matrix.get(model);
+            return this;
+        }
+
+        // the index-th matrix of a packed buffer, e.g. TransformStage output
+        public Packet model(int location, FloatBuffer matrices, int index) {
+            this.modelLocation = location;
+            for (int f = 0; f < UniformUploader.MATRIX_FLOATS; f++) {
+                model.put(f, matrices.get(index * UniformUploader.MATRIX_FLOATS + f));
+            }
+            return this;
+        }
+
+        // view space distance, smaller draws first within a state group
+        public Packet depth(float depth) {
+            this.depth = depth;
+            return this;
+        }
+
+        public void drawArrays(int mode, int first, int count) {
+            submit(this, DRAW_ARRAYS, mode, first, count, 0, 0);
+        }
+
+        public void drawElements(int mode, int count, int type, long offset) {
+            submit(this, DRAW_ELEMENTS, mode, 0, count, type, offset);
+        }
+    }
+
+    private final int capacity;
+    private int count;
+
+    // one entry per packet, indexed by submission order
+    private final int[] programs;
+    private final int[] vertexArrays;
+    private final int[] textures;
+    private final int[] modelLocations;
+    private final FloatBuffer models;
+    private final int[] drawKinds;
+    private final int[] modes;
+    private final int[] firsts;
+    private final int[] counts;
+    private final int[] types;
+    private final long[] offsets;
+
+    // sort keys and the submission index they belong to, plus scratch space for the radix passes
+    private long[] keys;
+    private int[] order;
+    private long[] keyScratch;
+    private int[] orderScratch;
+    private final int[] histogram = new int[256];
+    private final int[] boundTextures = new int[TEXTURE_UNITS];
+
+    private final FloatBuffer model = BufferUtils.createFloatBuffer(UniformUploader.MATRIX_FLOATS);
+    private final Packet packet = new Packet();
+
+    private final IntIntMap programIds = new IntIntMap(16, NONE);
+    private final IntIntMap vertexArrayIds = new IntIntMap(16, NONE);
+    private final IntIntMap textureIds = new IntIntMap(16, NONE);
+
+    private int stateChanges;
+    private int drawCalls;
+
+    public RenderQueue(int capacity) {
+        this.capacity = capacity;
+        this.programs = new int[capacity];
+        this.vertexArrays = new int[capacity];
+        this.textures = new int[capacity * TEXTURE_UNITS];
+        this.modelLocations = new int[capacity];
+        this.models = BufferUtils.createFloatBuffer(capacity * UniformUploader.MATRIX_FLOATS);
+        this.drawKinds = new int[capacity];
+        this.modes = new int[capacity];
+        this.firsts = new int[capacity];
+        this.counts = new int[capacity];
+        this.types = new int[capacity];
+        this.offsets = new long[capacity];
+        this.keys = new long[capacity];
+        this.order = new int[capacity];
+        this.keyScratch = new long[capacity];
+        this.orderScratch = new int[capacity];
+
+        // 0 means "nothing bound" everywhere and always sorts first
+        programIds.put(0, 0);
+        vertexArrayIds.put(0, 0);
+        textureIds.put(0, 0);
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public Packet packet() {
+        packet.reset();
+        return packet;
+    }
+
+    private void submit(Packet p, int kind, int mode, int first, int vertexCount, int type, long offset) {
+        if (count == capacity) {
+            throw new IllegalStateException("Render queue is full (" + capacity + " packets)");
+        }
+        int i = count++;
+        programs[i] = p.program;
+        vertexArrays[i] = p.vertexArray;
+        for (int unit = 0; unit < TEXTURE_UNITS; unit++) {
+            textures[i * TEXTURE_UNITS + unit] = p.textures[unit];
+        }
+        modelLocations[i] = p.modelLocation;
+        if (p.modelLocation != NONE) {
+            for (int f = 0; f < UniformUploader.MATRIX_FLOATS; f++) {
+                models.put(i * UniformUploader.MATRIX_FLOATS + f, model.get(f));
+            }
+        }
+        drawKinds[i] = kind;
+        modes[i] = mode;
+        firsts[i] = first;
+        counts[i] = vertexCount;
+        types[i] = type;
+        offsets[i] = offset;
+
+        keys[i] = key(intern(programIds, p.program, PROGRAM_BITS, "programs"),
+                intern(vertexArrayIds, p.vertexArray, VERTEX_ARRAY_BITS, "vertex arrays"),
+                intern(textureIds, p.textures[0], TEXTURE_BITS, "textures"),
+                intern(textureIds, p.textures[1], TEXTURE_BITS, "textures"),
+                quantizeDepth(p.depth));
+        order[i] = i;
+    }
+
+    private static int intern(IntIntMap ids, int name, int bits, String what) {
+        int id = ids.get(name);
+        if (id == NONE) {
+            id = ids.size();
+            if (id >= 1 << bits) {
+                throw new IllegalStateException("Too many distinct " + what + " for the sort key (" + (1 << bits) + ")");
+            }
+            ids.put(name, id);
+        }
+        return id;
+    }
+
+    static long key(int program, int vertexArray, int texture0, int texture1, int depth) {
+        return ((long) program << PROGRAM_SHIFT)
+                | ((long) vertexArray << VERTEX_ARRAY_SHIFT)
+                | ((long) texture0 << TEXTURE0_SHIFT)
+                | ((long) texture1 << TEXTURE1_SHIFT)
+                | depth;
+    }
+
+    // the bit pattern of a non-negative float grows with its value, keep the top 24 of its 31 bits
+    static int quantizeDepth(float depth) {
+        if (!(depth > 0.0f)) {
+            return 0;
+        }
+        return Float.floatToIntBits(depth) >>> (31 - DEPTH_BITS);
+    }
+
+    // least significant byte first; passes where every key has the same byte are skipped
+    private void sort() {
+        for (int shift = 0; shift < Long.SIZE; shift += 8) {
+            Arrays.fill(histogram, 0);
+            for (int i = 0; i < count; i++) {
+                histogram[(int) (keys[i] >>> shift) & 0xFF]++;
+            }
+            if (count == 0 || histogram[(int) (keys[0] >>> shift) & 0xFF] == count) {
+                continue;
+            }
+            int sum = 0;
+            for (int b = 0; b < 256; b++) {
+                int c = histogram[b];
+                histogram[b] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < count; i++) {
+                int dst = histogram[(int) (keys[i] >>> shift) & 0xFF]++;
+                keyScratch[dst] = keys[i];
+                orderScratch[dst] = order[i];
+            }
+            long[] k = keys;
+            keys = keyScratch;
+            keyScratch = k;
+            int[] o = order;
+            order = orderScratch;
+            orderScratch = o;
+        }
+    }
+
+    // sorts the queued packets and replays them, only issuing state that differs from the previous packet
+    public void execute(Backend backend) {
+        sort();
+        stateChanges = 0;
+        drawCalls = 0;
+
+        int program = NONE;
+        int vertexArray = NONE;
+        Arrays.fill(boundTextures, NONE);
+        for (int n = 0; n < count; n++) {
+            int i = order[n];
+            if (programs[i] != program) {
+                program = programs[i];
+                backend.useProgram(program);
+                stateChanges++;
+            }
+            if (vertexArrays[i] != vertexArray) {
+                vertexArray = vertexArrays[i];
+                backend.bindVertexArray(vertexArray);
+                stateChanges++;
+            }
+            for (int unit = 0; unit < TEXTURE_UNITS; unit++) {
+                int texture = textures[i * TEXTURE_UNITS + unit];
+                if (texture != 0 && texture != boundTextures[unit]) {
+                    boundTextures[unit] = texture;
+                    backend.bindTexture(unit, texture);
+                    stateChanges++;
+                }
+            }
+            if (modelLocations[i] != NONE) {
+                models.limit((i + 1) * UniformUploader.MATRIX_FLOATS);
+                models.position(i * UniformUploader.MATRIX_FLOATS);
+                backend.uniformMatrix4(modelLocations[i], models);
+            }
+            if (drawKinds[i] == DRAW_ARRAYS) {
+                backend.drawArrays(modes[i], firsts[i], counts[i]);
+            } else {
+                backend.drawElements(modes[i], counts[i], types[i], offsets[i]);
+            }
+            drawCalls++;
+        }
+        models.clear();
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // submission index of the n-th packet in execution order, valid after execute()
+    public int getSortedIndex(int n) {
+        return order[n];
+    }
+
+    public int getStateChanges() {
+        return stateChanges;
+    }
+
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+}
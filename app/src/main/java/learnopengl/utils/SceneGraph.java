@@ -0,0 +1,297 @@
+package learnopengl.utils;
+
+import org.joml.Matrix4f;
+
+import java.util.Arrays;
+
+/**
+ * Parent/child transform hierarchy kept in one depth-first ordered set of arrays.
+ *
+ * Every node has a local translation, rotation (a quaternion) and scale, and a world matrix which is the parent's
+ * world matrix times the local one. Because a subtree always occupies a contiguous range starting at its root,
+ * {@link #update()} only has to walk the ranges below nodes whose local transform changed, front to back, and the
+ * parent of a node has always been updated before the node itself.
+ *
+ * Nodes are referred to by handles that stay valid while other nodes are inserted; the array index behind a handle
+ * moves when something is inserted before it.
+ */
+public class SceneGraph {
+
+    public static final int NO_PARENT = -1;
+
+    private static final int MATRIX_FLOATS = UniformUploader.MATRIX_FLOATS;
+
+    private int capacity;
+    private int count;
+
+    // indexed by depth-first position
+    private int[] handles;
+    private int[] parents;      // position of the parent, NO_PARENT for roots
+    private int[] subtreeSizes; // the node itself included
+    private float[] translationX, translationY, translationZ;
+    private float[] rotationX, rotationY, rotationZ, rotationW;
+    private float[] scaleX, scaleY, scaleZ;
+    private float[] world;
+
+    // indexed by handle
+    private int[] positions;
+    private boolean[] dirty;
+    private int[] dirtyHandles;
+    private int dirtyCount;
+
+    private int lastUpdated;
+
+    public SceneGraph(int initialCapacity) {
+        capacity = Math.max(1, initialCapacity);
+        handles = new int[capacity];
+        parents = new int[capacity];
+        subtreeSizes = new int[capacity];
+        translationX = new float[capacity];
+        translationY = new float[capacity];
+        translationZ = new float[capacity];
+        rotationX = new float[capacity];
+        rotationY = new float[capacity];
+        rotationZ = new float[capacity];
+        rotationW = new float[capacity];
+        scaleX = new float[capacity];
+        scaleY = new float[capacity];
+        scaleZ = new float[capacity];
+        world = new float[capacity * MATRIX_FLOATS];
+        positions = new int[capacity];
+        dirty = new boolean[capacity];
+        dirtyHandles = new int[capacity];
+    }
+
+    // adds an identity node as the last child of parent (a handle, or NO_PARENT) and returns its handle
+    public int add(int parent) {
+        if (count == capacity) {
+            grow();
+        }
+        int position;
+        int parentPosition;
+        if (parent == NO_PARENT) {
+            parentPosition = NO_PARENT;
+            position = count;
+        } else {
+            parentPosition = positions[parent];
+            position = parentPosition + subtreeSizes[parentPosition];
+        }
+
+        // open a gap at the end of the parent's subtree, everything behind it moves up by one
+        int moved = count - position;
+        if (moved > 0) {
+            shift(position, moved);
+            for (int i = position + 1; i <= count; i++) {
+                positions[handles[i]] = i;
+                if (parents[i] >= position) {
+                    parents[i]++;
+                }
+            }
+        }
+
+        int handle = count++;
+        handles[position] = handle;
+        positions[handle] = position;
+        parents[position] = parentPosition;
+        subtreeSizes[position] = 1;
+        for (int p = parentPosition; p != NO_PARENT; p = parents[p]) {
+            subtreeSizes[p]++;
+        }
+        translationX[position] = translationY[position] = translationZ[position] = 0.0f;
+        rotationX[position] = rotationY[position] = rotationZ[position] = 0.0f;
+        rotationW[position] = 1.0f;
+        scaleX[position] = scaleY[position] = scaleZ[position] = 1.0f;
+        dirty[handle] = false;
+        markDirty(handle);
+        return handle;
+    }
+
+    private void shift(int from, int length) {
+        System.arraycopy(handles, from, handles, from + 1, length);
+        System.arraycopy(parents, from, parents, from + 1, length);
+        System.arraycopy(subtreeSizes, from, subtreeSizes, from + 1, length);
+        shift(translationX, from, length);
+        shift(translationY, from, length);
+        shift(translationZ, from, length);
+        shift(rotationX, from, length);
+        shift(rotationY, from, length);
+        shift(rotationZ, from, length);
+        shift(rotationW, from, length);
+        shift(scaleX, from, length);
+        shift(scaleY, from, length);
+        shift(scaleZ, from, length);
+        System.arraycopy(world, from * MATRIX_FLOATS, world, (from + 1) * MATRIX_FLOATS, length * MATRIX_FLOATS);
+    }
+
+    private static void shift(float[] a, int from, int length) {
+        System.arraycopy(a, from, a, from + 1, length);
+    }
+
+    private void grow() {
+        capacity *= 2;
+        handles = Arrays.copyOf(handles, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        subtreeSizes = Arrays.copyOf(subtreeSizes, capacity);
+        translationX = Arrays.copyOf(translationX, capacity);
+        translationY = Arrays.copyOf(translationY, capacity);
+        translationZ = Arrays.copyOf(translationZ, capacity);
+        rotationX = Arrays.copyOf(rotationX, capacity);
+        rotationY = Arrays.copyOf(rotationY, capacity);
+        rotationZ = Arrays.copyOf(rotationZ, capacity);
+        rotationW = Arrays.copyOf(rotationW, capacity);
+        scaleX = Arrays.copyOf(scaleX, capacity);
+        scaleY = Arrays.copyOf(scaleY, capacity);
+        scaleZ = Arrays.copyOf(scaleZ, capacity);
+        world = Arrays.copyOf(world, capacity * MATRIX_FLOATS);
+        positions = Arrays.copyOf(positions, capacity);
+        dirty = Arrays.copyOf(dirty, capacity);
+        dirtyHandles = Arrays.copyOf(dirtyHandles, capacity);
+    }
+
+    private void markDirty(int handle) {
+        if (!dirty[handle]) {
+            dirty[handle] = true;
+            dirtyHandles[dirtyCount++] = handle;
+        }
+    }
+
+    public void setTranslation(int node, float x, float y, float z) {
+        int i = positions[node];
+        translationX[i] = x;
+        translationY[i] = y;
+        translationZ[i] = z;
+        markDirty(node);
+    }
+
+    // angle in radians around the given axis
+    public void setRotation(int node, float angle, float axisX, float axisY, float axisZ) {
+        float invLength = (float) (1.0 / Math.sqrt(axisX * axisX + axisY * axisY + axisZ * axisZ));
+        float s = (float) Math.sin(angle * 0.5) * invLength;
+        int i = positions[node];
+        rotationX[i] = axisX * s;
+        rotationY[i] = axisY * s;
+        rotationZ[i] = axisZ * s;
+        rotationW[i] = (float) Math.cos(angle * 0.5);
+        markDirty(node);
+    }
+
+    public void setScale(int node, float x, float y, float z) {
+        int i = positions[node];
+        scaleX[i] = x;
+        scaleY[i] = y;
+        scaleZ[i] = z;
+        markDirty(node);
+    }
+
+    // recomputes the world matrices below every changed node, returns how many were recomputed
+    public int update() {
+        if (dirtyCount == 0) {
+            lastUpdated = 0;
+            return 0;
+        }
+        // positions in depth-first order, so a subtree is skipped when an ancestor's range already covered it
+        for (int d = 0; d < dirtyCount; d++) {
+            int handle = dirtyHandles[d];
+            dirty[handle] = false;
+            dirtyHandles[d] = positions[handle];
+        }
+        Arrays.sort(dirtyHandles, 0, dirtyCount);
+
+        int updated = 0;
+        int coveredUntil = 0;
+        for (int d = 0; d < dirtyCount; d++) {
+            int root = dirtyHandles[d];
+            if (root < coveredUntil) {
+                continue;
+            }
+            int end = root + subtreeSizes[root];
+            for (int i = root; i < end; i++) {
+                computeWorld(i);
+            }
+            updated += end - root;
+            coveredUntil = end;
+        }
+        dirtyCount = 0;
+        lastUpdated = updated;
+        return updated;
+    }
+
+    // world = parent world * translate * rotate * scale
+    private void computeWorld(int i) {
+        float qx = rotationX[i], qy = rotationY[i], qz = rotationZ[i], qw = rotationW[i];
+        float sx = scaleX[i], sy = scaleY[i], sz = scaleZ[i];
+        float l00 = (1.0f - 2.0f * (qy * qy + qz * qz)) * sx;
+        float l01 = 2.0f * (qx * qy + qz * qw) * sx;
+        float l02 = 2.0f * (qx * qz - qy * qw) * sx;
+        float l10 = 2.0f * (qx * qy - qz * qw) * sy;
+        float l11 = (1.0f - 2.0f * (qx * qx + qz * qz)) * sy;
+        float l12 = 2.0f * (qy * qz + qx * qw) * sy;
+        float l20 = 2.0f * (qx * qz + qy * qw) * sz;
+        float l21 = 2.0f * (qy * qz - qx * qw) * sz;
+        float l22 = (1.0f - 2.0f * (qx * qx + qy * qy)) * sz;
+        float l30 = translationX[i], l31 = translationY[i], l32 = translationZ[i];
+
+        float[] w = world;
+        int o = i * MATRIX_FLOATS;
+        int parent = parents[i];
+        if (parent == NO_PARENT) {
+            w[o] = l00; w[o + 1] = l01; w[o + 2] = l02; w[o + 3] = 0.0f;
+            w[o + 4] = l10; w[o + 5] = l11; w[o + 6] = l12; w[o + 7] = 0.0f;
+            w[o + 8] = l20; w[o + 9] = l21; w[o + 10] = l22; w[o + 11] = 0.0f;
+            w[o + 12] = l30; w[o + 13] = l31; w[o + 14] = l32; w[o + 15] = 1.0f;
+            return;
+        }
+        // both matrices are affine, the bottom row stays 0 0 0 1
+        int p = parent * MATRIX_FLOATS;
+        float p00 = w[p], p01 = w[p + 1], p02 = w[p + 2];
+        float p10 = w[p + 4], p11 = w[p + 5], p12 = w[p + 6];
+        float p20 = w[p + 8], p21 = w[p + 9], p22 = w[p + 10];
+        float p30 = w[p + 12], p31 = w[p + 13], p32 = w[p + 14];
+        w[o] = p00 * l00 + p10 * l01 + p20 * l02;
+        w[o + 1] = p01 * l00 + p11 * l01 + p21 * l02;
+        w[o + 2] = p02 * l00 + p12 * l01 + p22 * l02;
+        w[o + 3] = 0.0f;
+        w[o + 4] = p00 * l10 + p10 * l11 + p20 * l12;
+        w[o + 5] = p01 * l10 + p11 * l11 + p21 * l12;
+        w[o + 6] = p02 * l10 + p12 * l11 + p22 * l12;
+        w[o + 7] = 0.0f;
+        w[o + 8] = p00 * l20 + p10 * l21 + p20 * l22;
+        w[o + 9] = p01 * l20 + p11 * l21 + p21 * l22;
+        w[o + 10] = p02 * l20 + p12 * l21 + p22 * l22;
+        w[o + 11] = 0.0f;
+        w[o + 12] = p00 * l30 + p10 * l31 + p20 * l32 + p30;
+        w[o + 13] = p01 * l30 + p11 * l31 + p21 * l32 + p31;
+        w[o + 14] = p02 * l30 + p12 * l31 + p22 * l32 + p32;
+        w[o + 15] = 1.0f;
+    }
+
+    public Matrix4f getWorld(int node, Matrix4f dest) {
+        int o = positions[node] * MATRIX_FLOATS;
+        return dest.set(world[o], world[o + 1], world[o + 2], world[o + 3],
+                world[o + 4], world[o + 5], world[o + 6], world[o + 7],
+                world[o + 8], world[o + 9], world[o + 10], world[o + 11],
+                world[o + 12], world[o + 13], world[o + 14], world[o + 15]);
+    }
+
+    public int getParent(int node) {
+        int parent = parents[positions[node]];
+        return parent == NO_PARENT ? NO_PARENT : handles[parent];
+    }
+
+    // depth-first position of a node; its subtree is [position, position + subtree size)
+    public int getPosition(int node) {
+        return positions[node];
+    }
+
+    public int getSubtreeSize(int node) {
+        return subtreeSizes[positions[node]];
+    }
+
+    public int getLastUpdatedCount() {
+        return lastUpdated;
+    }
+
+    public int size() {
+        return count;
+    }
+}
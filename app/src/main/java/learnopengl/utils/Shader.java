@@ -1,26 +1,89 @@
 package learnopengl.utils;
 
+import org.joml.Matrix4fc;
+import org.joml.Vector3fc;
 import org.lwjgl.opengl.GL32;
 import org.lwjgl.opengl.GL33;
+import org.lwjgl.system.MemoryStack;
 
 import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_INT;
 import static org.lwjgl.opengl.GL11.GL_TRUE;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL20.glGetShaderInfoLog;
+import static org.lwjgl.system.MemoryStack.stackPush;
 
-public class Shader {
+public class Shader implements UniformUploader.Sink {
+
+    static final ProgramBinaryCache BINARY_CACHE = ProgramBinaryCache.fromSystemProperties();
 
     private int shaderId;
 
+    // active uniforms reflected at link time, every array element included: name -> location, and location -> first
+    // slot in uniformValues
+    private final Map<String, Integer> uniformLocations = new HashMap<>();
+    private final IntIntMap uniformSlots;
+
+    // last value uploaded per uniform as raw bits, so setters can drop uploads that change nothing
+    private final int[] uniformValues;
+    private final boolean[] uniformKnown;
+
+    private final float[] matrixScratch = new float[16];
+
     public Shader(int shaderId) {
         this.shaderId = shaderId;
+
+        int activeUniforms = glGetProgrami(shaderId, GL_ACTIVE_UNIFORMS);
+        this.uniformSlots = new IntIntMap(activeUniforms, -1);
+
+        int slots = 0;
+        try (MemoryStack stack = stackPush()) {
+            IntBuffer size = stack.mallocInt(1);
+            IntBuffer type = stack.mallocInt(1);
+            for (int i = 0; i < activeUniforms; i++) {
+                String name = glGetActiveUniform(shaderId, i, size, type);
+                int location = glGetUniformLocation(shaderId, name);
+                if (location < 0) {
+                    // members of uniform blocks have no location
+                    continue;
+                }
+                int components = componentCount(type.get(0));
+                uniformLocations.put(name, location);
+                uniformSlots.put(location, slots);
+                // arrays are reported once as "name[0]", register the bare name as well and give every other
+                // element its own location and slot; element locations do not have to be consecutive
+                if (name.endsWith("[0]")) {
+                    String base = name.substring(0, name.length() - 3);
+                    uniformLocations.put(base, location);
+                    for (int element = 1; element < size.get(0); element++) {
+                        String elementName = base + "[" + element + "]";
+                        int elementLocation = glGetUniformLocation(shaderId, elementName);
+                        if (elementLocation >= 0) {
+                            uniformLocations.put(elementName, elementLocation);
+                            uniformSlots.put(elementLocation, slots + element * components);
+                        }
+                    }
+                }
+                slots += components * size.get(0);
+            }
+        }
+
+        this.uniformValues = new int[slots];
+        this.uniformKnown = new boolean[slots];
     }
 
     public int getHandle() {
@@ -31,6 +94,152 @@ public class Shader {
         GL33.glUseProgram(shaderId);
     }
 
+    // resolved once at link time, so this never reaches the driver
+    public int getUniformLocation(String name) {
+        return uniformLocations.getOrDefault(name, -1);
+    }
+
+    public Set<String> getUniformNames() {
+        return Collections.unmodifiableSet(uniformLocations.keySet());
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------//
+    //  typed uniform setters, the program has to be bound with use() first                                            //
+    // ---------------------------------------------------------------------------------------------------------------//
+
+    public void setInt(String name, int value) {
+        setInt(getUniformLocation(name), value);
+    }
+
+    public void setInt(int location, int value) {
+        int slot = uniformSlots.get(location);
+        if (slot < 0) {
+            return;
+        }
+        if (uniformKnown[slot] && uniformValues[slot] == value) {
+            return;
+        }
+        uniformValues[slot] = value;
+        uniformKnown[slot] = true;
+        glUniform1i(location, value);
+    }
+
+    public void setVec3(String name, float x, float y, float z) {
+        setVec3(getUniformLocation(name), x, y, z);
+    }
+
+    public void setVec3(int location, Vector3fc value) {
+        setVec3(location, value.x(), value.y(), value.z());
+    }
+
+    public void setVec3(int location, float x, float y, float z) {
+        int slot = uniformSlots.get(location);
+        if (slot < 0) {
+            return;
+        }
+        int bx = Float.floatToRawIntBits(x);
+        int by = Float.floatToRawIntBits(y);
+        int bz = Float.floatToRawIntBits(z);
+        if (uniformKnown[slot] && uniformValues[slot] == bx && uniformValues[slot + 1] == by && uniformValues[slot + 2] == bz) {
+            return;
+        }
+        uniformValues[slot] = bx;
+        uniformValues[slot + 1] = by;
+        uniformValues[slot + 2] = bz;
+        uniformKnown[slot] = true;
+        glUniform3f(location, x, y, z);
+    }
+
+    public void setMat4(String name, Matrix4fc value) {
+        setMat4(getUniformLocation(name), value);
+    }
+
+    public void setMat4(int location, Matrix4fc value) {
+        int slot = uniformSlots.get(location);
+        if (slot < 0) {
+            return;
+        }
+        value.get(matrixScratch);
+        if (!updateShadow(slot, matrixScratch)) {
+            return;
+        }
+        glUniformMatrix4fv(location, false, matrixScratch);
+    }
+
+    // uploads the 16 floats starting at value.position()
+    public void setMat4(int location, FloatBuffer value) {
+        int slot = uniformSlots.get(location);
+        if (slot < 0) {
+            return;
+        }
+        int base = value.position();
+        for (int i = 0; i < 16; i++) {
+            matrixScratch[i] = value.get(base + i);
+        }
+        if (!updateShadow(slot, matrixScratch)) {
+            return;
+        }
+        glUniformMatrix4fv(location, false, matrixScratch);
+    }
+
+    @Override
+    public void uniformMatrix4(int location, FloatBuffer value) {
+        setMat4(location, value);
+    }
+
+    // returns true when the shadow copy changed and the value needs uploading
+    private boolean updateShadow(int slot, float[] values) {
+        boolean changed = !uniformKnown[slot];
+        for (int i = 0; i < values.length; i++) {
+            int bits = Float.floatToRawIntBits(values[i]);
+            if (uniformValues[slot + i] != bits) {
+                uniformValues[slot + i] = bits;
+                changed = true;
+            }
+        }
+        uniformKnown[slot] = true;
+        return changed;
+    }
+
+    private static int componentCount(int type) {
+        switch (type) {
+            case GL_FLOAT_VEC2:
+            case GL_INT_VEC2:
+            case GL_BOOL_VEC2:
+                return 2;
+            case GL_FLOAT_VEC3:
+            case GL_INT_VEC3:
+            case GL_BOOL_VEC3:
+                return 3;
+            case GL_FLOAT_VEC4:
+            case GL_INT_VEC4:
+            case GL_BOOL_VEC4:
+            case GL_FLOAT_MAT2:
+                return 4;
+            case GL_FLOAT_MAT3:
+                return 9;
+            case GL_FLOAT_MAT4:
+                return 16;
+            default:
+                // scalars and samplers; anything exotic gets room for a full matrix
+                return type == GL_FLOAT || type == GL_INT || type == GL_BOOL || isSampler(type) ? 1 : 16;
+        }
+    }
+
+    private static boolean isSampler(int type) {
+        switch (type) {
+            case GL_SAMPLER_1D:
+            case GL_SAMPLER_2D:
+            case GL_SAMPLER_3D:
+            case GL_SAMPLER_CUBE:
+            case GL_SAMPLER_1D_SHADOW:
+            case GL_SAMPLER_2D_SHADOW:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     // ---------------------------------------------------------------------------------------------------------------//
     //                                                                                                                //
     // ---------------------------------------------------------------------------------------------------------------//
@@ -54,6 +263,16 @@ public class Shader {
     }
 
     public static int createShaderProgram(String vshader, String gshader, String fshader) {
+        long cacheKey = 0;
+        if (BINARY_CACHE.isAvailable()) {
+            cacheKey = BINARY_CACHE.key(vshader, gshader, fshader);
+            int cachedProgram = BINARY_CACHE.load(cacheKey);
+            if (cachedProgram != 0) {
+                System.out.println("program loaded from binary cache");
+                return cachedProgram;
+            }
+        }
+
         List<Integer> shaderHandles = new ArrayList<>();
         if (vshader != null && !vshader.isEmpty()) {
             int vertShaderHandle = createShaderSource(vshader, GL32.GL_VERTEX_SHADER);
@@ -75,9 +294,16 @@ public class Shader {
         for (Integer handle : shaderHandles) {
             glAttachShader(shaderProgram, handle);
         }
+        if (BINARY_CACHE.isAvailable()) {
+            BINARY_CACHE.prepareForLink(shaderProgram);
+        }
         glLinkProgram(shaderProgram);
         checkIfProgramLinkedSuccessfully(shaderProgram);
 
+        if (BINARY_CACHE.isAvailable()) {
+            BINARY_CACHE.store(cacheKey, shaderProgram);
+        }
+
         for (Integer handle : shaderHandles) {
             glDeleteShader(handle);
         }
@@ -87,10 +313,16 @@ public class Shader {
 
 
     private static int createShaderSource(String shaderSource, int shaderType) {
+        int shaderHandle = submitShaderSource(shaderSource, shaderType);
+        checkIfShaderCompiledSuccessfully(shaderHandle);
+        return shaderHandle;
+    }
+
+    // starts the compile without asking for its status, which would wait for the driver compiler
+    static int submitShaderSource(String shaderSource, int shaderType) {
         int shaderHandle = glCreateShader(shaderType);
         glShaderSource(shaderHandle, shaderSource);
         glCompileShader(shaderHandle);
-        checkIfShaderCompiledSuccessfully(shaderHandle);
         return shaderHandle;
     }
 
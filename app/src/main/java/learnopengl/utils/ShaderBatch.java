@@ -0,0 +1,177 @@
+package learnopengl.utils;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.lwjgl.opengl.ARBParallelShaderCompile.glMaxShaderCompilerThreadsARB;
+import static org.lwjgl.opengl.GL11.GL_TRUE;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL32.GL_GEOMETRY_SHADER;
+import static org.lwjgl.opengl.KHRParallelShaderCompile.GL_COMPLETION_STATUS_KHR;
+import static org.lwjgl.opengl.KHRParallelShaderCompile.glMaxShaderCompilerThreadsKHR;
+
+/**
+ * Compiles and links many programs without waiting on each one. {@link #add} queues the sources, {@link #submit}
+ * compiles and links everything queued without asking for a single status, and {@link #poll} or {@link #finish}
+ * check the results afterwards and complete the futures.
+ *
+ * With KHR_parallel_shader_compile (or the ARB version) the driver compiles on its own threads and poll() only picks
+ * up the programs GL_COMPLETION_STATUS_KHR reports as done, so the render loop can keep going meanwhile. Without it
+ * the driver may still compile in the background, but the first status query waits for it. Everything here has to
+ * be called on the thread that owns the context, which is also where the futures complete.
+ */
+public class ShaderBatch {
+
+    private static final class Program {
+        final String name;
+        final String vshader, gshader, fshader;
+        final CompletableFuture<Shader> result = new CompletableFuture<>();
+        final List<Integer> shaders = new ArrayList<>();
+        int handle;
+        long cacheKey;
+
+        Program(String name, String vshader, String gshader, String fshader) {
+            this.name = name;
+            this.vshader = vshader;
+            this.gshader = gshader;
+            this.fshader = fshader;
+        }
+    }
+
+    private final boolean parallel;
+    private final List<Program> queued = new ArrayList<>();
+    private final List<Program> linking = new ArrayList<>();
+
+    // needs a current context
+    public ShaderBatch() {
+        GLCapabilities caps = GL.getCapabilities();
+        if (caps.GL_KHR_parallel_shader_compile) {
+            // all ones leaves the number of compiler threads to the driver
+            glMaxShaderCompilerThreadsKHR(0xFFFFFFFF);
+            parallel = true;
+        } else if (caps.GL_ARB_parallel_shader_compile) {
+            glMaxShaderCompilerThreadsARB(0xFFFFFFFF);
+            parallel = true;
+        } else {
+            parallel = false;
+        }
+    }
+
+    // true when the driver reports completion without blocking
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    // name only shows up in error messages; null or empty sources skip that stage
+    public CompletableFuture<Shader> add(String name, String vshader, String gshader, String fshader) {
+        Program program = new Program(name, vshader, gshader, fshader);
+        queued.add(program);
+        return program.result;
+    }
+
+    // compiles and links every queued program, cached binaries complete right away
+    public void submit() {
+        ProgramBinaryCache cache = Shader.BINARY_CACHE;
+        for (Program program : queued) {
+            if (cache.isAvailable()) {
+                program.cacheKey = cache.key(program.vshader, program.gshader, program.fshader);
+                int cached = cache.load(program.cacheKey);
+                if (cached != 0) {
+                    program.result.complete(new Shader(cached));
+                    continue;
+                }
+            }
+            addStage(program, program.vshader, GL_VERTEX_SHADER);
+            addStage(program, program.gshader, GL_GEOMETRY_SHADER);
+            addStage(program, program.fshader, GL_FRAGMENT_SHADER);
+            linking.add(program);
+        }
+        queued.clear();
+
+        // the links are issued after every compile, so the driver has all the sources before the first one blocks
+        for (Program program : linking) {
+            if (program.handle != 0) {
+                continue;
+            }
+            program.handle = glCreateProgram();
+            for (int shader : program.shaders) {
+                glAttachShader(program.handle, shader);
+            }
+            if (cache.isAvailable()) {
+                cache.prepareForLink(program.handle);
+            }
+            glLinkProgram(program.handle);
+        }
+    }
+
+    private static void addStage(Program program, String source, int type) {
+        if (source != null && !source.isEmpty()) {
+            program.shaders.add(Shader.submitShaderSource(source, type));
+        }
+    }
+
+    // completes the programs the driver is done with, true when nothing is left in flight
+    public boolean poll() {
+        return check(false);
+    }
+
+    // submits whatever is still queued and waits for all of it
+    public void finish() {
+        submit();
+        check(true);
+    }
+
+    public int getPendingCount() {
+        return queued.size() + linking.size();
+    }
+
+    private boolean check(boolean wait) {
+        for (Iterator<Program> it = linking.iterator(); it.hasNext(); ) {
+            Program program = it.next();
+            if (!wait && parallel && glGetProgrami(program.handle, GL_COMPLETION_STATUS_KHR) != GL_TRUE) {
+                continue;
+            }
+            it.remove();
+            complete(program);
+        }
+        return linking.isEmpty();
+    }
+
+    private static void complete(Program program) {
+        if (glGetProgrami(program.handle, GL_LINK_STATUS) == GL_TRUE) {
+            if (Shader.BINARY_CACHE.isAvailable()) {
+                Shader.BINARY_CACHE.store(program.cacheKey, program.handle);
+            }
+            deleteShaders(program);
+            try {
+                program.result.complete(new Shader(program.handle));
+            } catch (RuntimeException e) {
+                program.result.completeExceptionally(e);
+            }
+            return;
+        }
+
+        // the link log usually only says a stage failed, the reason is in that stage's own log
+        StringBuilder log = new StringBuilder();
+        for (int shader : program.shaders) {
+            if (glGetShaderi(shader, GL_COMPILE_STATUS) != GL_TRUE) {
+                log.append(glGetShaderInfoLog(shader)).append('\n');
+            }
+        }
+        log.append(glGetProgramInfoLog(program.handle));
+        deleteShaders(program);
+        glDeleteProgram(program.handle);
+        program.result.completeExceptionally(new RuntimeException("Shader Program " + program.name + " failed :: " + log));
+    }
+
+    private static void deleteShaders(Program program) {
+        for (int shader : program.shaders) {
+            glDeleteShader(shader);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package learnopengl.utils;
+
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL.getCapabilities;
+import static org.lwjgl.opengl.GL15.GL_STREAM_DRAW;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL15.glUnmapBuffer;
+import static org.lwjgl.opengl.GL30.GL_MAP_INVALIDATE_RANGE_BIT;
+import static org.lwjgl.opengl.GL30.GL_MAP_UNSYNCHRONIZED_BIT;
+import static org.lwjgl.opengl.GL30.GL_MAP_WRITE_BIT;
+import static org.lwjgl.opengl.GL30.glMapBufferRange;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.opengl.GL44.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.GL44.GL_MAP_PERSISTENT_BIT;
+import static org.lwjgl.opengl.GL44.glBufferStorage;
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memByteBuffer;
+
+/**
+ * A ring of per-frame regions for vertex and uniform data that changes every frame.
+ *
+ * With GL 4.4 or ARB_buffer_storage the buffer is allocated with glBufferStorage and mapped once, persistent and
+ * coherent. Each frame writes into its own region, and the next {@link #beginFrame()} puts a fence behind the draws
+ * that read it; by the time the ring comes back around that fence has normally long signaled, so beginFrame() only
+ * waits when the GPU is more than {@code regions - 1} frames behind. On plain GL 3.3 every frame maps its region unsynchronized
+ * instead, and the whole buffer is orphaned with glBufferData(NULL) each time the ring wraps, so the driver hands
+ * out fresh storage rather than stalling on the old one. -Dlearnopengl.streamBuffer=orphan forces that path.
+ *
+ * Writes go through {@link #getAddress(long)} or {@link #slice(long, int)} with the offset {@link #allocate}
+ * returned; that offset is also what glVertexAttribPointer or glBindBufferRange take.
+ */
+public class StreamBuffer {
+
+    public static final int DEFAULT_REGIONS = 3;
+    public static final int DEFAULT_ALIGNMENT = 16;
+
+    private static final long WAIT_TIMEOUT_NANOS = 1_000_000_000L;
+
+    private final GLState gl;
+    private final int target;
+    private final int regionSize;
+    private final int regions;
+    private final boolean persistent;
+    private final int buffer;
+
+    private final long[] fences;
+    private long mappedAddress; // persistent: the whole buffer, orphaning: the current region while in a frame
+    private int region = -1;
+    private int used;
+    private boolean writing;
+
+    private long stalls;
+    private long stallNanos;
+
+    public StreamBuffer(GLState gl, int target, int regionSize) {
+        this(gl, target, regionSize, DEFAULT_REGIONS, usePersistentMapping());
+    }
+
+    public StreamBuffer(GLState gl, int target, int regionSize, int regions, boolean persistent) {
+        if (regionSize <= 0 || regions < 2) {
+            throw new IllegalArgumentException("A stream buffer needs at least two regions of at least a byte");
+        }
+        this.gl = gl;
+        this.target = target;
+        this.regionSize = align(regionSize, DEFAULT_ALIGNMENT);
+        this.regions = regions;
+        this.persistent = persistent;
+        this.fences = new long[regions];
+
+        long capacity = (long) this.regionSize * regions;
+        buffer = glGenBuffers();
+        gl.bindBuffer(target, buffer);
+        if (persistent) {
+            int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+            // ARB_buffer_storage exports the same unsuffixed entry point
+            glBufferStorage(target, capacity, flags);
+            ByteBuffer mapping = glMapBufferRange(target, 0, capacity, flags);
+            if (mapping == null) {
+                throw new IllegalStateException("Failed to map the stream buffer persistently");
+            }
+            mappedAddress = memAddress(mapping);
+        } else {
+            glBufferData(target, capacity, GL_STREAM_DRAW);
+        }
+    }
+
+    // needs a current context
+    public static boolean usePersistentMapping() {
+        if ("orphan".equals(System.getProperty("learnopengl.streamBuffer"))) {
+            return false;
+        }
+        GLCapabilities caps = getCapabilities();
+        return caps.OpenGL44 || caps.GL_ARB_buffer_storage;
+    }
+
+    public int getHandle() {
+        return buffer;
+    }
+
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    public int getRegionSize() {
+        return regionSize;
+    }
+
+    // frames that had to wait for the GPU to release their region, and how long they waited in total
+    public long getStalls() {
+        return stalls;
+    }
+
+    public long getStallNanos() {
+        return stallNanos;
+    }
+
+    // Moves on to the next region and waits for its fence when the GPU has not finished reading it yet. Everything
+    // issued since the last beginFrame() read the previous region, so that is where its fence goes.
+    public void beginFrame() {
+        if (writing) {
+            throw new IllegalStateException("beginFrame() called again without endWrites()");
+        }
+        if (persistent && region >= 0) {
+            fences[region] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        }
+        region = (region + 1) % regions;
+        used = 0;
+        writing = true;
+
+        if (persistent) {
+            waitFor(region);
+            return;
+        }
+        gl.bindBuffer(target, buffer);
+        if (region == 0) {
+            // orphan: the driver keeps the old storage alive for the frames still reading it
+            glBufferData(target, (long) regionSize * regions, GL_STREAM_DRAW);
+        }
+        ByteBuffer mapping = glMapBufferRange(target, regionOffset(), regionSize,
+                GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_RANGE_BIT | GL_MAP_UNSYNCHRONIZED_BIT);
+        if (mapping == null) {
+            throw new IllegalStateException("Failed to map stream buffer region " + region);
+        }
+        mappedAddress = memAddress(mapping);
+    }
+
+    // reserves bytes in this frame's region, returns their offset from the start of the buffer
+    public long allocate(int bytes) {
+        return allocate(bytes, DEFAULT_ALIGNMENT);
+    }
+
+    // alignment has to be a power of two, e.g. GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT for glBindBufferRange
+    public long allocate(int bytes, int alignment) {
+        if (!writing) {
+            throw new IllegalStateException("allocate() outside of beginFrame() and endWrites()");
+        }
+        int start = align(used, alignment);
+        if (bytes < 0 || start + bytes > regionSize) {
+            throw new IllegalStateException("Stream buffer region is full (" + regionSize + " bytes, "
+                    + used + " used, " + bytes + " requested)");
+        }
+        used = start + bytes;
+        return regionOffset() + start;
+    }
+
+    // where the bytes at an allocated offset can be written, only valid until endWrites()
+    public long getAddress(long offset) {
+        return persistent ? mappedAddress + offset : mappedAddress + (offset - regionOffset());
+    }
+
+    public ByteBuffer slice(long offset, int bytes) {
+        return memByteBuffer(getAddress(offset), bytes);
+    }
+
+    // call once this frame's data is written, before the draws that read it; the GL 3.3 path has to unmap first
+    public void endWrites() {
+        if (!writing) {
+            throw new IllegalStateException("endWrites() without beginFrame()");
+        }
+        writing = false;
+        if (!persistent) {
+            gl.bindBuffer(target, buffer);
+            glUnmapBuffer(target);
+            mappedAddress = NULL;
+        }
+    }
+
+    public void destroy() {
+        if (writing) {
+            endWrites();
+        }
+        for (int r = 0; r < regions; r++) {
+            if (fences[r] != NULL) {
+                glDeleteSync(fences[r]);
+                fences[r] = NULL;
+            }
+        }
+        gl.bindBuffer(target, 0);
+        glDeleteBuffers(buffer);
+    }
+
+    private void waitFor(int region) {
+        long fence = fences[region];
+        if (fence == NULL) {
+            return;
+        }
+        // a fence that has already signaled returns without flushing or blocking, which is the common case
+        int status = glClientWaitSync(fence, 0, 0);
+        if (status == GL_TIMEOUT_EXPIRED) {
+            long start = System.nanoTime();
+            do {
+                status = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, WAIT_TIMEOUT_NANOS);
+            } while (status == GL_TIMEOUT_EXPIRED);
+            stalls++;
+            stallNanos += System.nanoTime() - start;
+        }
+        if (status == GL_WAIT_FAILED) {
+            throw new IllegalStateException("glClientWaitSync failed on stream buffer region " + region);
+        }
+        glDeleteSync(fence);
+        fences[region] = NULL;
+    }
+
+    private long regionOffset() {
+        return (long) region * regionSize;
+    }
+
+    private static int align(int value, int alignment) {
+        return (value + alignment - 1) & -alignment;
+    }
+}
@@ -0,0 +1,36 @@
+package learnopengl.utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bakes image resources ahead of time so even the first run skips decoding. Run through the bakeTextures gradle task,
+ * with the resource names to bake as arguments (all chapter images by default).
+ */
+public class TextureBaker {
+
+    public static final List<String> CHAPTER_IMAGES = List.of(
+            "images/container.jpg",
+            "images/awesomeface.png"
+    );
+
+    public static void main(String[] args) throws IOException {
+        Path directory = TextureLoader.defaultBakeDirectory();
+        if (directory == null) {
+            System.out.println("Texture baking is disabled (learnopengl.textureCache=false)");
+            return;
+        }
+        int codec = BakedTexture.codecFromName(System.getProperty("learnopengl.textureCodec", "zstd"));
+
+        List<String> resources = args.length > 0 ? Arrays.asList(args) : CHAPTER_IMAGES;
+        for (String resource : resources) {
+            BakedTexture baked = TextureLoader.loadBaked(resource, directory, codec);
+            System.out.printf("%s: %dx%d, %d channels, %d levels%n",
+                    resource, baked.getWidth(), baked.getHeight(), baked.getChannels(), baked.getLevelCount());
+            baked.free();
+        }
+        System.out.printf("baked textures are in %s%n", directory);
+    }
+}
@@ -0,0 +1,328 @@
+package learnopengl.utils;
+
+import com.google.common.io.ByteStreams;
+import org.lwjgl.system.MemoryStack;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.lwjgl.opengl.GL11.GL_LINEAR;
+import static org.lwjgl.opengl.GL11.GL_LINEAR_MIPMAP_LINEAR;
+import static org.lwjgl.opengl.GL11.GL_RED;
+import static org.lwjgl.opengl.GL11.GL_REPEAT;
+import static org.lwjgl.opengl.GL11.GL_RGB;
+import static org.lwjgl.opengl.GL11.GL_RGBA;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MAG_FILTER;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MIN_FILTER;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_WRAP_S;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_WRAP_T;
+import static org.lwjgl.opengl.GL11.GL_UNPACK_ALIGNMENT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11.glGenTextures;
+import static org.lwjgl.opengl.GL11.glPixelStorei;
+import static org.lwjgl.opengl.GL11.glTexImage2D;
+import static org.lwjgl.opengl.GL11.glTexParameteri;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+import static org.lwjgl.opengl.GL15.GL_STREAM_DRAW;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL15.glUnmapBuffer;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_UNPACK_BUFFER;
+import static org.lwjgl.opengl.GL30.GL_MAP_INVALIDATE_BUFFER_BIT;
+import static org.lwjgl.opengl.GL30.GL_MAP_WRITE_BIT;
+import static org.lwjgl.opengl.GL30.glMapBufferRange;
+import static org.lwjgl.stb.STBImage.stbi_failure_reason;
+import static org.lwjgl.stb.STBImage.stbi_image_free;
+import static org.lwjgl.stb.STBImage.stbi_load_from_memory;
+import static org.lwjgl.stb.STBImage.stbi_set_flip_vertically_on_load;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memCopy;
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.util.xxhash.XXHash.XXH64;
+
+/**
+ * Decodes images on a worker pool and streams them into GL textures through pixel buffer objects.
+ *
+ * {@link #load(String)} returns a texture handle right away holding a 1x1 white placeholder. Decoded pixels wait in a
+ * bounded queue (workers block when it is full) until {@link #update(long)} uploads them from the GL thread, at most
+ * as many as fit into the given time budget per call. Images are flipped vertically on load, like the chapters did.
+ *
+ * The first time an image is seen it is decoded, its mip chain is built on the CPU and the result is baked into a
+ * compressed {@link BakedTexture} file keyed by the source hash. Later runs map that file instead of decoding.
+ */
+public class TextureLoader {
+
+    public static final long DEFAULT_FRAME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private static final int PBO_COUNT = 2;
+
+    private static class Decoded {
+        final int texture;
+        final String resource;
+        final BakedTexture image; // null if loading failed
+
+        Decoded(int texture, String resource, BakedTexture image) {
+            this.texture = texture;
+            this.resource = resource;
+            this.image = image;
+        }
+    }
+
+    private final ExecutorService workers;
+    private final Path bakeDirectory; // null disables reading and writing baked textures
+    private final int bakeCodec;
+    private final BlockingQueue<Decoded> decoded;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final GLState gl;
+    private final int[] pbos = new int[PBO_COUNT];
+    private int nextPbo;
+
+    private int uploadedTextures;
+    private long uploadedBytes;
+
+    public TextureLoader() {
+        this(new GLState());
+    }
+
+    // share the caller's state cache so texture and PBO binds stay in sync with the render loop
+    public TextureLoader(GLState gl) {
+        this(gl, Math.max(1, Runtime.getRuntime().availableProcessors() - 1), 4, defaultBakeDirectory(),
+                BakedTexture.codecFromName(System.getProperty("learnopengl.textureCodec", "zstd")));
+    }
+
+    // -Dlearnopengl.textureCache=false always decodes, -Dlearnopengl.textureCacheDir moves the baked files
+    public static Path defaultBakeDirectory() {
+        if (!Boolean.parseBoolean(System.getProperty("learnopengl.textureCache", "true"))) {
+            return null;
+        }
+        String dir = System.getProperty("learnopengl.textureCacheDir");
+        return dir != null
+                ? Path.of(dir)
+                : Path.of(System.getProperty("user.home"), ".cache", "learnopengl-with-lwjgl", "textures");
+    }
+
+    public TextureLoader(GLState gl, int workerThreads, int queueCapacity, Path bakeDirectory, int bakeCodec) {
+        this.gl = gl;
+        this.bakeDirectory = bakeDirectory;
+        this.bakeCodec = bakeCodec;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(r, "texture-decode-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.decoded = new ArrayBlockingQueue<>(queueCapacity);
+
+        for (int i = 0; i < PBO_COUNT; i++) {
+            pbos[i] = glGenBuffers();
+        }
+    }
+
+    // must be called on the GL thread; the returned handle is usable immediately
+    public int load(String resource) {
+        int texture = glGenTextures();
+        gl.bindTexture(GL_TEXTURE_2D, texture);
+        // set the texture wrapping parameters
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
+        // set texture filtering parameters
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+
+        try (MemoryStack stack = stackPush()) {
+            ByteBuffer white = stack.bytes((byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, 1, 1, 0, GL_RGBA, GL_UNSIGNED_BYTE, white);
+        }
+
+        pending.incrementAndGet();
+        workers.execute(() -> decode(texture, resource));
+        return texture;
+    }
+
+    private void decode(int texture, String resource) {
+        Decoded result;
+        try {
+            result = new Decoded(texture, resource, loadBaked(resource, bakeDirectory, bakeCodec));
+        } catch (IOException e) {
+            System.out.printf("Failed to load texture %s :: %s%n", resource, e.getMessage());
+            result = new Decoded(texture, resource, null);
+        }
+
+        try {
+            decoded.put(result);
+        } catch (InterruptedException e) {
+            if (result.image != null) {
+                result.image.free();
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Maps the baked file for a resource when one exists for its current contents. Otherwise decodes the image,
+    // builds the mip chain and writes the baked file so the next run skips decoding.
+    public static BakedTexture loadBaked(String resource, Path bakeDirectory, int codec) throws IOException {
+        byte[] bytes;
+        try (InputStream is = TextureLoader.class.getClassLoader().getResourceAsStream(resource)) {
+            if (is == null) {
+                throw new IOException("resource not found");
+            }
+            bytes = ByteStreams.toByteArray(is);
+        }
+
+        ByteBuffer encoded = memAlloc(bytes.length).put(bytes).flip();
+        try {
+            Path bakedFile = null;
+            if (bakeDirectory != null) {
+                bakedFile = bakeDirectory.resolve(String.format("%016x%s", XXH64(encoded, 0L), BakedTexture.FILE_EXTENSION));
+                if (Files.isRegularFile(bakedFile)) {
+                    try {
+                        return BakedTexture.read(bakedFile);
+                    } catch (IOException e) {
+                        System.out.printf("Discarding baked texture %s :: %s%n", bakedFile, e.getMessage());
+                        Files.deleteIfExists(bakedFile);
+                    }
+                }
+            }
+
+            BakedTexture baked = decodeWithMips(encoded);
+            if (bakedFile != null) {
+                try {
+                    baked.write(bakedFile, codec);
+                } catch (IOException e) {
+                    System.out.printf("Could not write baked texture %s :: %s%n", bakedFile, e.getMessage());
+                }
+            }
+            return baked;
+        } finally {
+            memFree(encoded);
+        }
+    }
+
+    public static BakedTexture decodeWithMips(ByteBuffer encoded) throws IOException {
+        // OpenGL expects the first row at the bottom
+        stbi_set_flip_vertically_on_load(true);
+        try (MemoryStack stack = stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer c = stack.mallocInt(1);
+            ByteBuffer pixels = stbi_load_from_memory(encoded, w, h, c, 0);
+            if (pixels == null) {
+                throw new IOException(stbi_failure_reason());
+            }
+            try {
+                return BakedTexture.fromPixels(pixels, w.get(0), h.get(0), c.get(0));
+            } finally {
+                stbi_image_free(pixels);
+            }
+        }
+    }
+
+    // uploads decoded images until the budget is spent; at least one per call so loading always makes progress
+    public void update(long budgetNanos) {
+        long start = System.nanoTime();
+        Decoded next;
+        while ((next = decoded.poll()) != null) {
+            upload(next);
+            pending.decrementAndGet();
+            if (System.nanoTime() - start >= budgetNanos) {
+                break;
+            }
+        }
+    }
+
+    private void upload(Decoded decoded) {
+        BakedTexture image = decoded.image;
+        if (image == null) {
+            return; // keep the placeholder
+        }
+
+        int format;
+        switch (image.getChannels()) {
+            case 1:
+                format = GL_RED;
+                break;
+            case 3:
+                format = GL_RGB;
+                break;
+            default:
+                format = GL_RGBA;
+                break;
+        }
+        ByteBuffer pixels = image.getPixels();
+        long size = pixels.remaining();
+
+        // orphan the PBO, fill it through a mapping and let the driver copy it into the texture asynchronously
+        int pbo = pbos[nextPbo];
+        nextPbo = (nextPbo + 1) % PBO_COUNT;
+        gl.bindBuffer(GL_PIXEL_UNPACK_BUFFER, pbo);
+        glBufferData(GL_PIXEL_UNPACK_BUFFER, size, GL_STREAM_DRAW);
+        ByteBuffer mapped = glMapBufferRange(GL_PIXEL_UNPACK_BUFFER, 0, size, GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_BUFFER_BIT);
+        if (mapped != null) {
+            memCopy(pixels, mapped);
+            glUnmapBuffer(GL_PIXEL_UNPACK_BUFFER);
+
+            // the whole mip chain was built ahead of time, every level comes out of the same PBO
+            gl.bindTexture(GL_TEXTURE_2D, decoded.texture);
+            glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+            for (int level = 0; level < image.getLevelCount(); level++) {
+                glTexImage2D(GL_TEXTURE_2D, level, format, image.getLevelWidth(level), image.getLevelHeight(level), 0,
+                        format, GL_UNSIGNED_BYTE, image.getLevelOffset(level));
+            }
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, image.getLevelCount() - 1);
+            // the 1x1 placeholder has no levels to sample, only now does mipmapped filtering mean anything
+            if (image.getLevelCount() > 1) {
+                glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+            }
+            glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+
+            uploadedTextures++;
+            uploadedBytes += size;
+        } else {
+            System.out.printf("Failed to map pixel buffer for %s%n", decoded.resource);
+        }
+        gl.bindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+
+        image.free();
+    }
+
+    public boolean isIdle() {
+        return pending.get() == 0;
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public int getUploadedTextures() {
+        return uploadedTextures;
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    public void destroy() {
+        workers.shutdownNow();
+        Decoded left;
+        while ((left = decoded.poll()) != null) {
+            if (left.image != null) {
+                left.image.free();
+            }
+        }
+        glDeleteBuffers(pbos);
+    }
+}
@@ -0,0 +1,165 @@
+package learnopengl.utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timed spans on a CPU and a GPU track, kept in growable primitive arrays so recording does not allocate once the
+ * arrays are big enough. {@link #writeChromeTrace(Path)} writes them in the Chrome trace event format, which
+ * chrome://tracing and https://ui.perfetto.dev open directly. Nested spans only need to lie inside each other in
+ * time, the viewers work the nesting out themselves.
+ */
+public class TraceRecorder {
+
+    public static final int CPU_TRACK = 1;
+    public static final int GPU_TRACK = 2;
+
+    public static final int DEFAULT_MAX_EVENTS = 1 << 20;
+
+    private final int maxEvents;
+    private String[] names = new String[1024];
+    private int[] tracks = new int[1024];
+    private long[] starts = new long[1024];
+    private long[] durations = new long[1024];
+    private int count;
+    private long dropped;
+
+    public TraceRecorder() {
+        this(DEFAULT_MAX_EVENTS);
+    }
+
+    // past maxEvents further spans are only counted, so a long run cannot eat the heap
+    public TraceRecorder(int maxEvents) {
+        this.maxEvents = maxEvents;
+    }
+
+    // times in System.nanoTime() nanoseconds
+    public void add(String name, int track, long startNanos, long durationNanos) {
+        if (count == maxEvents) {
+            dropped++;
+            return;
+        }
+        if (count == names.length) {
+            int capacity = Math.min(maxEvents, names.length * 2);
+            names = Arrays.copyOf(names, capacity);
+            tracks = Arrays.copyOf(tracks, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+        }
+        names[count] = name;
+        tracks[count] = track;
+        starts[count] = startNanos;
+        durations[count] = durationNanos;
+        count++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public String getName(int event) {
+        return names[event];
+    }
+
+    public int getTrack(int event) {
+        return tracks[event];
+    }
+
+    public long getStart(int event) {
+        return starts[event];
+    }
+
+    public long getDuration(int event) {
+        return durations[event];
+    }
+
+    public void clear() {
+        Arrays.fill(names, 0, count, null);
+        count = 0;
+        dropped = 0;
+    }
+
+    // average duration per span name and track, in recording order
+    public String summary() {
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        for (int e = 0; e < count; e++) {
+            long[] total = totals.computeIfAbsent(trackName(tracks[e]) + " " + names[e], k -> new long[2]);
+            total[0] += durations[e];
+            total[1]++;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            long[] total = entry.getValue();
+            sb.append(String.format("%-32s %8d spans %10.3f ms avg%n", entry.getKey(), total[1], total[0] / 1e6 / total[1]));
+        }
+        if (dropped > 0) {
+            sb.append(String.format("%d spans dropped past the limit of %d%n", dropped, maxEvents));
+        }
+        return sb.toString();
+    }
+
+    // timestamps are written in microseconds from the earliest span
+    public void writeChromeTrace(Path file) throws IOException {
+        long origin = Long.MAX_VALUE;
+        for (int e = 0; e < count; e++) {
+            origin = Math.min(origin, starts[e]);
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+            out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + CPU_TRACK + ",\"args\":{\"name\":\"CPU\"}},\n");
+            out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + GPU_TRACK + ",\"args\":{\"name\":\"GPU\"}}");
+            StringBuilder event = new StringBuilder();
+            for (int e = 0; e < count; e++) {
+                event.setLength(0);
+                event.append(",\n{\"name\":\"");
+                escape(names[e], event);
+                event.append("\",\"cat\":\"").append(trackName(tracks[e]))
+                        .append("\",\"ph\":\"X\",\"pid\":1,\"tid\":").append(tracks[e])
+                        .append(",\"ts\":").append(micros(starts[e] - origin))
+                        .append(",\"dur\":").append(micros(durations[e]))
+                        .append('}');
+                out.append(event);
+            }
+            out.write("\n]}\n");
+        }
+    }
+
+    private static String trackName(int track) {
+        return track == GPU_TRACK ? "gpu" : "cpu";
+    }
+
+    // three decimals, without going through a locale dependent formatter
+    private static String micros(long nanos) {
+        long whole = nanos / 1000;
+        long fraction = Math.abs(nanos % 1000);
+        String digits = Long.toString(fraction);
+        return (nanos < 0 && whole == 0 ? "-" : "") + whole + "." + "000".substring(digits.length()) + digits;
+    }
+
+    private static void escape(String value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+    }
+}
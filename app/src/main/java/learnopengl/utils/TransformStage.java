@@ -0,0 +1,226 @@
+package learnopengl.utils;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds translate * rotate * scale model matrices for many objects at once and writes them column-major into a direct
+ * {@link FloatBuffer} that can go straight to glBufferSubData or a mapped buffer.
+ *
+ * Objects are stored as a structure of arrays: position, normalized rotation axis, a base angle, an angular
+ * speed and a scale, so animating them only needs the time. Large batches are split into ranges on a fork-join pool, each
+ * task writes its own slots with absolute puts, nothing is shared between them. Small batches, like the ten
+ * chapter cubes, are computed on the calling thread.
+ */
+public class TransformStage {
+
+    public static final int DEFAULT_SPLIT_THRESHOLD = 4096;
+
+    private final int capacity;
+    private int count;
+
+    private final float[] positionX;
+    private final float[] positionY;
+    private final float[] positionZ;
+    private final float[] axisX;
+    private final float[] axisY;
+    private final float[] axisZ;
+    private final float[] angle;
+    private final float[] angularSpeed;
+    private final float[] scaleX;
+    private final float[] scaleY;
+    private final float[] scaleZ;
+
+    private final FloatBuffer matrices;
+    private final ForkJoinPool pool;
+    private final int splitThreshold;
+    private int written;
+
+    public TransformStage(int capacity) {
+        this(capacity, ForkJoinPool.commonPool(), DEFAULT_SPLIT_THRESHOLD);
+    }
+
+    public TransformStage(int capacity, ForkJoinPool pool, int splitThreshold) {
+        this.capacity = capacity;
+        this.pool = pool;
+        this.splitThreshold = Math.max(1, splitThreshold);
+        this.positionX = new float[capacity];
+        this.positionY = new float[capacity];
+        this.positionZ = new float[capacity];
+        this.axisX = new float[capacity];
+        this.axisY = new float[capacity];
+        this.axisZ = new float[capacity];
+        this.angle = new float[capacity];
+        this.angularSpeed = new float[capacity];
+        this.scaleX = new float[capacity];
+        this.scaleY = new float[capacity];
+        this.scaleZ = new float[capacity];
+        this.matrices = BufferUtils.createFloatBuffer(capacity * UniformUploader.MATRIX_FLOATS);
+    }
+
+    // angles in radians, the axis does not need to be normalized
+    public int add(float x, float y, float z, float rotationX, float rotationY, float rotationZ, float angle, float angularSpeed) {
+        if (count == capacity) {
+            throw new IllegalStateException("Transform stage is full (" + capacity + " objects)");
+        }
+        int i = count++;
+        setPosition(i, x, y, z);
+        float invLength = (float) (1.0 / Math.sqrt(rotationX * rotationX + rotationY * rotationY + rotationZ * rotationZ));
+        axisX[i] = rotationX * invLength;
+        axisY[i] = rotationY * invLength;
+        axisZ[i] = rotationZ * invLength;
+        this.angle[i] = angle;
+        this.angularSpeed[i] = angularSpeed;
+        scaleX[i] = 1.0f;
+        scaleY[i] = 1.0f;
+        scaleZ[i] = 1.0f;
+        return i;
+    }
+
+    // the entity at a dense index of the store, with its rotation and scale; angularSpeed turns it about that same axis
+    public int add(TransformStore store, int index, float angularSpeed) {
+        float w = Math.max(-1.0f, Math.min(1.0f, store.getRotationW(index)));
+        float s = (float) Math.sqrt(1.0 - w * w);
+        int i;
+        if (s < 1e-6f) {
+            // no rotation, any axis will do
+            i = add(store.getPositionX(index), store.getPositionY(index), store.getPositionZ(index),
+                    1.0f, 0.0f, 0.0f, 0.0f, angularSpeed);
+        } else {
+            i = add(store.getPositionX(index), store.getPositionY(index), store.getPositionZ(index),
+                    store.getRotationX(index) / s, store.getRotationY(index) / s, store.getRotationZ(index) / s,
+                    2.0f * (float) Math.acos(w), angularSpeed);
+        }
+        scaleX[i] = store.getScaleX(index);
+        scaleY[i] = store.getScaleY(index);
+        scaleZ[i] = store.getScaleZ(index);
+        return i;
+    }
+
+    public void setPosition(int i, float x, float y, float z) {
+        positionX[i] = x;
+        positionY[i] = y;
+        positionZ[i] = z;
+    }
+
+    // every object, slot i holds object i
+    public void compute(float time) {
+        run(null, count, time);
+    }
+
+    // only the given objects, packed into slots 0 .. count - 1 in the order given
+    public void compute(int[] indices, int count, float time) {
+        run(indices, count, time);
+    }
+
+    // Like compute(indices, count, time) but into slots 0 .. count - 1 of dst instead of getMatrices(), so one stage
+    // can fill several buffers, e.g. one per snapshot of a TripleBuffer. Puts are absolute, dst's position and limit
+    // are left alone and the limit has to leave room for count matrices.
+    public void compute(int[] indices, int count, float time, FloatBuffer dst) {
+        if (dst.limit() < count * UniformUploader.MATRIX_FLOATS) {
+            throw new IllegalArgumentException("Room for " + dst.limit() / UniformUploader.MATRIX_FLOATS
+                    + " matrices, " + count + " needed");
+        }
+        computeInto(dst, indices, count, time);
+    }
+
+    private void run(int[] indices, int n, float time) {
+        // absolute puts are checked against the limit
+        matrices.clear();
+        computeInto(matrices, indices, n, time);
+        written = n;
+        matrices.position(0);
+        matrices.limit(n * UniformUploader.MATRIX_FLOATS);
+    }
+
+    private void computeInto(FloatBuffer out, int[] indices, int n, float time) {
+        if (n <= splitThreshold) {
+            computeRange(out, indices, 0, n, time);
+        } else {
+            pool.invoke(new RangeTask(out, indices, 0, n, time));
+        }
+    }
+
+    private class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FloatBuffer out;
+        private final int[] indices;
+        private final int from;
+        private final int to;
+        private final float time;
+
+        RangeTask(FloatBuffer out, int[] indices, int from, int to, float time) {
+            this.out = out;
+            this.indices = indices;
+            this.from = from;
+            this.to = to;
+            this.time = time;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= splitThreshold) {
+                computeRange(out, indices, from, to, time);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeTask(out, indices, from, mid, time), new RangeTask(out, indices, mid, to, time));
+        }
+    }
+
+    // same result as new Matrix4f().translation(position).rotate(angle, axis).scale(scale)
+    private void computeRange(FloatBuffer out, int[] indices, int from, int to, float time) {
+        for (int slot = from; slot < to; slot++) {
+            int i = indices != null ? indices[slot] : slot;
+            float x = axisX[i];
+            float y = axisY[i];
+            float z = axisZ[i];
+            float a = angle[i] + angularSpeed[i] * time;
+            float s = (float) Math.sin(a);
+            float c = (float) Math.cos(a);
+            float t = 1.0f - c;
+            float sx = scaleX[i];
+            float sy = scaleY[i];
+            float sz = scaleZ[i];
+
+            int base = slot * UniformUploader.MATRIX_FLOATS;
+            out.put(base, (x * x * t + c) * sx);
+            out.put(base + 1, (y * x * t + z * s) * sx);
+            out.put(base + 2, (z * x * t - y * s) * sx);
+            out.put(base + 3, 0.0f);
+            out.put(base + 4, (x * y * t - z * s) * sy);
+            out.put(base + 5, (y * y * t + c) * sy);
+            out.put(base + 6, (z * y * t + x * s) * sy);
+            out.put(base + 7, 0.0f);
+            out.put(base + 8, (x * z * t + y * s) * sz);
+            out.put(base + 9, (y * z * t - x * s) * sz);
+            out.put(base + 10, (z * z * t + c) * sz);
+            out.put(base + 11, 0.0f);
+            out.put(base + 12, positionX[i]);
+            out.put(base + 13, positionY[i]);
+            out.put(base + 14, positionZ[i]);
+            out.put(base + 15, 1.0f);
+        }
+    }
+
+    // position 0, limit at the end of the last computed matrix
+    public FloatBuffer getMatrices() {
+        return matrices;
+    }
+
+    public int getComputedCount() {
+        return written;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,291 @@
+package learnopengl.utils;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.system.MemoryUtil.memFloatBuffer;
+import static org.lwjgl.system.MemoryUtil.memGetFloat;
+import static org.lwjgl.system.MemoryUtil.memPutFloat;
+import static org.lwjgl.system.MemoryUtil.nmemAlloc;
+import static org.lwjgl.system.MemoryUtil.nmemFree;
+import static org.lwjgl.system.MemoryUtil.nmemRealloc;
+
+/**
+ * Entity transforms kept off-heap, one densely packed float array per component: position x/y/z, rotation as a
+ * quaternion x/y/z/w and scale x/y/z.
+ *
+ * Entities are created and removed through handles that stay valid until the entity is removed. Internally the
+ * arrays never have holes: removing an entity moves the last one into its place, so bulk loops just run over
+ * indices 0 .. size() - 1. A handle carries a generation in its top bits, so a handle to a removed entity is
+ * recognized even after its slot has been reused. Memory is freed by {@link #free()}.
+ */
+public class TransformStore {
+
+    public static final int INVALID = -1;
+
+    private static final int SLOT_BITS = 24;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    public static final int MAX_ENTITIES = 1 << SLOT_BITS;
+    // whatever is left of a non-negative int
+    private static final int GENERATION_MASK = 0x7F;
+
+    private static final int POSITION_X = 0;
+    private static final int POSITION_Y = 1;
+    private static final int POSITION_Z = 2;
+    private static final int ROTATION_X = 3;
+    private static final int ROTATION_Y = 4;
+    private static final int ROTATION_Z = 5;
+    private static final int ROTATION_W = 6;
+    private static final int SCALE_X = 7;
+    private static final int SCALE_Y = 8;
+    private static final int SCALE_Z = 9;
+    private static final int COMPONENTS = 10;
+
+    public interface PositionConsumer {
+        void accept(int index, float x, float y, float z);
+    }
+
+    private int capacity;
+    private int count;
+
+    // base address of every component array
+    private final long[] components = new long[COMPONENTS];
+
+    // slot -> dense index and dense index -> slot, plus the generation each slot is on
+    private int[] slotToIndex;
+    private int[] indexToSlot;
+    private int[] generations;
+    private int[] freeSlots;
+    private int freeCount;
+    private int slotCount;
+
+    public TransformStore(int initialCapacity) {
+        capacity = Math.max(1, initialCapacity);
+        for (int c = 0; c < COMPONENTS; c++) {
+            components[c] = nmemAlloc((long) capacity * Float.BYTES);
+        }
+        slotToIndex = new int[capacity];
+        indexToSlot = new int[capacity];
+        generations = new int[capacity];
+        freeSlots = new int[capacity];
+    }
+
+    // an entity at the given position with no rotation and a scale of one
+    public int create(float x, float y, float z) {
+        if (count == capacity) {
+            grow();
+        }
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == MAX_ENTITIES) {
+                throw new IllegalStateException("Transform store is full (" + MAX_ENTITIES + " entities)");
+            }
+            slot = slotCount++;
+        }
+        int index = count++;
+        slotToIndex[slot] = index;
+        indexToSlot[index] = slot;
+
+        put(POSITION_X, index, x);
+        put(POSITION_Y, index, y);
+        put(POSITION_Z, index, z);
+        put(ROTATION_X, index, 0.0f);
+        put(ROTATION_Y, index, 0.0f);
+        put(ROTATION_Z, index, 0.0f);
+        put(ROTATION_W, index, 1.0f);
+        put(SCALE_X, index, 1.0f);
+        put(SCALE_Y, index, 1.0f);
+        put(SCALE_Z, index, 1.0f);
+        return generations[slot] << SLOT_BITS | slot;
+    }
+
+    // moves the last entity into the hole, so the index of that entity changes
+    public void remove(int handle) {
+        int index = indexOf(handle);
+        if (index == INVALID) {
+            throw new IllegalArgumentException("Stale or invalid transform handle " + handle);
+        }
+        int slot = handle & SLOT_MASK;
+        int last = --count;
+        if (index != last) {
+            for (int c = 0; c < COMPONENTS; c++) {
+                put(c, index, get(c, last));
+            }
+            int movedSlot = indexToSlot[last];
+            indexToSlot[index] = movedSlot;
+            slotToIndex[movedSlot] = index;
+        }
+        generations[slot] = (generations[slot] + 1) & GENERATION_MASK;
+        freeSlots[freeCount++] = slot;
+    }
+
+    public boolean isAlive(int handle) {
+        return indexOf(handle) != INVALID;
+    }
+
+    // dense index of an entity, INVALID if the handle is stale
+    public int indexOf(int handle) {
+        if (handle < 0) {
+            return INVALID;
+        }
+        int slot = handle & SLOT_MASK;
+        if (slot >= slotCount || generations[slot] != handle >>> SLOT_BITS) {
+            return INVALID;
+        }
+        int index = slotToIndex[slot];
+        return index < count && indexToSlot[index] == slot ? index : INVALID;
+    }
+
+    public int handleAt(int index) {
+        int slot = indexToSlot[index];
+        return generations[slot] << SLOT_BITS | slot;
+    }
+
+    private void grow() {
+        int newCapacity = Math.min(MAX_ENTITIES, capacity * 2);
+        for (int c = 0; c < COMPONENTS; c++) {
+            components[c] = nmemRealloc(components[c], (long) newCapacity * Float.BYTES);
+        }
+        slotToIndex = Arrays.copyOf(slotToIndex, newCapacity);
+        indexToSlot = Arrays.copyOf(indexToSlot, newCapacity);
+        generations = Arrays.copyOf(generations, newCapacity);
+        freeSlots = Arrays.copyOf(freeSlots, newCapacity);
+        capacity = newCapacity;
+    }
+
+    private float get(int component, int index) {
+        return memGetFloat(components[component] + (long) index * Float.BYTES);
+    }
+
+    private void put(int component, int index, float value) {
+        memPutFloat(components[component] + (long) index * Float.BYTES, value);
+    }
+
+    private int checkedIndex(int handle) {
+        int index = indexOf(handle);
+        if (index == INVALID) {
+            throw new IllegalArgumentException("Stale or invalid transform handle " + handle);
+        }
+        return index;
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------//
+    //  by handle                                                                                                      //
+    // ---------------------------------------------------------------------------------------------------------------//
+
+    public void setPosition(int handle, float x, float y, float z) {
+        int index = checkedIndex(handle);
+        put(POSITION_X, index, x);
+        put(POSITION_Y, index, y);
+        put(POSITION_Z, index, z);
+    }
+
+    // angle in radians around the given axis
+    public void setRotation(int handle, float angle, float axisX, float axisY, float axisZ) {
+        int index = checkedIndex(handle);
+        float invLength = (float) (1.0 / Math.sqrt(axisX * axisX + axisY * axisY + axisZ * axisZ));
+        float s = (float) Math.sin(angle * 0.5) * invLength;
+        put(ROTATION_X, index, axisX * s);
+        put(ROTATION_Y, index, axisY * s);
+        put(ROTATION_Z, index, axisZ * s);
+        put(ROTATION_W, index, (float) Math.cos(angle * 0.5));
+    }
+
+    public void setScale(int handle, float x, float y, float z) {
+        int index = checkedIndex(handle);
+        put(SCALE_X, index, x);
+        put(SCALE_Y, index, y);
+        put(SCALE_Z, index, z);
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------//
+    //  by dense index, for bulk loops                                                                                //
+    // ---------------------------------------------------------------------------------------------------------------//
+
+    public float getPositionX(int index) {
+        return get(POSITION_X, index);
+    }
+
+    public float getPositionY(int index) {
+        return get(POSITION_Y, index);
+    }
+
+    public float getPositionZ(int index) {
+        return get(POSITION_Z, index);
+    }
+
+    public float getRotationX(int index) {
+        return get(ROTATION_X, index);
+    }
+
+    public float getRotationY(int index) {
+        return get(ROTATION_Y, index);
+    }
+
+    public float getRotationZ(int index) {
+        return get(ROTATION_Z, index);
+    }
+
+    public float getRotationW(int index) {
+        return get(ROTATION_W, index);
+    }
+
+    public float getScaleX(int index) {
+        return get(SCALE_X, index);
+    }
+
+    public float getScaleY(int index) {
+        return get(SCALE_Y, index);
+    }
+
+    public float getScaleZ(int index) {
+        return get(SCALE_Z, index);
+    }
+
+    public void forEachPosition(PositionConsumer consumer) {
+        long px = components[POSITION_X];
+        long py = components[POSITION_Y];
+        long pz = components[POSITION_Z];
+        for (int i = 0; i < count; i++) {
+            long offset = (long) i * Float.BYTES;
+            consumer.accept(i, memGetFloat(px + offset), memGetFloat(py + offset), memGetFloat(pz + offset));
+        }
+    }
+
+    // views over the live part of a component array; they go stale when the store grows or is freed
+    public FloatBuffer getPositionsX() {
+        return memFloatBuffer(components[POSITION_X], count);
+    }
+
+    public FloatBuffer getPositionsY() {
+        return memFloatBuffer(components[POSITION_Y], count);
+    }
+
+    public FloatBuffer getPositionsZ() {
+        return memFloatBuffer(components[POSITION_Z], count);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // off-heap bytes plus the handle bookkeeping on the heap
+    public long getFootprintBytes() {
+        return (long) capacity * (COMPONENTS * Float.BYTES + 4 * Integer.BYTES);
+    }
+
+    public void free() {
+        for (int c = 0; c < COMPONENTS; c++) {
+            nmemFree(components[c]);
+            components[c] = 0L;
+        }
+        count = 0;
+        capacity = 0;
+    }
+}
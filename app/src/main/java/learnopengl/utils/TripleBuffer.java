@@ -0,0 +1,84 @@
+package learnopengl.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hands snapshots from one writer thread to one reader thread without locks and without either waiting on the other.
+ *
+ * There are three snapshots, allocated up front: the writer fills the back one, the reader reads the front one, and
+ * the third sits in the middle. {@link #publish()} swaps back and middle and marks the middle as new, {@link #acquire()}
+ * swaps front and middle when the middle is new, so the reader always gets the newest complete snapshot and one it
+ * has not finished with is never written. A writer faster than the reader overwrites snapshots nobody read, counted
+ * as skipped. The swaps are a single getAndSet on an int holding the middle index and the new flag, which also makes
+ * everything the writer wrote before publishing visible to the reader after acquiring.
+ *
+ * A snapshot is owned by the writer from {@link #getBack()} until it publishes it and by the reader from acquiring it
+ * until the next acquire, so it has to be filled completely every time and never be held on to past that.
+ */
+public class TripleBuffer<T> {
+
+    private static final int INDEX_MASK = 3;
+    private static final int NEW = 4;
+
+    private final Object[] snapshots = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 2; // writer only
+    private int front = 0; // reader only
+
+    private long published; // writer only
+    private long skipped; // writer only
+    private long acquired; // reader only
+
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = factory.get();
+        }
+    }
+
+    // writer: the snapshot to fill before the next publish()
+    @SuppressWarnings("unchecked")
+    public T getBack() {
+        return (T) snapshots[back];
+    }
+
+    // writer: makes the back snapshot the newest one and moves on to a free one
+    public void publish() {
+        int previous = middle.getAndSet(back | NEW);
+        if ((previous & NEW) != 0) {
+            skipped++;
+        }
+        back = previous & INDEX_MASK;
+        published++;
+    }
+
+    // reader: the newest published snapshot, the same one again when nothing was published since the last call
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if ((middle.get() & NEW) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+            acquired++;
+        }
+        return (T) snapshots[front];
+    }
+
+    // reader: whether acquire() would return a newer snapshot
+    public boolean hasNew() {
+        return (middle.get() & NEW) != 0;
+    }
+
+    // The counters belong to one side each, read them from that side or after the other thread has been joined.
+
+    public long getPublished() {
+        return published;
+    }
+
+    // published snapshots that were replaced before the reader got to them
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getAcquired() {
+        return acquired;
+    }
+}
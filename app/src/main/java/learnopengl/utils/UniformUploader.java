@@ -0,0 +1,106 @@
+package learnopengl.utils;
+
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL20.glUniformMatrix4fv;
+
+/**
+ * Per-frame uniform upload path that never touches the heap once constructed.
+ *
+ * The matrices handed out by {@link #getModel()}, {@link #getView()} and {@link #getProjection()}
+ * are meant to be rebuilt in place every frame, single matrix uploads go through a pre-allocated
+ * 16 float scratch buffer, and {@link #stage(Matrix4fc)} packs matrices into an off-heap area
+ * that is reset by {@link #beginFrame()}.
+ */
+public class UniformUploader {
+
+    public static final int MATRIX_FLOATS = 16;
+
+    // Where uploads end up. Production code uses the GL sink, tests can count or ignore uploads.
+    public interface Sink {
+        void uniformMatrix4(int location, FloatBuffer value);
+    }
+
+    public static final Sink GL_SINK = (location, value) -> glUniformMatrix4fv(location, false, value);
+
+    private final Sink sink;
+
+    private final FloatBuffer scratch = BufferUtils.createFloatBuffer(MATRIX_FLOATS);
+    private final FloatBuffer staging;
+    private final int stagingCapacity;
+    private int staged;
+
+    private final Matrix4f model = new Matrix4f();
+    private final Matrix4f view = new Matrix4f();
+    private final Matrix4f projection = new Matrix4f();
+
+    public UniformUploader(int stagingCapacity) {
+        this(stagingCapacity, GL_SINK);
+    }
+
+    public UniformUploader(int stagingCapacity, Sink sink) {
+        this.stagingCapacity = stagingCapacity;
+        this.staging = BufferUtils.createFloatBuffer(stagingCapacity * MATRIX_FLOATS);
+        this.sink = sink;
+    }
+
+    public void beginFrame() {
+        staged = 0;
+        staging.clear();
+    }
+
+    public Matrix4f getModel() {
+        return model;
+    }
+
+    public Matrix4f getView() {
+        return view;
+    }
+
+    public Matrix4f getProjection() {
+        return projection;
+    }
+
+    // upload a single matrix through the scratch buffer
+    public void uniformMatrix4(int location, Matrix4fc matrix) {
+        matrix.get(0, scratch);
+        scratch.clear();
+        sink.uniformMatrix4(location, scratch);
+    }
+
+    // copy a matrix into the per-frame staging area and return its slot
+    public int stage(Matrix4fc matrix) {
+        if (staged == stagingCapacity) {
+            throw new IllegalStateException("Uniform staging area is full (" + stagingCapacity + " matrices)");
+        }
+        staging.clear();
+        matrix.get(staged * MATRIX_FLOATS, staging);
+        return staged++;
+    }
+
+    // upload a matrix previously written by stage()
+    public void uniformMatrix4Staged(int location, int slot) {
+        int offset = slot * MATRIX_FLOATS;
+        staging.limit(offset + MATRIX_FLOATS).position(offset);
+        sink.uniformMatrix4(location, staging);
+        staging.clear();
+    }
+
+    // every matrix staged this frame, packed and ready for glBufferData/glBufferSubData
+    public FloatBuffer getStaged() {
+        staging.limit(staged * MATRIX_FLOATS).position(0);
+        return staging;
+    }
+
+    public int getStagedCount() {
+        return staged;
+    }
+
+    public int getStagingCapacity() {
+        return stagingCapacity;
+    }
+}
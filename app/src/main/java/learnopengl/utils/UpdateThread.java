@@ -0,0 +1,124 @@
+package learnopengl.utils;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a simulation step at a fixed rate on its own thread, each step filling the back snapshot of a
+ * {@link TripleBuffer} that the render thread picks up with {@link #latest()}. The rate has nothing to do with the
+ * display's: at 120 steps a second under 60Hz vsync every frame skips one snapshot, at 30 every snapshot is drawn
+ * twice. Simulation and GL submission overlap, so a frame costs the longer of the two rather than their sum.
+ *
+ * Time advances exactly 1/rate per step, like the headless clock, so what the simulation computes does not depend on
+ * how the thread was scheduled. A step that runs late is not made up for: when the thread falls more than a step
+ * behind it starts counting from now again, the simulation slows down instead of spiralling.
+ *
+ * A step that throws stops the thread, and the next {@link #latest()} or {@link #stop()} rethrows on the caller.
+ */
+public class UpdateThread<T> {
+
+    public interface Step<T> {
+
+        // fill every field of snapshot for the given simulation time in seconds
+        void update(T snapshot, double time);
+    }
+
+    private final TripleBuffer<T> snapshots;
+    private final Step<T> step;
+    private final double rate;
+    private final long periodNanos;
+    private final Thread thread;
+
+    private volatile boolean running;
+    private volatile Throwable failure;
+
+    private long steps; // update thread only until stopped
+    private long lateSteps; // update thread only until stopped
+
+    public UpdateThread(TripleBuffer<T> snapshots, double rate, Step<T> step) {
+        if (!(rate > 0.0)) {
+            throw new IllegalArgumentException("The update rate has to be positive, not " + rate);
+        }
+        this.snapshots = snapshots;
+        this.step = step;
+        this.rate = rate;
+        this.periodNanos = Math.round(1e9 / rate);
+        this.thread = new Thread(this::run, "update");
+        thread.setDaemon(true);
+    }
+
+    // -Dlearnopengl.updateHz=rate, 0 or unset keeps the simulation on the render thread
+    public static double requestedRate() {
+        String rate = System.getProperty("learnopengl.updateHz", "0");
+        try {
+            return Double.parseDouble(rate.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("learnopengl.updateHz has to be a rate in Hz, not " + rate, e);
+        }
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    // The first step runs on the calling thread, so there is a complete snapshot before the first frame.
+    public void start() {
+        step.update(snapshots.getBack(), 0.0);
+        snapshots.publish();
+        steps = 1;
+        running = true;
+        thread.start();
+    }
+
+    private void run() {
+        long deadline = System.nanoTime() + periodNanos;
+        try {
+            while (running) {
+                long wait = deadline - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    continue; // parkNanos can return early
+                }
+                if (wait < -periodNanos) {
+                    lateSteps++;
+                    deadline = System.nanoTime();
+                }
+                deadline += periodNanos;
+                step.update(snapshots.getBack(), steps / rate);
+                snapshots.publish();
+                steps++;
+            }
+        } catch (Throwable t) {
+            failure = t;
+            running = false;
+        }
+    }
+
+    // render thread: the newest complete snapshot
+    public T latest() {
+        rethrowFailure();
+        return snapshots.acquire();
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rethrowFailure();
+    }
+
+    private void rethrowFailure() {
+        Throwable t = failure;
+        if (t != null) {
+            throw new IllegalStateException("The update thread failed :: " + t, t);
+        }
+    }
+
+    public String summary() {
+        return String.format("update thread: %d steps at %.0f Hz, %d fell behind, %d snapshots drawn, %d never drawn%n",
+                steps, rate, lateSteps, snapshots.getAcquired(), snapshots.getSkipped());
+    }
+}
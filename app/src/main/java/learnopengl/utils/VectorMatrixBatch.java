@@ -0,0 +1,97 @@
+package learnopengl.utils;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import static learnopengl.utils.UniformUploader.MATRIX_FLOATS;
+
+/**
+ * {@link MatrixBatch} on the Vector API. A matrix column or a transformed point is one 4-lane vector, so products are
+ * four fused multiply-adds per column with the other side broadcast, whatever the width of the machine's registers.
+ * Wider species would need the data transposed into lanes of different matrices; with the shuffles, gathers and
+ * scatters of the JDK 17 incubator that came out slower than this, and TRS composition, which is mostly shuffling a
+ * quaternion around, stays scalar for the same reason.
+ *
+ * Buffers reach these kernels through the chunked copies in {@link MatrixBatch}. Only loaded by name from
+ * {@link MatrixBatch#get()} when the jdk.incubator.vector module is there.
+ */
+class VectorMatrixBatch extends MatrixBatch {
+
+    private static final VectorSpecies<Float> COLUMN = FloatVector.SPECIES_128;
+
+    @Override
+    public boolean isVectorized() {
+        return true;
+    }
+
+    @Override
+    public void mul(float[] a, float[] b, float[] dst, int count) {
+        requireFloats(a.length, count, MATRIX_FLOATS, "a");
+        requireFloats(b.length, count, MATRIX_FLOATS, "b");
+        requireFloats(dst.length, count, MATRIX_FLOATS, "dst");
+        for (int i = 0; i < count; i++) {
+            int o = i * MATRIX_FLOATS;
+            FloatVector c0 = FloatVector.fromArray(COLUMN, a, o);
+            FloatVector c1 = FloatVector.fromArray(COLUMN, a, o + 4);
+            FloatVector c2 = FloatVector.fromArray(COLUMN, a, o + 8);
+            FloatVector c3 = FloatVector.fromArray(COLUMN, a, o + 12);
+            mulColumns(c0, c1, c2, c3, b, o, dst, o);
+        }
+    }
+
+    @Override
+    public void mulAll(float[] left, float[] right, float[] dst, int count) {
+        requireFloats(left.length, 1, MATRIX_FLOATS, "left");
+        requireFloats(right.length, count, MATRIX_FLOATS, "right");
+        requireFloats(dst.length, count, MATRIX_FLOATS, "dst");
+        FloatVector c0 = FloatVector.fromArray(COLUMN, left, 0);
+        FloatVector c1 = FloatVector.fromArray(COLUMN, left, 4);
+        FloatVector c2 = FloatVector.fromArray(COLUMN, left, 8);
+        FloatVector c3 = FloatVector.fromArray(COLUMN, left, 12);
+        for (int i = 0; i < count; i++) {
+            int o = i * MATRIX_FLOATS;
+            mulColumns(c0, c1, c2, c3, right, o, dst, o);
+        }
+    }
+
+    // each column of b is read just before the same column of dst is written, so dst can be b
+    private static void mulColumns(FloatVector c0, FloatVector c1, FloatVector c2, FloatVector c3,
+                                   float[] b, int bo, float[] dst, int o) {
+        for (int c = 0; c < MATRIX_FLOATS; c += 4) {
+            c3.fma(FloatVector.broadcast(COLUMN, b[bo + c + 3]),
+                    c2.fma(FloatVector.broadcast(COLUMN, b[bo + c + 2]),
+                            c1.fma(FloatVector.broadcast(COLUMN, b[bo + c + 1]),
+                                    c0.mul(b[bo + c]))))
+                    .intoArray(dst, o + c);
+        }
+    }
+
+    @Override
+    public void transformPoints(float[] matrix, float[] points, float[] dst, int count) {
+        requireFloats(matrix.length, 1, MATRIX_FLOATS, "matrix");
+        requireFloats(points.length, count, POINT_FLOATS, "points");
+        requireFloats(dst.length, count, POINT_FLOATS, "dst");
+        if (count == 0) {
+            return;
+        }
+        FloatVector c0 = FloatVector.fromArray(COLUMN, matrix, 0);
+        FloatVector c1 = FloatVector.fromArray(COLUMN, matrix, 4);
+        FloatVector c2 = FloatVector.fromArray(COLUMN, matrix, 8);
+        FloatVector c3 = FloatVector.fromArray(COLUMN, matrix, 12);
+        // A point is stored with all four lanes, the fourth lands on the next point's x and gets overwritten by
+        // that point. Masked stores would avoid it but cost several times more, so the next point is read before
+        // the store instead, which keeps it right when dst is points. The last point has no room and goes scalar.
+        float x = points[0], y = points[1], z = points[2];
+        int last = (count - 1) * POINT_FLOATS;
+        for (int o = 0; o < last; o += POINT_FLOATS) {
+            FloatVector p = c2.fma(FloatVector.broadcast(COLUMN, z),
+                    c1.fma(FloatVector.broadcast(COLUMN, y),
+                            c0.fma(FloatVector.broadcast(COLUMN, x), c3)));
+            x = points[o + 3];
+            y = points[o + 4];
+            z = points[o + 5];
+            p.intoArray(dst, o);
+        }
+        transformPoint(matrix, x, y, z, dst, last);
+    }
+}
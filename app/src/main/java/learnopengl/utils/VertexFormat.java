@@ -0,0 +1,356 @@
+package learnopengl.utils;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.GL_BYTE;
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_SHORT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static org.lwjgl.opengl.GL12.GL_UNSIGNED_INT_2_10_10_10_REV;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL30.GL_HALF_FLOAT;
+import static org.lwjgl.opengl.GL33.GL_INT_2_10_10_10_REV;
+
+/**
+ * Layout of an interleaved vertex whose attributes are stored in compact types, and the code to get there.
+ *
+ * Vertices are described the way the chapters write them, as consecutive floats per attribute. {@link #pack} turns
+ * those into the compact layout, {@link #setup()} issues the matching glVertexAttribPointer calls for the bound VAO
+ * and array buffer. Normalized types map [-1, 1] (signed) or [0, 1] (unsigned) onto their integer range and clamp
+ * anything outside of it, so positions stored that way have to fit a unit cube. Every attribute starts on a 4-byte
+ * boundary.
+ */
+public class VertexFormat {
+
+    public enum Type {
+        FLOAT(GL_FLOAT, Float.BYTES, false),
+        HALF_FLOAT(GL_HALF_FLOAT, Short.BYTES, false),
+        BYTE_NORM(GL_BYTE, Byte.BYTES, true),
+        UNSIGNED_BYTE_NORM(GL_UNSIGNED_BYTE, Byte.BYTES, true),
+        SHORT_NORM(GL_SHORT, Short.BYTES, true),
+        UNSIGNED_SHORT_NORM(GL_UNSIGNED_SHORT, Short.BYTES, true),
+        // x, y and z in 10 bits and w in 2, one int per attribute
+        INT_2_10_10_10_REV(GL_INT_2_10_10_10_REV, Integer.BYTES, true),
+        UNSIGNED_INT_2_10_10_10_REV(GL_UNSIGNED_INT_2_10_10_10_REV, Integer.BYTES, true);
+
+        final int glType;
+        final int bytes;
+        final boolean normalized;
+
+        Type(int glType, int bytes, boolean normalized) {
+            this.glType = glType;
+            this.bytes = bytes;
+            this.normalized = normalized;
+        }
+
+        boolean isPacked() {
+            return this == INT_2_10_10_10_REV || this == UNSIGNED_INT_2_10_10_10_REV;
+        }
+    }
+
+    public static final class Attribute {
+        private final int location;
+        private final int components;
+        private final Type type;
+        private final int offset;
+
+        Attribute(int location, int components, Type type, int offset) {
+            this.location = location;
+            this.components = components;
+            this.type = type;
+            this.offset = offset;
+        }
+
+        public int getLocation() {
+            return location;
+        }
+
+        // floats taken from the source vertex
+        public int getComponents() {
+            return components;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        // bytes this attribute occupies, padding included
+        public int getSize() {
+            int bytes = type.isPacked() ? type.bytes : components * type.bytes;
+            return (bytes + 3) & ~3;
+        }
+    }
+
+    public static class Builder {
+
+        private final List<Attribute> attributes = new ArrayList<>();
+        private int offset;
+
+        public Builder add(int location, int components, Type type) {
+            if (components < 1 || components > 4) {
+                throw new IllegalArgumentException("An attribute has 1 to 4 components, not " + components);
+            }
+            if (type.isPacked() && components < 3) {
+                throw new IllegalArgumentException(type + " needs 3 or 4 components, not " + components);
+            }
+            Attribute attribute = new Attribute(location, components, type, offset);
+            attributes.add(attribute);
+            offset += attribute.getSize();
+            return this;
+        }
+
+        public VertexFormat build() {
+            return new VertexFormat(attributes, offset);
+        }
+    }
+
+    private final List<Attribute> attributes;
+    private final int stride;
+    private final int floatsPerVertex;
+
+    private VertexFormat(List<Attribute> attributes, int stride) {
+        this.attributes = Collections.unmodifiableList(new ArrayList<>(attributes));
+        this.stride = stride;
+        int floats = 0;
+        for (Attribute attribute : attributes) {
+            floats += attribute.components;
+        }
+        this.floatsPerVertex = floats;
+    }
+
+    // packs the remaining floats, floatsPerVertex per vertex, into a new buffer ready for glBufferData
+    public ByteBuffer pack(FloatBuffer vertices) {
+        int count = vertices.remaining() / floatsPerVertex;
+        if (count * floatsPerVertex != vertices.remaining()) {
+            throw new IllegalArgumentException(vertices.remaining() + " floats is not a whole number of "
+                    + floatsPerVertex + "-float vertices");
+        }
+        float[] source = new float[vertices.remaining()];
+        vertices.duplicate().get(source);
+        return pack(source);
+    }
+
+    public ByteBuffer pack(float[] vertices) {
+        int count = vertices.length / floatsPerVertex;
+        if (count * floatsPerVertex != vertices.length) {
+            throw new IllegalArgumentException(vertices.length + " floats is not a whole number of "
+                    + floatsPerVertex + "-float vertices");
+        }
+        ByteBuffer out = BufferUtils.createByteBuffer(count * stride);
+        for (int v = 0; v < count; v++) {
+            int source = v * floatsPerVertex;
+            int base = v * stride;
+            for (Attribute attribute : attributes) {
+                write(out, base + attribute.offset, attribute, vertices, source);
+                source += attribute.components;
+            }
+        }
+        return out;
+    }
+
+    private static void write(ByteBuffer out, int at, Attribute attribute, float[] src, int from) {
+        Type type = attribute.type;
+        if (type.isPacked()) {
+            float w = attribute.components == 4 ? src[from + 3] : 1.0f;
+            out.putInt(at, type == Type.INT_2_10_10_10_REV
+                    ? packSigned1010102(src[from], src[from + 1], src[from + 2], w)
+                    : packUnsigned1010102(src[from], src[from + 1], src[from + 2], w));
+            return;
+        }
+        for (int c = 0; c < attribute.components; c++) {
+            float value = src[from + c];
+            switch (type) {
+                case FLOAT:
+                    out.putFloat(at + c * Float.BYTES, value);
+                    break;
+                case HALF_FLOAT:
+                    out.putShort(at + c * Short.BYTES, toHalf(value));
+                    break;
+                case BYTE_NORM:
+                    out.put(at + c, (byte) toSignedNorm(value, 127));
+                    break;
+                case UNSIGNED_BYTE_NORM:
+                    out.put(at + c, (byte) toUnsignedNorm(value, 255));
+                    break;
+                case SHORT_NORM:
+                    out.putShort(at + c * Short.BYTES, (short) toSignedNorm(value, 32767));
+                    break;
+                case UNSIGNED_SHORT_NORM:
+                    out.putShort(at + c * Short.BYTES, (short) toUnsignedNorm(value, 65535));
+                    break;
+                default:
+                    throw new IllegalStateException("Unhandled type " + type);
+            }
+        }
+    }
+
+    // reads vertex back into floatsPerVertex floats, the way the vertex shader will see them
+    public void unpack(ByteBuffer packed, int vertex, float[] dst, int dstOffset) {
+        int base = vertex * stride;
+        int to = dstOffset;
+        for (Attribute attribute : attributes) {
+            int at = base + attribute.offset;
+            Type type = attribute.type;
+            if (type.isPacked()) {
+                int bits = packed.getInt(at);
+                for (int c = 0; c < attribute.components; c++) {
+                    int width = c == 3 ? 2 : 10;
+                    int field = bits >>> (c * 10) & ((1 << width) - 1);
+                    if (type == Type.INT_2_10_10_10_REV) {
+                        // sign extend
+                        field = field << (32 - width) >> (32 - width);
+                        dst[to + c] = Math.max(field / (float) ((1 << (width - 1)) - 1), -1.0f);
+                    } else {
+                        dst[to + c] = field / (float) ((1 << width) - 1);
+                    }
+                }
+                to += attribute.components;
+                continue;
+            }
+            for (int c = 0; c < attribute.components; c++) {
+                float value;
+                switch (type) {
+                    case FLOAT:
+                        value = packed.getFloat(at + c * Float.BYTES);
+                        break;
+                    case HALF_FLOAT:
+                        value = fromHalf(packed.getShort(at + c * Short.BYTES));
+                        break;
+                    case BYTE_NORM:
+                        value = Math.max(packed.get(at + c) / 127.0f, -1.0f);
+                        break;
+                    case UNSIGNED_BYTE_NORM:
+                        value = (packed.get(at + c) & 0xFF) / 255.0f;
+                        break;
+                    case SHORT_NORM:
+                        value = Math.max(packed.getShort(at + c * Short.BYTES) / 32767.0f, -1.0f);
+                        break;
+                    case UNSIGNED_SHORT_NORM:
+                        value = (packed.getShort(at + c * Short.BYTES) & 0xFFFF) / 65535.0f;
+                        break;
+                    default:
+                        throw new IllegalStateException("Unhandled type " + type);
+                }
+                dst[to + c] = value;
+            }
+            to += attribute.components;
+        }
+    }
+
+    // attribute pointers for the bound vertex array and array buffer, starting at the beginning of the buffer
+    public void setup() {
+        setup(0L);
+    }
+
+    public void setup(long baseOffset) {
+        for (Attribute attribute : attributes) {
+            Type type = attribute.type;
+            // the packed types are always read as four components, a missing w comes out as 1.0
+            int size = type.isPacked() ? 4 : attribute.components;
+            glVertexAttribPointer(attribute.location, size, type.glType, type.normalized, stride, baseOffset + attribute.offset);
+            glEnableVertexAttribArray(attribute.location);
+        }
+    }
+
+    public List<Attribute> getAttributes() {
+        return attributes;
+    }
+
+    // bytes per packed vertex
+    public int getStride() {
+        return stride;
+    }
+
+    // floats per source vertex
+    public int getFloatsPerVertex() {
+        return floatsPerVertex;
+    }
+
+    static int toSignedNorm(float value, int max) {
+        return Math.round(Math.max(-1.0f, Math.min(1.0f, value)) * max);
+    }
+
+    static int toUnsignedNorm(float value, int max) {
+        return Math.round(Math.max(0.0f, Math.min(1.0f, value)) * max);
+    }
+
+    static int packSigned1010102(float x, float y, float z, float w) {
+        return (toSignedNorm(x, 511) & 0x3FF)
+                | (toSignedNorm(y, 511) & 0x3FF) << 10
+                | (toSignedNorm(z, 511) & 0x3FF) << 20
+                | (toSignedNorm(w, 1) & 0x3) << 30;
+    }
+
+    static int packUnsigned1010102(float x, float y, float z, float w) {
+        return toUnsignedNorm(x, 1023)
+                | toUnsignedNorm(y, 1023) << 10
+                | toUnsignedNorm(z, 1023) << 20
+                | toUnsignedNorm(w, 3) << 30;
+    }
+
+    // IEEE 754 binary16, rounded to nearest even; out of range values become infinity
+    public static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = bits >>> 16 & 0x8000;
+        int exponent = bits >>> 23 & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (exponent == 0xFF) {
+            // infinity stays infinity, NaN stays a (quiet) NaN
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        int e = exponent - 127 + 15;
+        if (e >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+        if (e <= 0) {
+            // subnormal half, or zero
+            if (e < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - e;
+            int half = mantissa >> shift;
+            int rest = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (rest > halfway || rest == halfway && (half & 1) != 0) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = e << 10 | mantissa >> 13;
+        int rest = mantissa & 0x1FFF;
+        // a carry out of the mantissa correctly bumps the exponent, up to infinity
+        if (rest > 0x1000 || rest == 0x1000 && (half & 1) != 0) {
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    public static float fromHalf(short half) {
+        int h = half & 0xFFFF;
+        int sign = (h & 0x8000) << 16;
+        int exponent = h >>> 10 & 0x1F;
+        int mantissa = h & 0x3FF;
+        if (exponent == 0) {
+            float value = mantissa * 0x1p-24f;
+            return sign != 0 ? -value : value;
+        }
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | mantissa << 13);
+        }
+        return Float.intBitsToFloat(sign | (exponent + 112) << 23 | mantissa << 13);
+    }
+}
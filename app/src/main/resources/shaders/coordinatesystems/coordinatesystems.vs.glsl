@@ -2,6 +2,8 @@
 layout (location = 0) in vec3 aPos;
 layout (location = 1) in vec4 aColor;
 layout (location = 2) in vec2 aTexCoord;
+// per-instance model matrix, takes up locations 3 to 6
+layout (location = 3) in mat4 aInstanceModel;
 
 out vec4 ourColor;
 out vec2 TexCoord;
@@ -9,10 +11,12 @@ out vec2 TexCoord;
 uniform mat4 model;
 uniform mat4 view;
 uniform mat4 projection;
+uniform bool instanced;
 
 void main()
 {
-    gl_Position = projection * view * model * vec4(aPos, 1.0f);
+    mat4 m = instanced ? aInstanceModel : model;
+    gl_Position = projection * view * m * vec4(aPos, 1.0f);
     ourColor = aColor;
     TexCoord = vec2(aTexCoord.x, 1.0 - aTexCoord.y);
 }
\ No newline at end of file
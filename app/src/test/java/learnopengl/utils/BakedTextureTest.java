@@ -0,0 +1,140 @@
+package learnopengl.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class BakedTextureTest {
+
+    private Path directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("baked-texture-test");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void levelCountCoversTheLongestAxis() {
+        Assert.assertEquals(BakedTexture.levelCount(1, 1), 1);
+        Assert.assertEquals(BakedTexture.levelCount(512, 512), 10);
+        Assert.assertEquals(BakedTexture.levelCount(512, 3), 10);
+        Assert.assertEquals(BakedTexture.levelCount(5, 3), 3);
+    }
+
+    @Test
+    public void downsampleAveragesEachQuad() {
+        // 2x2 RGB image: one red, one green, one blue and one white pixel
+        ByteBuffer src = ByteBuffer.wrap(new byte[] {
+                (byte) 255, 0, 0,   0, (byte) 255, 0,
+                0, 0, (byte) 255,   (byte) 255, (byte) 255, (byte) 255
+        });
+        ByteBuffer dst = ByteBuffer.allocate(3);
+        BakedTexture.downsample(src, 2, 2, dst, 1, 1, 3);
+
+        Assert.assertEquals(dst.get(0) & 0xFF, 128);
+        Assert.assertEquals(dst.get(1) & 0xFF, 128);
+        Assert.assertEquals(dst.get(2) & 0xFF, 128);
+    }
+
+    @Test
+    public void downsampleClampsOddEdges() {
+        // 3x2 single channel: the last column has no neighbour and is averaged with itself
+        ByteBuffer src = ByteBuffer.wrap(new byte[] {
+                10, 20, 90,
+                30, 40, 70
+        });
+        ByteBuffer dst = ByteBuffer.allocate(2);
+        BakedTexture.downsample(src, 3, 2, dst, 2, 1, 1);
+
+        Assert.assertEquals(dst.get(0) & 0xFF, 25);
+        Assert.assertEquals(dst.get(1) & 0xFF, 80);
+    }
+
+    // 5x3 RGB, odd on both axes so the chain has clamped edges all the way down
+    private static BakedTexture gradient() {
+        ByteBuffer image = ByteBuffer.allocate(5 * 3 * 3);
+        for (int i = 0; i < image.capacity(); i++) {
+            image.put(i, (byte) (i * 17));
+        }
+        return BakedTexture.fromPixels(image, 5, 3, 3);
+    }
+
+    private Path write(int codec) throws IOException {
+        Path file = directory.resolve("gradient" + BakedTexture.FILE_EXTENSION);
+        BakedTexture texture = gradient();
+        try {
+            texture.write(file, codec);
+        } finally {
+            texture.free();
+        }
+        return file;
+    }
+
+    private void assertRoundTrips(int codec) throws IOException {
+        BakedTexture expected = gradient();
+        BakedTexture actual = BakedTexture.read(write(codec));
+        try {
+            Assert.assertEquals(actual.getWidth(), 5);
+            Assert.assertEquals(actual.getHeight(), 3);
+            Assert.assertEquals(actual.getChannels(), 3);
+            Assert.assertEquals(actual.getLevelCount(), expected.getLevelCount());
+            for (int level = 0; level < expected.getLevelCount(); level++) {
+                Assert.assertEquals(actual.getLevelWidth(level), expected.getLevelWidth(level));
+                Assert.assertEquals(actual.getLevelHeight(level), expected.getLevelHeight(level));
+                Assert.assertEquals(actual.getLevelOffset(level), expected.getLevelOffset(level));
+            }
+            Assert.assertEquals(actual.getPixels(), expected.getPixels());
+        } finally {
+            expected.free();
+            actual.free();
+        }
+    }
+
+    @Test
+    public void roundTripsUncompressed() throws IOException {
+        assertRoundTrips(BakedTexture.CODEC_NONE);
+    }
+
+    @Test
+    public void roundTripsZstd() throws IOException {
+        assertRoundTrips(BakedTexture.CODEC_ZSTD);
+    }
+
+    @Test
+    public void roundTripsLz4() throws IOException {
+        assertRoundTrips(BakedTexture.CODEC_LZ4);
+    }
+
+    @Test
+    public void rejectsWrongMagic() throws IOException {
+        Path path = write(BakedTexture.CODEC_NONE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'M', 'E', 'S', 'H'}), 0);
+        }
+        Assert.expectThrows(IOException.class, () -> BakedTexture.read(path));
+    }
+
+    @Test
+    public void rejectsTruncatedFiles() throws IOException {
+        Path path = write(BakedTexture.CODEC_NONE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(path) - 1);
+        }
+        Assert.expectThrows(IOException.class, () -> BakedTexture.read(path));
+    }
+}
@@ -0,0 +1,83 @@
+package learnopengl.utils;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class FrameStatsTest {
+
+    private static final long INTERVAL = 16_666_667L;
+
+    @Test
+    public void framesPastHalfAnIntervalOfSlackAreDropped() {
+        FrameStats stats = new FrameStats(INTERVAL);
+        stats.recordFrame(INTERVAL + 1_000_000L, 1_000_000L, 2_000_000L, 10_000_000L); // jitter, not a drop
+        stats.recordFrame(2 * INTERVAL, 1_000_000L, 2_000_000L, 10_000_000L);       // missed one refresh
+        stats.recordFrame(4 * INTERVAL, 1_000_000L, 40_000_000L, 10_000_000L);      // missed three
+
+        Assert.assertEquals(stats.get(FrameStats.Phase.FRAME).getCount(), 3);
+        Assert.assertEquals(stats.getOverInterval(FrameStats.Phase.FRAME), 3);
+        Assert.assertEquals(stats.getOverInterval(FrameStats.Phase.RENDER), 1);
+        Assert.assertEquals(stats.getDroppedFrames(), 2);
+        Assert.assertEquals(stats.getMissedRefreshes(), 4);
+        Assert.assertTrue(stats.summary().contains("2 of 3 frames dropped"), stats.summary());
+    }
+
+    @Test
+    public void unknownRefreshRatesFallBackToSixtyHertz() {
+        Assert.assertEquals(FrameStats.forRefreshRate(0).getRefreshIntervalNanos(), INTERVAL - 1);
+        Assert.assertEquals(FrameStats.forRefreshRate(144).getRefreshIntervalNanos(), 6_944_444L);
+    }
+
+    @Test
+    public void writesOneCsvRowPerPhase() throws IOException {
+        FrameStats stats = new FrameStats(INTERVAL);
+        for (int i = 0; i < 10; i++) {
+            stats.recordFrame(INTERVAL, 2_000_000L, 3_000_000L, 11_000_000L);
+        }
+        Path file = Files.createTempFile("frame-stats", ".csv");
+        try {
+            stats.writeCsv(file);
+            List<String> lines = Files.readAllLines(file);
+            Assert.assertEquals(lines.size(), 1 + FrameStats.Phase.values().length);
+            Assert.assertTrue(lines.get(0).startsWith("phase,samples,mean_ms,p50_ms,p95_ms,p99_ms,max_ms"));
+            Assert.assertTrue(lines.get(1).startsWith("frame,10,16.6667,"), lines.get(1));
+            Assert.assertTrue(lines.get(1).endsWith(",0,0"), lines.get(1));
+            Assert.assertTrue(lines.get(2).startsWith("update,10,2.0000,"), lines.get(2));
+            Assert.assertTrue(lines.get(2).endsWith(",,"), lines.get(2));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            throw new SkipException("thread allocation counters are not available on this JVM");
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new SkipException("thread allocation counters are not available on this JVM");
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        FrameStats stats = new FrameStats(INTERVAL);
+        long threadId = Thread.currentThread().getId();
+        for (int frame = 0; frame < 10_000; frame++) {
+            stats.recordFrame(INTERVAL + frame, frame, 2L * frame, 3L * frame);
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int frame = 0; frame < 10_000; frame++) {
+            stats.recordFrame(INTERVAL + frame * 1000L, frame, 2L * frame, 3L * frame);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        Assert.assertTrue(allocated < 10_000, "recording allocated " + allocated + " bytes over 10000 frames");
+    }
+}
@@ -0,0 +1,58 @@
+package learnopengl.utils;
+
+import org.joml.Matrix4f;
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+public class FrustumCullerTest {
+
+    private FrustumCuller culler;
+
+    @BeforeMethod
+    public void setUp() {
+        // camera at z = 10 looking down -z, like the chapter 6 orbit at t = 0
+        Matrix4f viewProjection = new Matrix4f()
+                .setPerspective((float) Math.toRadians(45.0), 1.0f, 0.1f, 100.0f)
+                .lookAt(0.0f, 0.0f, 10.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+        culler = new FrustumCuller(16);
+        culler.update(viewProjection);
+    }
+
+    @Test
+    public void spheresInFrontAreVisibleAndBehindAreCulled() {
+        int inFront = culler.addSphere(0.0f, 0.0f, 0.0f, 0.5f);
+        int behind = culler.addSphere(0.0f, 0.0f, 20.0f, 0.5f);
+        int tooFar = culler.addSphere(0.0f, 0.0f, -200.0f, 0.5f);
+        int offToTheSide = culler.addSphere(50.0f, 0.0f, 0.0f, 0.5f);
+
+        Assert.assertEquals(culler.cull(), 1);
+        Assert.assertTrue(culler.isVisible(inFront));
+        Assert.assertFalse(culler.isVisible(behind));
+        Assert.assertFalse(culler.isVisible(tooFar));
+        Assert.assertFalse(culler.isVisible(offToTheSide));
+        Assert.assertEquals(culler.getVisible()[0], inFront);
+        Assert.assertEquals(culler.getCulledCount(), 3);
+    }
+
+    @Test
+    public void volumesStraddlingAPlaneAreKept() {
+        // the near plane sits at z = 9.9, centers are just behind it
+        int sphere = culler.addSphere(0.0f, 0.0f, 10.5f, 1.0f);
+        int box = culler.addBox(0.0f, 0.0f, 10.5f, 1.0f, 1.0f, 1.0f);
+        int small = culler.addBox(0.0f, 0.0f, 10.5f, 0.1f, 0.1f, 0.1f);
+
+        culler.cull();
+        Assert.assertTrue(culler.isVisible(sphere));
+        Assert.assertTrue(culler.isVisible(box));
+        Assert.assertFalse(culler.isVisible(small));
+    }
+
+    @Test
+    public void movedVolumesAreRetested() {
+        int i = culler.addSphere(0.0f, 0.0f, 0.0f, 0.5f);
+        Assert.assertEquals(culler.cull(), 1);
+        culler.setCenter(i, 0.0f, 0.0f, 50.0f);
+        Assert.assertEquals(culler.cull(), 0);
+        Assert.assertEquals(culler.getCulledCount(), 1);
+    }
+}
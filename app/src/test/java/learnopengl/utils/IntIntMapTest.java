@@ -0,0 +1,29 @@
+package learnopengl.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+public class IntIntMapTest {
+
+    @Test
+    public void missingKeysReturnTheMissingValue() {
+        IntIntMap map = new IntIntMap(4, -1);
+        Assert.assertEquals(map.get(3), -1);
+        Assert.assertFalse(map.containsKey(3));
+    }
+
+    @Test
+    public void valuesSurviveGrowth() {
+        IntIntMap map = new IntIntMap(2, -1);
+        for (int i = -500; i < 500; i++) {
+            map.put(i * 7, i);
+        }
+        Assert.assertEquals(map.size(), 1000);
+        for (int i = -500; i < 500; i++) {
+            Assert.assertEquals(map.get(i * 7), i);
+        }
+        map.put(7, 42);
+        Assert.assertEquals(map.get(7), 42);
+        Assert.assertEquals(map.size(), 1000);
+    }
+}
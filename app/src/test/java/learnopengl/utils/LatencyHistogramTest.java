@@ -0,0 +1,75 @@
+package learnopengl.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverTheRangeInOrder() {
+        int previous = -1;
+        for (long micros = 0; micros < 1L << 36; micros = micros < 256 ? micros + 1 : micros + micros / 7) {
+            int bucket = LatencyHistogram.bucket(micros);
+            Assert.assertTrue(bucket >= previous, "bucket went backwards at " + micros + "us");
+            Assert.assertTrue(micros <= LatencyHistogram.upperBound(bucket), micros + "us is past its bucket");
+            previous = bucket;
+        }
+        Assert.assertEquals(LatencyHistogram.bucket(Long.MAX_VALUE / 1000), LatencyHistogram.BUCKETS - 1);
+    }
+
+    @Test
+    public void bucketsStayWithinThreePercent() {
+        for (long micros = 64; micros < 1L << 30; micros = micros * 3 / 2 + 1) {
+            long upper = LatencyHistogram.upperBound(LatencyHistogram.bucket(micros));
+            Assert.assertTrue(upper - micros <= micros / 32 + 1, micros + "us lands in a bucket up to " + upper + "us");
+        }
+    }
+
+    @Test
+    public void percentilesOfAUniformSpread() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1 to 1000 ms
+        for (int ms = 1; ms <= 1000; ms++) {
+            histogram.record(ms * 1_000_000L);
+        }
+        Assert.assertEquals(histogram.getCount(), 1000);
+        Assert.assertEquals(histogram.getMaxNanos(), 1_000_000_000L);
+        Assert.assertEquals(histogram.getMeanNanos(), 500.5e6, 1.0);
+        Assert.assertEquals(histogram.getPercentileNanos(0.50) / 1e6, 500.0, 500.0 / 32);
+        Assert.assertEquals(histogram.getPercentileNanos(0.99) / 1e6, 990.0, 990.0 / 32);
+        Assert.assertEquals(histogram.getPercentileNanos(1.0), 1_000_000_000L);
+    }
+
+    @Test
+    public void emptyAndResetHistogramsReportZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(histogram.getPercentileNanos(0.99), 0);
+        histogram.record(5_000_000L);
+        histogram.reset();
+        Assert.assertEquals(histogram.getCount(), 0);
+        Assert.assertEquals(histogram.getMaxNanos(), 0);
+        Assert.assertEquals(histogram.getPercentileNanos(0.5), 0);
+    }
+
+    @Test
+    public void concurrentWritersLoseNoSamples() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            pool.execute(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record((thread * 100_000L + i) * 1000);
+                }
+            });
+        }
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        Assert.assertEquals(histogram.getCount(), 400_000);
+        Assert.assertEquals(histogram.getMaxNanos(), 399_999_000L);
+    }
+}
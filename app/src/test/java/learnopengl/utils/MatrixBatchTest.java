@@ -0,0 +1,193 @@
+package learnopengl.utils;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.lwjgl.system.MemoryUtil.memAllocFloat;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+public class MatrixBatchTest {
+
+    private static final float EPSILON = 1e-5f;
+    // more than one chunk of the buffer overloads, and not a whole number of them
+    private static final int COUNT = 300;
+
+    private final Random random = new Random(42);
+
+    // the scalar batch always, and the vector one too when the test JVM has the module
+    private MatrixBatch[] batches() {
+        MatrixBatch best = MatrixBatch.get();
+        return best.isVectorized() ? new MatrixBatch[]{MatrixBatch.scalar(), best} : new MatrixBatch[]{MatrixBatch.scalar()};
+    }
+
+    private float[] randomMatrices(int count) {
+        float[] matrices = new float[count * 16];
+        for (int i = 0; i < matrices.length; i++) {
+            matrices[i] = random.nextFloat() * 2.0f - 1.0f;
+        }
+        return matrices;
+    }
+
+    private static Matrix4f matrix(float[] matrices, int i) {
+        float[] m = new float[16];
+        System.arraycopy(matrices, i * 16, m, 0, 16);
+        return new Matrix4f().set(m);
+    }
+
+    private static void assertMatrix(float[] matrices, int i, Matrix4f expected, String message) {
+        float[] e = expected.get(new float[16]);
+        for (int k = 0; k < 16; k++) {
+            Assert.assertEquals(matrices[i * 16 + k], e[k], EPSILON, message + " matrix " + i + " element " + k);
+        }
+    }
+
+    @Test
+    public void mulMatchesJoml() {
+        float[] a = randomMatrices(COUNT);
+        float[] b = randomMatrices(COUNT);
+        for (MatrixBatch batch : batches()) {
+            float[] dst = new float[COUNT * 16];
+            batch.mul(a, b, dst, COUNT);
+            for (int i = 0; i < COUNT; i++) {
+                assertMatrix(dst, i, matrix(a, i).mul(matrix(b, i)), batch.getClass().getSimpleName());
+            }
+        }
+    }
+
+    @Test
+    public void mulAllowsTheDestinationToBeEitherSide() {
+        float[] a = randomMatrices(COUNT);
+        float[] b = randomMatrices(COUNT);
+        for (MatrixBatch batch : batches()) {
+            float[] expected = new float[COUNT * 16];
+            batch.mul(a, b, expected, COUNT);
+            float[] intoA = a.clone();
+            batch.mul(intoA, b, intoA, COUNT);
+            float[] intoB = b.clone();
+            batch.mul(a, intoB, intoB, COUNT);
+            Assert.assertEquals(intoA, expected);
+            Assert.assertEquals(intoB, expected);
+        }
+    }
+
+    @Test
+    public void mulAllUsesOneLeftMatrix() {
+        float[] left = randomMatrices(1);
+        float[] right = randomMatrices(COUNT);
+        for (MatrixBatch batch : batches()) {
+            float[] dst = new float[COUNT * 16];
+            batch.mulAll(left, right, dst, COUNT);
+            for (int i = 0; i < COUNT; i++) {
+                assertMatrix(dst, i, matrix(left, 0).mul(matrix(right, i)), batch.getClass().getSimpleName());
+            }
+        }
+    }
+
+    @Test
+    public void buffersMatchArrays() {
+        float[] a = randomMatrices(COUNT);
+        float[] b = randomMatrices(COUNT);
+        FloatBuffer ab = memAllocFloat(COUNT * 16 + 16);
+        FloatBuffer bb = memAllocFloat(COUNT * 16);
+        FloatBuffer db = memAllocFloat(COUNT * 16 + 16);
+        try {
+            // offset by a matrix, to check the buffers are read from their position
+            ab.position(16);
+            ab.put(a).position(16);
+            bb.put(b).flip();
+            db.position(16);
+            for (MatrixBatch batch : batches()) {
+                float[] expected = new float[COUNT * 16];
+                batch.mul(a, b, expected, COUNT);
+                batch.mul(ab, bb, db, COUNT);
+                Assert.assertEquals(db.position(), 16);
+                for (int k = 0; k < expected.length; k++) {
+                    Assert.assertEquals(db.get(16 + k), expected[k], EPSILON, batch.getClass().getSimpleName());
+                }
+
+                batch.mulAll(a, b, expected, COUNT);
+                batch.mulAll(ab, bb, db, COUNT);
+                for (int k = 0; k < expected.length; k++) {
+                    Assert.assertEquals(db.get(16 + k), expected[k], EPSILON, batch.getClass().getSimpleName());
+                }
+            }
+        } finally {
+            memFree(ab);
+            memFree(bb);
+            memFree(db);
+        }
+    }
+
+    @Test
+    public void composeTrsMatchesTranslationRotateScale() {
+        float[] translations = new float[COUNT * 3];
+        float[] rotations = new float[COUNT * 4];
+        float[] scales = new float[COUNT * 3];
+        for (int i = 0; i < COUNT; i++) {
+            Quaternionf q = new Quaternionf().rotationAxis(random.nextFloat() * 6.0f, 1.0f, 0.3f, 0.5f);
+            rotations[i * 4] = q.x();
+            rotations[i * 4 + 1] = q.y();
+            rotations[i * 4 + 2] = q.z();
+            rotations[i * 4 + 3] = q.w();
+            for (int c = 0; c < 3; c++) {
+                translations[i * 3 + c] = random.nextFloat() * 20.0f - 10.0f;
+                scales[i * 3 + c] = random.nextFloat() + 0.5f;
+            }
+        }
+        for (MatrixBatch batch : batches()) {
+            float[] dst = new float[COUNT * 16];
+            batch.composeTrs(translations, rotations, scales, dst, COUNT);
+            for (int i = 0; i < COUNT; i++) {
+                Matrix4f expected = new Matrix4f().translationRotateScale(
+                        translations[i * 3], translations[i * 3 + 1], translations[i * 3 + 2],
+                        rotations[i * 4], rotations[i * 4 + 1], rotations[i * 4 + 2], rotations[i * 4 + 3],
+                        scales[i * 3], scales[i * 3 + 1], scales[i * 3 + 2]);
+                assertMatrix(dst, i, expected, batch.getClass().getSimpleName());
+            }
+        }
+    }
+
+    @Test
+    public void transformPointsMatchesTransformPosition() {
+        float[] matrix = new Matrix4f().translationRotateScale(1.0f, -2.0f, 3.0f,
+                0.0f, 0.38268343f, 0.0f, 0.9238795f, 2.0f, 2.0f, 2.0f).get(new float[16]);
+        float[] points = new float[COUNT * 3];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = random.nextFloat() * 10.0f - 5.0f;
+        }
+        for (MatrixBatch batch : batches()) {
+            float[] dst = new float[COUNT * 3];
+            batch.transformPoints(matrix, points, dst, COUNT);
+            float[] inPlace = points.clone();
+            batch.transformPoints(matrix, inPlace, inPlace, COUNT);
+            FloatBuffer buffer = memAllocFloat(COUNT * 3);
+            try {
+                buffer.put(points).flip();
+                batch.transformPoints(matrix, buffer, buffer, COUNT);
+                for (int i = 0; i < COUNT; i++) {
+                    Vector3f expected = matrix(matrix, 0).transformPosition(new Vector3f(points[i * 3], points[i * 3 + 1], points[i * 3 + 2]));
+                    float[] e = {expected.x, expected.y, expected.z};
+                    for (int c = 0; c < 3; c++) {
+                        String message = batch.getClass().getSimpleName() + " point " + i;
+                        Assert.assertEquals(dst[i * 3 + c], e[c], EPSILON, message);
+                        Assert.assertEquals(inPlace[i * 3 + c], e[c], EPSILON, message + " in place");
+                        Assert.assertEquals(buffer.get(i * 3 + c), e[c], EPSILON, message + " in a buffer");
+                    }
+                }
+            } finally {
+                memFree(buffer);
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectsArraysThatAreTooShort() {
+        MatrixBatch.get().mul(new float[16], new float[32], new float[32], 2);
+    }
+}
@@ -0,0 +1,104 @@
+package learnopengl.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+
+public class MeshFileTest {
+
+    private Path directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("mesh-file-test");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private static Mesh quad() {
+        float[] vertices = {
+                0.5f, 0.5f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f,
+                0.5f, -0.5f, 0.0f, 0.0f, 1.0f, 0.0f, 1.0f, 1.0f, 0.0f,
+                -0.5f, -0.5f, 0.0f, 0.0f, 0.0f, 1.0f, 1.0f, 0.0f, 0.0f,
+                -0.5f, 0.5f, 0.0f, 1.0f, 1.0f, 0.0f, 1.0f, 0.0f, 1.0f
+        };
+        return new Mesh.Builder(ModelLoader.FLOATS_PER_VERTEX)
+                .indexed(vertices, new int[]{0, 1, 3, 1, 2, 3})
+                .optimizeVertexCache(false)
+                .build();
+    }
+
+    private Path writeQuad() throws IOException {
+        Path file = directory.resolve("quad" + MeshFile.FILE_EXTENSION);
+        MeshFile.write(file, MeshPacker.FORMAT, quad());
+        return file;
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        Mesh mesh = quad();
+        MeshFile file = MeshFile.open(writeQuad());
+
+        Assert.assertEquals(file.getVertexCount(), mesh.getVertexCount());
+        Assert.assertEquals(file.getIndexCount(), 6);
+        Assert.assertEquals(file.getIndexType(), GL_UNSIGNED_SHORT);
+        Assert.assertEquals(file.getFormat().getStride(), MeshPacker.FORMAT.getStride());
+        Assert.assertEquals(file.getFormat().getAttributes().size(), 3);
+        Assert.assertEquals(file.getVertices(), MeshPacker.FORMAT.pack(mesh.getVertices()));
+        Assert.assertEquals(file.getIndices(), mesh.getIndices());
+    }
+
+    @Test
+    public void blocksArePageAligned() throws IOException {
+        Path path = writeQuad();
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals(header.getLong(32), MeshFile.BLOCK_ALIGNMENT);
+        Assert.assertEquals(header.getLong(48) % MeshFile.BLOCK_ALIGNMENT, 0);
+        Assert.assertEquals(MeshFile.align(1), MeshFile.BLOCK_ALIGNMENT);
+        Assert.assertEquals(MeshFile.align(MeshFile.BLOCK_ALIGNMENT), MeshFile.BLOCK_ALIGNMENT);
+    }
+
+    @Test
+    public void rejectsWrongMagic() throws IOException {
+        Path path = writeQuad();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'O', 'B', 'J', ' '}), 0);
+        }
+        Assert.expectThrows(IOException.class, () -> MeshFile.open(path));
+    }
+
+    @Test
+    public void rejectsTruncatedFiles() throws IOException {
+        Path path = writeQuad();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(path) - 1);
+        }
+        Assert.expectThrows(IOException.class, () -> MeshFile.open(path));
+    }
+
+    @Test
+    public void rejectsUnknownAttributeTypes() throws IOException {
+        Path path = writeQuad();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ByteBuffer type = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 99);
+            channel.write(type, MeshFile.HEADER_BYTES + 8);
+        }
+        Assert.expectThrows(IOException.class, () -> MeshFile.open(path));
+    }
+}
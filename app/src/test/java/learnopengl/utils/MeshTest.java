@@ -0,0 +1,137 @@
+package learnopengl.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+
+public class MeshTest {
+
+    // the chapter 6 cube: six faces of two triangles, position and uv per vertex; faces share corners with equal uvs
+    private static float[] cube() {
+        float[][] corners = {
+                {-0.5f, -0.5f, -0.5f, 0, 0}, {0.5f, -0.5f, -0.5f, 1, 0}, {0.5f, 0.5f, -0.5f, 1, 1},
+                {0.5f, 0.5f, -0.5f, 1, 1}, {-0.5f, 0.5f, -0.5f, 0, 1}, {-0.5f, -0.5f, -0.5f, 0, 0},
+                {-0.5f, -0.5f, 0.5f, 0, 0}, {0.5f, -0.5f, 0.5f, 1, 0}, {0.5f, 0.5f, 0.5f, 1, 1},
+                {0.5f, 0.5f, 0.5f, 1, 1}, {-0.5f, 0.5f, 0.5f, 0, 1}, {-0.5f, -0.5f, 0.5f, 0, 0},
+                {-0.5f, 0.5f, 0.5f, 1, 0}, {-0.5f, 0.5f, -0.5f, 1, 1}, {-0.5f, -0.5f, -0.5f, 0, 1},
+                {-0.5f, -0.5f, -0.5f, 0, 1}, {-0.5f, -0.5f, 0.5f, 0, 0}, {-0.5f, 0.5f, 0.5f, 1, 0},
+                {0.5f, 0.5f, 0.5f, 1, 0}, {0.5f, 0.5f, -0.5f, 1, 1}, {0.5f, -0.5f, -0.5f, 0, 1},
+                {0.5f, -0.5f, -0.5f, 0, 1}, {0.5f, -0.5f, 0.5f, 0, 0}, {0.5f, 0.5f, 0.5f, 1, 0},
+                {-0.5f, -0.5f, -0.5f, 0, 1}, {0.5f, -0.5f, -0.5f, 1, 1}, {0.5f, -0.5f, 0.5f, 1, 0},
+                {0.5f, -0.5f, 0.5f, 1, 0}, {-0.5f, -0.5f, 0.5f, 0, 0}, {-0.5f, -0.5f, -0.5f, 0, 1},
+                {-0.5f, 0.5f, -0.5f, 0, 1}, {0.5f, 0.5f, -0.5f, 1, 1}, {0.5f, 0.5f, 0.5f, 1, 0},
+                {0.5f, 0.5f, 0.5f, 1, 0}, {-0.5f, 0.5f, 0.5f, 0, 0}, {-0.5f, 0.5f, -0.5f, 0, 1}
+        };
+        float[] vertices = new float[corners.length * 5];
+        for (int i = 0; i < corners.length; i++) {
+            System.arraycopy(corners[i], 0, vertices, i * 5, 5);
+        }
+        return vertices;
+    }
+
+    private static int index(Mesh mesh, int i) {
+        ByteBuffer indices = mesh.getIndices();
+        return mesh.getIndexType() == GL_UNSIGNED_SHORT
+                ? indices.getShort(i * Short.BYTES) & 0xFFFF
+                : indices.getInt(i * Integer.BYTES);
+    }
+
+    @Test
+    public void cubeWeldsToSixteenVertices() {
+        float[] vertices = cube();
+        Mesh mesh = new Mesh.Builder(5).triangles(vertices).build();
+
+        Assert.assertEquals(mesh.getInputVertexCount(), 36);
+        Assert.assertEquals(mesh.getVertexCount(), 16);
+        Assert.assertEquals(mesh.getIndexCount(), 36);
+        Assert.assertEquals(mesh.getIndexType(), GL_UNSIGNED_SHORT);
+        Assert.assertEquals(mesh.getIndices().remaining(), 36 * Short.BYTES);
+        Assert.assertEquals(mesh.getVertices().remaining(), 16 * 5);
+
+        // every index still points at the vertex that was listed in its place
+        FloatBuffer welded = mesh.getVertices();
+        for (int i = 0; i < mesh.getIndexCount(); i++) {
+            int v = index(mesh, i);
+            for (int c = 0; c < 5; c++) {
+                Assert.assertEquals(welded.get(v * 5 + c), vertices[i * 5 + c]);
+            }
+        }
+    }
+
+    @Test
+    public void negativeZeroWeldsWithZero() {
+        float[] vertices = {
+                0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f,
+                -0.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f
+        };
+        Mesh mesh = new Mesh.Builder(2).triangles(vertices).optimizeVertexCache(false).build();
+        Assert.assertEquals(mesh.getVertexCount(), 4);
+    }
+
+    @Test
+    public void verticesAreNumberedInFirstUseOrder() {
+        float[] quad = {0.5f, 0.5f, 0.5f, -0.5f, -0.5f, -0.5f, -0.5f, 0.5f};
+        Mesh mesh = new Mesh.Builder(2)
+                .indexed(quad, new int[]{3, 1, 0, 1, 2, 3})
+                .optimizeVertexCache(false)
+                .build();
+
+        Assert.assertEquals(mesh.getVertexCount(), 4);
+        int[] expected = {0, 1, 2, 1, 3, 0};
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(index(mesh, i), expected[i]);
+        }
+        Assert.assertEquals(mesh.getVertices().get(0), -0.5f);
+        Assert.assertEquals(mesh.getVertices().get(1), 0.5f);
+    }
+
+    @Test
+    public void switchesToIntIndicesPastSixteenBits() {
+        int triangles = Mesh.MAX_SHORT_VERTICES / 3 + 1;
+        float[] vertices = new float[triangles * 3];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = i;
+        }
+        Mesh mesh = new Mesh.Builder(1).triangles(vertices).optimizeVertexCache(false).build();
+
+        Assert.assertTrue(mesh.getVertexCount() > Mesh.MAX_SHORT_VERTICES);
+        Assert.assertEquals(mesh.getIndexType(), GL_UNSIGNED_INT);
+        Assert.assertEquals(mesh.getIndices().remaining(), vertices.length * Integer.BYTES);
+        Assert.assertEquals(index(mesh, vertices.length - 1), vertices.length - 1);
+    }
+
+    @Test
+    public void acmrCountsFifoCacheMisses() {
+        // nothing shared: three misses per triangle
+        Assert.assertEquals(Mesh.acmr(new int[]{0, 1, 2, 3, 4, 5}, 16), 3.0f);
+        // a quad: four misses over two triangles
+        Assert.assertEquals(Mesh.acmr(new int[]{0, 1, 2, 2, 1, 3}, 16), 2.0f);
+        // with a cache of three, vertex 0 has been evicted by the time the last triangle needs it
+        Assert.assertEquals(Mesh.acmr(new int[]{0, 1, 2, 1, 2, 3, 3, 2, 0}, 3), 5.0f / 3.0f);
+        Assert.assertEquals(Mesh.acmr(new int[0], 16), 0.0f);
+    }
+
+    @Test
+    public void reorderingNeverMakesTheCacheWorse() {
+        Mesh mesh = new Mesh.Builder(5).triangles(cube()).build();
+        Assert.assertTrue(mesh.getAcmrAfter() <= mesh.getAcmrBefore());
+        if (!mesh.isReordered()) {
+            Assert.assertEquals(mesh.getAcmrAfter(), mesh.getAcmrBefore());
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectsPartialVertices() {
+        new Mesh.Builder(3).triangles(new float[]{1, 2, 3, 4});
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectsIndicesOutOfRange() {
+        new Mesh.Builder(1).indexed(new float[]{1, 2, 3}, new int[]{0, 1, 3});
+    }
+}
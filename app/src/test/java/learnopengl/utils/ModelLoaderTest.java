@@ -0,0 +1,154 @@
+package learnopengl.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class ModelLoaderTest {
+
+    private Path directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("model-loader-test");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    // a quad in the chapter layout, split into two triangles
+    private static Mesh quad(float z) {
+        float[] vertices = {
+                0.5f, 0.5f, z, 1.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f,
+                0.5f, -0.5f, z, 0.0f, 1.0f, 0.0f, 1.0f, 1.0f, 0.0f,
+                -0.5f, -0.5f, z, 0.0f, 0.0f, 1.0f, 1.0f, 0.0f, 0.0f,
+                -0.5f, 0.5f, z, 1.0f, 1.0f, 0.0f, 1.0f, 0.0f, 1.0f
+        };
+        return new Mesh.Builder(ModelLoader.FLOATS_PER_VERTEX)
+                .indexed(vertices, new int[]{0, 1, 3, 1, 2, 3})
+                .optimizeVertexCache(false)
+                .build();
+    }
+
+    @DataProvider
+    public Object[][] codecs() {
+        return new Object[][]{{BakedTexture.CODEC_NONE}, {BakedTexture.CODEC_ZSTD}, {BakedTexture.CODEC_LZ4}};
+    }
+
+    // writes a source file and a cache entry for it, as if it had been imported before
+    private Path cachedSource(String name, List<Mesh> meshes, int codec) throws IOException {
+        Path source = directory.resolve(name);
+        Files.writeString(source, "# " + name);
+        List<String> names = new ArrayList<>();
+        for (int m = 0; m < meshes.size(); m++) {
+            names.add("mesh" + m);
+        }
+        ModelLoader.write(ModelLoader.cacheFile(source, directory), names, meshes, codec);
+        return source;
+    }
+
+    @Test(dataProvider = "codecs")
+    public void cacheRoundTrips(int codec) throws IOException {
+        Mesh front = quad(0.5f);
+        Mesh back = quad(-0.5f);
+        Path file = directory.resolve("quads" + ModelLoader.FILE_EXTENSION);
+        ModelLoader.write(file, List.of("front", "back"), List.of(front, back), codec);
+
+        List<String> names = new ArrayList<>();
+        List<Mesh> meshes = ModelLoader.read(file, names);
+        Assert.assertEquals(names, List.of("front", "back"));
+        Assert.assertEquals(meshes.size(), 2);
+        for (int m = 0; m < 2; m++) {
+            Mesh expected = m == 0 ? front : back;
+            Mesh actual = meshes.get(m);
+            Assert.assertEquals(actual.getVertexCount(), expected.getVertexCount());
+            Assert.assertEquals(actual.getIndexCount(), expected.getIndexCount());
+            Assert.assertEquals(actual.getIndexType(), expected.getIndexType());
+            Assert.assertEquals(actual.getAcmrAfter(), expected.getAcmrAfter());
+            Assert.assertEquals(actual.getVertices(), expected.getVertices());
+            Assert.assertEquals(actual.getIndices(), expected.getIndices());
+        }
+    }
+
+    @Test(dataProvider = "codecs")
+    public void secondLoadComesFromTheCache(int codec) throws IOException {
+        Path source = cachedSource("cube.obj", List.of(quad(0.5f), quad(-0.5f)), codec);
+
+        List<String> stages = new ArrayList<>();
+        Model model = ModelLoader.loadCached(source, directory, codec,
+                (file, stage, fraction) -> stages.add(stage), () -> false);
+
+        Assert.assertTrue(model.isFromCache());
+        Assert.assertEquals(model.getMeshes().size(), 2);
+        Assert.assertEquals(model.getTriangleCount(), 4);
+        Assert.assertEquals(model.getMin(2), -0.5f);
+        Assert.assertEquals(model.getMax(0), 0.5f);
+        Assert.assertEquals(stages, List.of("hashing", "done"));
+    }
+
+    @Test(dataProvider = "codecs")
+    public void corruptCacheFilesAreDiscarded(int codec) throws IOException {
+        Path source = cachedSource("broken.obj", List.of(quad(0.0f)), codec);
+        Path cacheFile = ModelLoader.cacheFile(source, directory);
+        Files.write(cacheFile, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        // the source is not a real model either, so the import after the discarded cache fails too
+        Assert.expectThrows(IOException.class, () ->
+                ModelLoader.loadCached(source, directory, codec, ModelLoader.NO_PROGRESS, () -> false));
+        Assert.assertFalse(Files.exists(cacheFile));
+    }
+
+    @Test
+    public void cancelledLoadsNeverStart() throws Exception {
+        Path first = cachedSource("first.obj", List.of(quad(0.0f)), BakedTexture.CODEC_NONE);
+        Path second = directory.resolve("second.obj");
+        Files.writeString(second, "# second");
+
+        ModelLoader loader = new ModelLoader(1, directory, BakedTexture.CODEC_NONE);
+        try {
+            // the only worker is held up in the first load while the second one is cancelled
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Model> running = loader.load(first, (file, stage, fraction) -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            List<String> secondStages = new ArrayList<>();
+            CompletableFuture<Model> queued = loader.load(second, (file, stage, fraction) -> secondStages.add(stage));
+
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(queued.cancel(true));
+            release.countDown();
+
+            Assert.assertTrue(running.get(10, TimeUnit.SECONDS).isFromCache());
+            Assert.expectThrows(CancellationException.class, queued::join);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!loader.isIdle() && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            Assert.assertTrue(loader.isIdle());
+            Assert.assertTrue(secondStages.isEmpty());
+        } finally {
+            loader.destroy();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package learnopengl.utils;
+
+import org.joml.Matrix4f;
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RenderQueueTest {
+
+    private static final int GL_TRIANGLES = 4;
+
+    // records every call the queue makes, in order
+    private static class RecordingBackend implements RenderQueue.Backend {
+        final List<String> calls = new ArrayList<>();
+        final List<Float> modelTranslations = new ArrayList<>();
+        int stateChanges;
+
+        @Override
+        public void useProgram(int program) {
+            calls.add("program " + program);
+            stateChanges++;
+        }
+
+        @Override
+        public void bindVertexArray(int vertexArray) {
+            calls.add("vao " + vertexArray);
+            stateChanges++;
+        }
+
+        @Override
+        public void bindTexture(int unit, int texture) {
+            calls.add("texture " + unit + " " + texture);
+            stateChanges++;
+        }
+
+        @Override
+        public void uniformMatrix4(int location, FloatBuffer value) {
+            Assert.assertEquals(value.remaining(), 16);
+            modelTranslations.add(value.get(value.position() + 12));
+        }
+
+        @Override
+        public void drawArrays(int mode, int first, int count) {
+            calls.add("draw " + first + " " + count);
+        }
+
+        @Override
+        public void drawElements(int mode, int count, int type, long offset) {
+            calls.add("elements " + count);
+        }
+    }
+
+    private RenderQueue queue;
+    private RecordingBackend backend;
+
+    @BeforeMethod
+    public void setUp() {
+        queue = new RenderQueue(64);
+        backend = new RecordingBackend();
+    }
+
+    @Test
+    public void packetsAreGroupedByStateAndSortedByDepth() {
+        Matrix4f model = new Matrix4f();
+        // interleave two programs and two textures the worst possible way
+        for (int i = 0; i < 8; i++) {
+            queue.packet()
+                    .program(i % 2 == 0 ? 10 : 20)
+                    .vertexArray(3)
+                    .texture(0, i % 4 < 2 ? 7 : 8)
+                    .model(1, model.translation(i, 0, 0))
+                    .depth(8 - i)
+                    .drawArrays(GL_TRIANGLES, 0, 36);
+        }
+        queue.execute(backend);
+
+        Assert.assertEquals(queue.getDrawCalls(), 8);
+        // two programs, one shared vertex array and two textures per program
+        Assert.assertEquals(queue.getStateChanges(), 2 + 1 + 4);
+        Assert.assertEquals(backend.stateChanges, queue.getStateChanges());
+
+        // program 10 was seen first so its packets come first, front to back inside each texture group
+        int[] expected = {4, 0, 6, 2, 5, 1, 7, 3};
+        for (int n = 0; n < expected.length; n++) {
+            Assert.assertEquals(queue.getSortedIndex(n), expected[n]);
+            Assert.assertEquals((float) backend.modelTranslations.get(n), (float) expected[n]);
+        }
+        Assert.assertEquals(backend.calls.get(0), "program 10");
+        Assert.assertEquals(backend.calls.get(1), "vao 3");
+        Assert.assertEquals(backend.calls.get(2), "texture 0 7");
+    }
+
+    @Test
+    public void sortingBoundsTheStateChanges() {
+        for (int i = 0; i < 32; i++) {
+            queue.packet().program(1 + i % 4).vertexArray(1 + i % 3).drawArrays(GL_TRIANGLES, 0, 3);
+        }
+        queue.execute(backend);
+        // 4 programs, and at most 3 vertex arrays under each
+        Assert.assertTrue(queue.getStateChanges() <= 4 + 4 * 3, "state changes: " + queue.getStateChanges());
+        Assert.assertEquals(queue.getDrawCalls(), 32);
+    }
+
+    @Test
+    public void clearEmptiesTheQueue() {
+        queue.packet().program(1).drawElements(GL_TRIANGLES, 6, 0, 0);
+        queue.execute(backend);
+        Assert.assertEquals(backend.calls.get(backend.calls.size() - 1), "elements 6");
+
+        queue.clear();
+        backend.calls.clear();
+        queue.execute(backend);
+        Assert.assertEquals(queue.size(), 0);
+        Assert.assertTrue(backend.calls.isEmpty());
+    }
+
+    @Test
+    public void depthQuantizationKeepsOrder() {
+        float[] depths = {0.0f, 0.001f, 0.1f, 0.5f, 1.0f, 9.99f, 10.0f, 1000.0f};
+        for (int i = 1; i < depths.length; i++) {
+            Assert.assertTrue(RenderQueue.quantizeDepth(depths[i - 1]) < RenderQueue.quantizeDepth(depths[i]));
+        }
+        Assert.assertEquals(RenderQueue.quantizeDepth(-5.0f), 0);
+        Assert.assertTrue(RenderQueue.quantizeDepth(Float.MAX_VALUE) < 1 << RenderQueue.DEPTH_BITS);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void overflowIsReported() {
+        for (int i = 0; i <= queue.getCapacity(); i++) {
+            queue.packet().drawArrays(GL_TRIANGLES, 0, 3);
+        }
+    }
+}
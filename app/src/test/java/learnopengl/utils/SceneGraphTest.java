@@ -0,0 +1,96 @@
+package learnopengl.utils;
+
+import org.joml.Matrix4f;
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+public class SceneGraphTest {
+
+    private static void assertMatrix(Matrix4f actual, Matrix4f expected) {
+        float[] a = new float[16];
+        float[] e = new float[16];
+        actual.get(a);
+        expected.get(e);
+        for (int i = 0; i < 16; i++) {
+            Assert.assertEquals(a[i], e[i], 1e-5f, "float " + i);
+        }
+    }
+
+    @Test
+    public void worldIsParentTimesLocal() {
+        SceneGraph graph = new SceneGraph(4);
+        int root = graph.add(SceneGraph.NO_PARENT);
+        int child = graph.add(root);
+        int grandChild = graph.add(child);
+        graph.setTranslation(root, 1, 2, 3);
+        graph.setRotation(root, 0.5f, 0, 1, 0);
+        graph.setTranslation(child, 0, 5, 0);
+        graph.setScale(child, 2, 2, 2);
+        graph.setRotation(grandChild, 1.0f, 1, 0, 0);
+        graph.setTranslation(grandChild, 1, 0, 0);
+        Assert.assertEquals(graph.update(), 3);
+
+        Matrix4f rootWorld = new Matrix4f().translation(1, 2, 3).rotate(0.5f, 0, 1, 0);
+        Matrix4f childWorld = new Matrix4f(rootWorld).translate(0, 5, 0).scale(2);
+        Matrix4f grandChildWorld = new Matrix4f(childWorld).translate(1, 0, 0).rotate(1.0f, 1, 0, 0);
+        assertMatrix(graph.getWorld(root, new Matrix4f()), rootWorld);
+        assertMatrix(graph.getWorld(child, new Matrix4f()), childWorld);
+        assertMatrix(graph.getWorld(grandChild, new Matrix4f()), grandChildWorld);
+    }
+
+    @Test
+    public void onlyChangedSubtreesAreUpdated() {
+        SceneGraph graph = new SceneGraph(16);
+        int root = graph.add(SceneGraph.NO_PARENT);
+        int[] children = new int[4];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = graph.add(root);
+            graph.add(children[i]);
+            graph.add(children[i]);
+        }
+        Assert.assertEquals(graph.update(), 13);
+        Assert.assertEquals(graph.update(), 0);
+
+        graph.setTranslation(children[2], 1, 0, 0);
+        Assert.assertEquals(graph.update(), 3);
+
+        // a change below an already dirty node is covered by the parent's range
+        graph.setTranslation(children[1], 1, 0, 0);
+        graph.setTranslation(graph.add(children[1]), 0, 1, 0);
+        graph.setTranslation(root, 0, 0, 1);
+        Assert.assertEquals(graph.update(), 14);
+        Assert.assertEquals(graph.getLastUpdatedCount(), 14);
+    }
+
+    @Test
+    public void insertionKeepsSubtreesContiguous() {
+        SceneGraph graph = new SceneGraph(2);
+        int a = graph.add(SceneGraph.NO_PARENT);
+        int b = graph.add(SceneGraph.NO_PARENT);
+        int b1 = graph.add(b);
+        int a1 = graph.add(a);
+        int a2 = graph.add(a);
+        int a11 = graph.add(a1);
+
+        Assert.assertEquals(graph.size(), 6);
+        Assert.assertEquals(graph.getPosition(a), 0);
+        Assert.assertEquals(graph.getPosition(a1), 1);
+        Assert.assertEquals(graph.getPosition(a11), 2);
+        Assert.assertEquals(graph.getPosition(a2), 3);
+        Assert.assertEquals(graph.getPosition(b), 4);
+        Assert.assertEquals(graph.getPosition(b1), 5);
+        Assert.assertEquals(graph.getSubtreeSize(a), 4);
+        Assert.assertEquals(graph.getParent(a11), a1);
+        Assert.assertEquals(graph.getParent(b1), b);
+
+        // matrices moved along with their nodes
+        graph.setTranslation(b, 3, 0, 0);
+        graph.setTranslation(b1, 0, 4, 0);
+        graph.update();
+        graph.add(a2);
+        graph.update();
+        Matrix4f world = graph.getWorld(b1, new Matrix4f());
+        Assert.assertEquals(world.m30(), 3.0f);
+        Assert.assertEquals(world.m31(), 4.0f);
+    }
+}
@@ -0,0 +1,64 @@
+package learnopengl.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class TraceRecorderTest {
+
+    @Test
+    public void spansKeepTheirOrderPastTheInitialCapacity() {
+        TraceRecorder trace = new TraceRecorder();
+        for (int i = 0; i < 5000; i++) {
+            trace.add("span", i % 2 == 0 ? TraceRecorder.CPU_TRACK : TraceRecorder.GPU_TRACK, i * 10L, 5L);
+        }
+        Assert.assertEquals(trace.size(), 5000);
+        Assert.assertEquals(trace.getStart(4321), 43210L);
+        Assert.assertEquals(trace.getTrack(4321), TraceRecorder.GPU_TRACK);
+        Assert.assertEquals(trace.getDropped(), 0);
+    }
+
+    @Test
+    public void spansPastTheLimitAreCountedNotKept() {
+        TraceRecorder trace = new TraceRecorder(3);
+        for (int i = 0; i < 5; i++) {
+            trace.add("span", TraceRecorder.CPU_TRACK, i, 1);
+        }
+        Assert.assertEquals(trace.size(), 3);
+        Assert.assertEquals(trace.getDropped(), 2);
+        Assert.assertTrue(trace.summary().contains("2 spans dropped"));
+    }
+
+    @Test
+    public void summaryAveragesPerNameAndTrack() {
+        TraceRecorder trace = new TraceRecorder();
+        trace.add("draw", TraceRecorder.CPU_TRACK, 0, 1_000_000);
+        trace.add("draw", TraceRecorder.CPU_TRACK, 0, 3_000_000);
+        trace.add("draw", TraceRecorder.GPU_TRACK, 0, 500_000);
+        String summary = trace.summary();
+        Assert.assertTrue(summary.matches("(?s)cpu draw\\s+2 spans\\s+2[.,]000 ms avg.*"), summary);
+        Assert.assertTrue(summary.matches("(?s).*gpu draw\\s+1 spans\\s+0[.,]500 ms avg.*"), summary);
+    }
+
+    @Test
+    public void writesChromeTraceEvents() throws IOException {
+        TraceRecorder trace = new TraceRecorder();
+        trace.add("frame", TraceRecorder.CPU_TRACK, 1_000_000, 16_666_667);
+        trace.add("say \"cull\"", TraceRecorder.GPU_TRACK, 1_500_250, 42);
+
+        Path file = Files.createTempFile("trace", ".json");
+        try {
+            trace.writeChromeTrace(file);
+            String json = Files.readString(file);
+            Assert.assertTrue(json.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+            Assert.assertTrue(json.contains("{\"name\":\"frame\",\"cat\":\"cpu\",\"ph\":\"X\",\"pid\":1,\"tid\":1,\"ts\":0.000,\"dur\":16666.667}"), json);
+            Assert.assertTrue(json.contains("{\"name\":\"say \\\"cull\\\"\",\"cat\":\"gpu\",\"ph\":\"X\",\"pid\":1,\"tid\":2,\"ts\":500.250,\"dur\":0.042}"), json);
+            Assert.assertTrue(json.trim().endsWith("]}"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
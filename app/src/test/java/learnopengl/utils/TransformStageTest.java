@@ -0,0 +1,139 @@
+package learnopengl.utils;
+
+import org.joml.Matrix4f;
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class TransformStageTest {
+
+    private static final int OBJECTS = 1000;
+
+    private final float[][] objects = new float[OBJECTS][];
+    private ForkJoinPool pool;
+
+    @BeforeClass
+    public void setUp() {
+        Random random = new Random(7);
+        for (int i = 0; i < OBJECTS; i++) {
+            objects[i] = new float[]{
+                    random.nextFloat() * 100 - 50, random.nextFloat() * 100 - 50, random.nextFloat() * 100 - 50,
+                    random.nextFloat() + 0.1f, random.nextFloat(), random.nextFloat(),
+                    random.nextFloat() * 6, random.nextFloat() * 2};
+        }
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private TransformStage fill(TransformStage stage) {
+        for (float[] o : objects) {
+            stage.add(o[0], o[1], o[2], o[3], o[4], o[5], o[6], o[7]);
+        }
+        return stage;
+    }
+
+    private void assertMatches(FloatBuffer matrices, int slot, int object, float time) {
+        float[] o = objects[object];
+        float[] expected = new float[16];
+        // JOML takes the axis as given, the stage normalizes it
+        float invLength = (float) (1.0 / Math.sqrt(o[3] * o[3] + o[4] * o[4] + o[5] * o[5]));
+        new Matrix4f().translation(o[0], o[1], o[2])
+                .rotate(o[6] + o[7] * time, o[3] * invLength, o[4] * invLength, o[5] * invLength).get(expected);
+        for (int f = 0; f < 16; f++) {
+            Assert.assertEquals(matrices.get(slot * 16 + f), expected[f], 1e-4f, "object " + object + " float " + f);
+        }
+    }
+
+    @Test
+    public void matchesJomlTranslateRotate() {
+        TransformStage stage = fill(new TransformStage(OBJECTS, pool, OBJECTS));
+        stage.compute(1.5f);
+        Assert.assertEquals(stage.getComputedCount(), OBJECTS);
+        Assert.assertEquals(stage.getMatrices().remaining(), OBJECTS * 16);
+        for (int i = 0; i < OBJECTS; i++) {
+            assertMatches(stage.getMatrices(), i, i, 1.5f);
+        }
+    }
+
+    @Test
+    public void parallelSplitGivesTheSameResult() {
+        TransformStage serial = fill(new TransformStage(OBJECTS, pool, OBJECTS));
+        TransformStage parallel = fill(new TransformStage(OBJECTS, pool, 7));
+        serial.compute(0.25f);
+        parallel.compute(0.25f);
+        Assert.assertEquals(parallel.getMatrices(), serial.getMatrices());
+    }
+
+    @Test
+    public void indicesArePackedInOrder() {
+        TransformStage stage = fill(new TransformStage(OBJECTS, pool, 16));
+        int[] indices = new int[OBJECTS];
+        int count = 0;
+        for (int i = OBJECTS - 1; i >= 0; i -= 3) {
+            indices[count++] = i;
+        }
+        stage.compute(indices, count, 2.0f);
+        Assert.assertEquals(stage.getComputedCount(), count);
+        for (int slot = 0; slot < count; slot++) {
+            assertMatches(stage.getMatrices(), slot, indices[slot], 2.0f);
+        }
+    }
+
+    @Test
+    public void computesIntoAnotherBuffer() {
+        TransformStage stage = fill(new TransformStage(OBJECTS, pool, 16));
+        int[] indices = {5, 999, 0, 42};
+        FloatBuffer dst = FloatBuffer.allocate(OBJECTS * 16);
+        stage.compute(indices, indices.length, 0.5f, dst);
+        Assert.assertEquals(dst.position(), 0);
+        Assert.assertEquals(stage.getComputedCount(), 0, "the stage's own matrices are untouched");
+        for (int slot = 0; slot < indices.length; slot++) {
+            assertMatches(dst, slot, indices[slot], 0.5f);
+        }
+    }
+
+    @Test
+    public void storeEntitiesKeepTheirRotationAndScale() {
+        TransformStore store = new TransformStore(4);
+        try {
+            store.create(1.0f, 2.0f, 3.0f); // no rotation at all
+            int rotated = store.create(-4.0f, 0.5f, -12.0f);
+            store.setRotation(rotated, 2.5f, 1.0f, .3f, .5f);
+            store.setScale(rotated, 2.0f, 0.5f, 1.5f);
+            int flipped = store.create(0.0f, 0.0f, 0.0f);
+            store.setRotation(flipped, (float) Math.PI, 0.0f, 1.0f, 0.0f);
+
+            TransformStage stage = new TransformStage(store.size(), pool, 16);
+            for (int i = 0; i < store.size(); i++) {
+                stage.add(store, i, 0.0f);
+            }
+            stage.compute(3.0f);
+
+            float[] expected = new float[16];
+            for (int i = 0; i < store.size(); i++) {
+                new Matrix4f().translationRotateScale(
+                        store.getPositionX(i), store.getPositionY(i), store.getPositionZ(i),
+                        store.getRotationX(i), store.getRotationY(i), store.getRotationZ(i), store.getRotationW(i),
+                        store.getScaleX(i), store.getScaleY(i), store.getScaleZ(i)).get(expected);
+                for (int f = 0; f < 16; f++) {
+                    Assert.assertEquals(stage.getMatrices().get(i * 16 + f), expected[f], 1e-4f, "entity " + i + " float " + f);
+                }
+            }
+        } finally {
+            store.free();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectsABufferWithoutRoom() {
+        TransformStage stage = fill(new TransformStage(OBJECTS, pool, 16));
+        stage.compute(new int[]{1, 2}, 2, 0.0f, FloatBuffer.allocate(16));
+    }
+}
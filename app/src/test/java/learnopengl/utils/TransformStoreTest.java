@@ -0,0 +1,100 @@
+package learnopengl.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+import java.nio.FloatBuffer;
+
+public class TransformStoreTest {
+
+    private TransformStore store;
+
+    @BeforeMethod
+    public void setUp() {
+        store = new TransformStore(2);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        store.free();
+    }
+
+    @Test
+    public void handlesSurviveSwapRemove() {
+        int a = store.create(1, 0, 0);
+        int b = store.create(2, 0, 0);
+        int c = store.create(3, 0, 0);
+        store.setScale(c, 5, 5, 5);
+
+        store.remove(a);
+        Assert.assertEquals(store.size(), 2);
+        Assert.assertFalse(store.isAlive(a));
+        Assert.assertTrue(store.isAlive(b));
+        Assert.assertTrue(store.isAlive(c));
+
+        // the last entity moved into the hole, together with all of its components
+        int index = store.indexOf(c);
+        Assert.assertEquals(index, 0);
+        Assert.assertEquals(store.getPositionX(index), 3.0f);
+        Assert.assertEquals(store.getScaleY(index), 5.0f);
+        Assert.assertEquals(store.handleAt(index), c);
+        Assert.assertEquals(store.getPositionX(store.indexOf(b)), 2.0f);
+    }
+
+    @Test
+    public void reusedSlotsGetANewGeneration() {
+        int a = store.create(1, 0, 0);
+        store.remove(a);
+        int b = store.create(2, 0, 0);
+        Assert.assertNotEquals(a, b);
+        Assert.assertFalse(store.isAlive(a));
+        Assert.assertEquals(store.indexOf(a), TransformStore.INVALID);
+        Assert.assertEquals(store.getPositionX(store.indexOf(b)), 2.0f);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void staleHandlesAreRejected() {
+        int a = store.create(1, 0, 0);
+        store.remove(a);
+        store.setPosition(a, 0, 0, 0);
+    }
+
+    @Test
+    public void bulkIterationSeesEveryEntityOnce() {
+        for (int i = 0; i < 100; i++) {
+            store.create(i, 2 * i, 3 * i);
+        }
+        for (int i = 0; i < 100; i += 2) {
+            store.remove(store.handleAt(store.indexOf(store.handleAt(0))));
+        }
+        Assert.assertEquals(store.size(), 50);
+
+        float[] sum = new float[1];
+        int[] visited = new int[1];
+        store.forEachPosition((index, x, y, z) -> {
+            Assert.assertEquals(y, 2 * x);
+            Assert.assertEquals(z, 3 * x);
+            sum[0] += x;
+            visited[0]++;
+        });
+        Assert.assertEquals(visited[0], 50);
+
+        FloatBuffer xs = store.getPositionsX();
+        Assert.assertEquals(xs.remaining(), 50);
+        float bulkSum = 0;
+        for (int i = 0; i < xs.limit(); i++) {
+            bulkSum += xs.get(i);
+        }
+        Assert.assertEquals(bulkSum, sum[0]);
+    }
+
+    @Test
+    public void rotationIsAUnitQuaternion() {
+        int a = store.create(0, 0, 0);
+        store.setRotation(a, (float) Math.PI, 0, 2, 0);
+        int i = store.indexOf(a);
+        Assert.assertEquals(store.getRotationX(i), 0.0f, 1e-6f);
+        Assert.assertEquals(store.getRotationY(i), 1.0f, 1e-6f);
+        Assert.assertEquals(store.getRotationW(i), 0.0f, 1e-6f);
+    }
+}
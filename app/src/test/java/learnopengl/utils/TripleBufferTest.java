@@ -0,0 +1,78 @@
+package learnopengl.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+public class TripleBufferTest {
+
+    // a snapshot that is only consistent when written completely before being read
+    private static class Numbers {
+        final long[] values = new long[64];
+    }
+
+    private static void fill(Numbers numbers, long value) {
+        for (int i = 0; i < numbers.values.length; i++) {
+            numbers.values[i] = value;
+        }
+    }
+
+    @Test
+    public void readerGetsTheNewestPublishedSnapshot() {
+        TripleBuffer<Numbers> buffer = new TripleBuffer<>(Numbers::new);
+        Assert.assertFalse(buffer.hasNew());
+
+        fill(buffer.getBack(), 1);
+        buffer.publish();
+        fill(buffer.getBack(), 2);
+        buffer.publish();
+        Assert.assertTrue(buffer.hasNew());
+        Assert.assertEquals(buffer.acquire().values[0], 2);
+        Assert.assertEquals(buffer.getSkipped(), 1);
+
+        // nothing new, the same snapshot again
+        Assert.assertFalse(buffer.hasNew());
+        Assert.assertEquals(buffer.acquire().values[0], 2);
+        Assert.assertEquals(buffer.getAcquired(), 1);
+    }
+
+    @Test
+    public void writerNeverGetsTheSnapshotBeingRead() {
+        TripleBuffer<Numbers> buffer = new TripleBuffer<>(Numbers::new);
+        fill(buffer.getBack(), 1);
+        buffer.publish();
+        Numbers reading = buffer.acquire();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertNotSame(buffer.getBack(), reading);
+            fill(buffer.getBack(), 100 + i);
+            buffer.publish();
+        }
+        Assert.assertEquals(reading.values[0], 1);
+    }
+
+    @Test(timeOut = 20_000)
+    public void concurrentReaderSeesWholeSnapshotsInOrder() throws InterruptedException {
+        TripleBuffer<Numbers> buffer = new TripleBuffer<>(Numbers::new);
+        long steps = 200_000;
+        Thread writer = new Thread(() -> {
+            for (long value = 1; value <= steps; value++) {
+                fill(buffer.getBack(), value);
+                buffer.publish();
+            }
+        });
+        writer.start();
+
+        long last = 0;
+        while (last < steps) {
+            Numbers numbers = buffer.acquire();
+            long value = numbers.values[0];
+            for (long v : numbers.values) {
+                Assert.assertEquals(v, value, "torn snapshot");
+            }
+            Assert.assertTrue(value >= last, "went back from " + last + " to " + value);
+            last = value;
+        }
+        writer.join();
+        Assert.assertEquals(buffer.getPublished(), steps);
+        Assert.assertTrue(buffer.getAcquired() + buffer.getSkipped() >= steps - 1);
+    }
+}
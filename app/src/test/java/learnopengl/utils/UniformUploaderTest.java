@@ -0,0 +1,115 @@
+package learnopengl.utils;
+
+import org.joml.Vector3f;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class UniformUploaderTest {
+
+    private static final int WARMUP_FRAMES = 20_000;
+    private static final int MEASURED_FRAMES = 5_000;
+
+    private final List<Vector3f> cubePositions = new ArrayList<>();
+    private int uploads;
+    private float checksum;
+
+    private final UniformUploader.Sink countingSink = (location, value) -> {
+        uploads++;
+        checksum += value.get(value.position());
+    };
+
+    @BeforeMethod
+    public void setUp() {
+        cubePositions.clear();
+        for (int i = 0; i < 256; i++) {
+            cubePositions.add(new Vector3f(i % 16, (i / 16) % 16, -(i / 256)));
+        }
+        uploads = 0;
+    }
+
+    // mirrors the per-frame work of CoordinateSystems.loop()
+    private void frame(UniformUploader uniforms, double time) {
+        float radius = 10.0f;
+        float camX = (float) Math.sin(time) * radius;
+        float camZ = (float) Math.cos(time) * radius;
+
+        uniforms.beginFrame();
+        uniforms.getView().setLookAt(camX, 0.0f, camZ, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+        uniforms.getProjection().setPerspective((float) Math.toRadians(45.0), 800.0f / 600.0f, 0.1f, 100.0f);
+        uniforms.uniformMatrix4(0, uniforms.getView());
+        uniforms.uniformMatrix4(1, uniforms.getProjection());
+
+        for (int i = 0; i < cubePositions.size(); i++) {
+            uniforms.stage(uniforms.getModel()
+                    .translation(cubePositions.get(i))
+                    .rotate((float) Math.toRadians(20.0f * i), 1.0f, .3f, .5f));
+        }
+        for (int i = 0; i < uniforms.getStagedCount(); i++) {
+            uniforms.uniformMatrix4Staged(2, i);
+        }
+    }
+
+    @Test
+    public void steadyStateFramesDoNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            throw new SkipException("thread allocation counters are not available on this JVM");
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new SkipException("thread allocation counters are not available on this JVM");
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        UniformUploader uniforms = new UniformUploader(cubePositions.size(), countingSink);
+        long threadId = Thread.currentThread().getId();
+
+        for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+            frame(uniforms, frame * 0.016);
+        }
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int frame = 0; frame < MEASURED_FRAMES; frame++) {
+            frame(uniforms, frame * 0.016);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // the counter itself may cost a few bytes, anything proportional to the frame count is a leak
+        Assert.assertTrue(allocated < MEASURED_FRAMES,
+                String.format("expected no per-frame allocation, saw %d bytes over %d frames", allocated, MEASURED_FRAMES));
+        Assert.assertEquals(uploads, (WARMUP_FRAMES + MEASURED_FRAMES) * (2 + cubePositions.size()));
+    }
+
+    @Test
+    public void stagedMatricesArePackedInOrder() {
+        UniformUploader uniforms = new UniformUploader(3, countingSink);
+        uniforms.beginFrame();
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(uniforms.stage(uniforms.getModel().translation(i, 0.0f, 0.0f)), i);
+        }
+
+        FloatBuffer staged = uniforms.getStaged();
+        Assert.assertEquals(staged.remaining(), 3 * UniformUploader.MATRIX_FLOATS);
+        for (int i = 0; i < 3; i++) {
+            // m30 holds the x translation in column-major order
+            Assert.assertEquals(staged.get(i * UniformUploader.MATRIX_FLOATS + 12), (float) i);
+        }
+
+        uniforms.beginFrame();
+        Assert.assertEquals(uniforms.getStagedCount(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void stagingPastCapacityFails() {
+        UniformUploader uniforms = new UniformUploader(1, countingSink);
+        uniforms.beginFrame();
+        uniforms.stage(uniforms.getModel().identity());
+        uniforms.stage(uniforms.getModel().identity());
+    }
+}
@@ -0,0 +1,53 @@
+package learnopengl.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+public class UpdateThreadTest {
+
+    private static class Step {
+        double time;
+        String thread;
+    }
+
+    @Test(timeOut = 10_000)
+    public void stepsAdvanceTimeByTheRate() throws InterruptedException {
+        TripleBuffer<Step> snapshots = new TripleBuffer<>(Step::new);
+        UpdateThread<Step> updates = new UpdateThread<>(snapshots, 200.0, (step, time) -> {
+            step.time = time;
+            step.thread = Thread.currentThread().getName();
+        });
+        updates.start();
+        // the first step is already there, from the calling thread
+        Step first = updates.latest();
+        Assert.assertEquals(first.time, 0.0);
+        Assert.assertEquals(first.thread, Thread.currentThread().getName());
+
+        Step latest = first;
+        while (latest.time < 0.1) {
+            Thread.sleep(5);
+            latest = updates.latest();
+        }
+        updates.stop();
+        Assert.assertEquals(latest.thread, "update");
+        // whole multiples of the 5ms step
+        Assert.assertEquals(latest.time * 200.0, Math.rint(latest.time * 200.0), 1e-9);
+    }
+
+    @Test(timeOut = 10_000, expectedExceptions = IllegalStateException.class)
+    public void aFailedStepIsRethrown() throws InterruptedException {
+        UpdateThread<Step> updates = new UpdateThread<>(new TripleBuffer<>(Step::new), 1000.0, (step, time) -> {
+            if (time > 0.0) {
+                throw new ArithmeticException("step failed");
+            }
+        });
+        updates.start();
+        Thread.sleep(50);
+        updates.stop();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectsARateOfZero() {
+        new UpdateThread<>(new TripleBuffer<>(Step::new), 0.0, (step, time) -> {});
+    }
+}
@@ -0,0 +1,170 @@
+package learnopengl.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class VertexFormatTest {
+
+    private static final int VERTICES = 1000;
+
+    // the chapter layout in the compact types
+    private static VertexFormat chapterFormat() {
+        return new VertexFormat.Builder()
+                .add(0, 3, VertexFormat.Type.SHORT_NORM)
+                .add(1, 4, VertexFormat.Type.UNSIGNED_BYTE_NORM)
+                .add(2, 2, VertexFormat.Type.HALF_FLOAT)
+                .build();
+    }
+
+    private static void assertRoundTrip(VertexFormat format, float[] vertices, float[] tolerance) {
+        ByteBuffer packed = format.pack(vertices);
+        int floats = format.getFloatsPerVertex();
+        Assert.assertEquals(packed.remaining(), vertices.length / floats * format.getStride());
+
+        float[] unpacked = new float[floats];
+        for (int v = 0; v < vertices.length / floats; v++) {
+            format.unpack(packed, v, unpacked, 0);
+            for (int c = 0; c < floats; c++) {
+                Assert.assertEquals(unpacked[c], vertices[v * floats + c], tolerance[c],
+                        "vertex " + v + " component " + c);
+            }
+        }
+    }
+
+    @Test
+    public void chapterLayoutIsLessThanHalfTheSize() {
+        VertexFormat format = chapterFormat();
+        Assert.assertEquals(format.getFloatsPerVertex(), 9);
+        // 3 shorts padded to 8 bytes, 4 bytes of color, 2 halves
+        Assert.assertEquals(format.getStride(), 16);
+        Assert.assertTrue(format.getStride() * 2 < 9 * Float.BYTES);
+
+        Assert.assertEquals(format.getAttributes().get(0).getOffset(), 0);
+        Assert.assertEquals(format.getAttributes().get(1).getOffset(), 8);
+        Assert.assertEquals(format.getAttributes().get(2).getOffset(), 12);
+    }
+
+    @Test
+    public void chapterLayoutRoundTrips() {
+        Random random = new Random(7);
+        float[] vertices = new float[VERTICES * 9];
+        for (int v = 0; v < VERTICES; v++) {
+            int o = v * 9;
+            for (int c = 0; c < 3; c++) {
+                vertices[o + c] = random.nextFloat() * 2.0f - 1.0f;
+            }
+            for (int c = 3; c < 7; c++) {
+                vertices[o + c] = random.nextFloat();
+            }
+            // uvs past 1 are fine as half floats
+            vertices[o + 7] = random.nextFloat() * 4.0f;
+            vertices[o + 8] = random.nextFloat() * 4.0f;
+        }
+        float position = 0.5f / 32767.0f;
+        float color = 0.5f / 255.0f;
+        // 10 mantissa bits, values below 4
+        float uv = 4.0f / 2048.0f;
+        assertRoundTrip(chapterFormat(), vertices,
+                new float[]{position, position, position, color, color, color, color, uv, uv});
+    }
+
+    @Test
+    public void exactValuesSurvive() {
+        // the chapter data only uses values that every type can store exactly
+        float[] vertices = {
+                0.5f, -0.5f, 0.0f, 1.0f, 1.0f, 0.0f, 1.0f, 0.0f, 1.0f,
+                -1.0f, 1.0f, -0.0f, 0.0f, 0.0f, 1.0f, 0.0f, 1.0f, 0.5f
+        };
+        float[] exact = new float[9];
+        float position = 0.5f / 32767.0f;
+        exact[0] = exact[1] = exact[2] = position;
+        assertRoundTrip(chapterFormat(), vertices, exact);
+    }
+
+    @Test
+    public void packedNormalsRoundTrip() {
+        VertexFormat format = new VertexFormat.Builder()
+                .add(0, 3, VertexFormat.Type.INT_2_10_10_10_REV)
+                .add(1, 4, VertexFormat.Type.UNSIGNED_INT_2_10_10_10_REV)
+                .add(2, 2, VertexFormat.Type.BYTE_NORM)
+                .add(3, 1, VertexFormat.Type.UNSIGNED_SHORT_NORM)
+                .add(4, 1, VertexFormat.Type.FLOAT)
+                .build();
+        Assert.assertEquals(format.getStride(), 4 + 4 + 4 + 4 + 4);
+
+        Random random = new Random(11);
+        float[] vertices = new float[VERTICES * 11];
+        for (int v = 0; v < VERTICES; v++) {
+            int o = v * 11;
+            // a unit normal
+            float x = random.nextFloat() - 0.5f, y = random.nextFloat() - 0.5f, z = random.nextFloat() - 0.5f;
+            float invLength = (float) (1.0 / Math.sqrt(x * x + y * y + z * z));
+            vertices[o] = x * invLength;
+            vertices[o + 1] = y * invLength;
+            vertices[o + 2] = z * invLength;
+            // a color with a 2-bit alpha
+            vertices[o + 3] = random.nextFloat();
+            vertices[o + 4] = random.nextFloat();
+            vertices[o + 5] = random.nextFloat();
+            vertices[o + 6] = random.nextInt(4) / 3.0f;
+            vertices[o + 7] = random.nextFloat() * 2.0f - 1.0f;
+            vertices[o + 8] = random.nextFloat() * 2.0f - 1.0f;
+            vertices[o + 9] = random.nextFloat();
+            vertices[o + 10] = random.nextFloat() * 100.0f;
+        }
+        float signed10 = 0.5f / 511.0f;
+        float unsigned10 = 0.5f / 1023.0f;
+        float signed8 = 0.5f / 127.0f;
+        assertRoundTrip(format, vertices, new float[]{
+                signed10, signed10, signed10,
+                unsigned10, unsigned10, unsigned10, 1e-6f,
+                signed8, signed8,
+                0.5f / 65535.0f,
+                0.0f});
+    }
+
+    @Test
+    public void outOfRangeValuesClamp() {
+        VertexFormat format = new VertexFormat.Builder()
+                .add(0, 2, VertexFormat.Type.SHORT_NORM)
+                .add(1, 1, VertexFormat.Type.UNSIGNED_BYTE_NORM)
+                .build();
+        ByteBuffer packed = format.pack(new float[]{3.0f, -7.0f, 2.0f});
+        float[] unpacked = new float[3];
+        format.unpack(packed, 0, unpacked, 0);
+        Assert.assertEquals(unpacked[0], 1.0f);
+        Assert.assertEquals(unpacked[1], -1.0f);
+        Assert.assertEquals(unpacked[2], 1.0f);
+    }
+
+    @Test
+    public void halfFloatConversion() {
+        Assert.assertEquals(VertexFormat.toHalf(1.0f), (short) 0x3C00);
+        Assert.assertEquals(VertexFormat.toHalf(-2.0f), (short) 0xC000);
+        Assert.assertEquals(VertexFormat.toHalf(65504.0f), (short) 0x7BFF);
+        // too large for a half
+        Assert.assertEquals(VertexFormat.toHalf(1e6f), (short) 0x7C00);
+        // the smallest subnormal half
+        Assert.assertEquals(VertexFormat.fromHalf((short) 0x0001), 0x1p-24f);
+        Assert.assertEquals(VertexFormat.toHalf(0x1p-24f), (short) 0x0001);
+        // exactly between 1 and the next half, rounds to the even one
+        Assert.assertEquals(VertexFormat.toHalf(1.0f + 0x1p-11f), (short) 0x3C00);
+        Assert.assertTrue(Float.isNaN(VertexFormat.fromHalf(VertexFormat.toHalf(Float.NaN))));
+
+        // every finite half survives the trip through float
+        for (int h = 0; h < 0x10000; h++) {
+            if ((h & 0x7C00) == 0x7C00) {
+                continue;
+            }
+            Assert.assertEquals(VertexFormat.toHalf(VertexFormat.fromHalf((short) h)), (short) h);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void packedTypesNeedThreeComponents() {
+        new VertexFormat.Builder().add(0, 2, VertexFormat.Type.INT_2_10_10_10_REV);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * JMH benchmarks for the CPU side of the renderer.
+ *
+ * Run them all with `gradlew :benchmarks:jmh`, results end up in build/results/jmh/results.json.
+ * `gradlew :benchmarks:jmhCompare` then checks them against baseline/jmh-results.json, and
+ * `gradlew :benchmarks:jmhRecordBaseline` makes the last run the new baseline. Record it on the
+ * machine the comparisons run on, the numbers mean nothing across machines.
+ */
+
+plugins {
+    java
+    id("me.champeau.jmh") version "0.6.5"
+}
+
+repositories {
+    mavenCentral()
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(17))
+    }
+}
+
+dependencies {
+    jmh(project(":app"))
+}
+
+val jmhResults = layout.buildDirectory.file("results/jmh/results.json")
+val jmhBaseline = layout.projectDirectory.file("baseline/jmh-results.json")
+
+jmh {
+    jmhVersion.set("1.32")
+    // -Pjmh.includes=TransformStage narrows the run down to matching benchmarks
+    if (project.hasProperty("jmh.includes")) {
+        includes.set(listOf(project.property("jmh.includes") as String))
+    }
+    resultFormat.set("JSON")
+    resultsFile.set(jmhResults)
+    // allocation per operation next to every score, gc.alloc.rate.norm is the one to watch
+    profilers.set(listOf("gc"))
+    // lets MatrixBatch.get() pick the Vector API implementation in the forks
+    jvmArgsAppend.add("--add-modules=jdk.incubator.vector")
+}
+
+tasks.register<Copy>("jmhRecordBaseline") {
+    description = "Makes the results of the last jmh run the baseline jmhCompare checks against."
+    from(jmhResults)
+    into(jmhBaseline.asFile.parentFile)
+    rename { jmhBaseline.asFile.name }
+}
+
+tasks.register("jmhCompare") {
+    description = "Compares the last jmh run against the baseline and fails on scores or allocations that got worse."
+    doLast {
+        // -Pjmh.threshold=percent of change that counts as a regression
+        val threshold = (findProperty("jmh.threshold") as String?)?.toDouble() ?: 10.0
+        val baseline = readJmhResults(jmhBaseline.asFile)
+        val current = readJmhResults(jmhResults.get().asFile)
+        val regressions = mutableListOf<String>()
+        println(String.format("%-70s %14s %14s %8s %12s %12s", "benchmark", "baseline", "current", "change", "B/op before", "B/op now"))
+        for ((key, result) in current) {
+            val before = baseline[key]
+            if (before == null) {
+                println(String.format("%-70s %14s %14.3f", key, "new", result.score))
+                continue
+            }
+            // throughput is better when higher, every other mode measures time
+            val change = 100.0 * (result.score - before.score) / before.score
+            val worse = if (result.mode == "thrpt") -change else change
+            val allocGrowth = result.allocNorm - before.allocNorm
+            println(String.format("%-70s %14.3f %14.3f %+7.1f%% %12.1f %12.1f %s", key, before.score, result.score, change,
+                    before.allocNorm, result.allocNorm, result.unit))
+            if (worse > threshold) {
+                regressions.add(String.format("%s is %.1f%% slower", key, worse))
+            }
+            // small differences are the profiler's noise, and allocations should not grow at all otherwise
+            if (allocGrowth > 16 && allocGrowth > before.allocNorm * threshold / 100.0) {
+                regressions.add(String.format("%s allocates %.1f more bytes per operation", key, allocGrowth))
+            }
+        }
+        baseline.keys.filter { it !in current }.forEach { println(String.format("%-70s %14s", it, "not run")) }
+        if (regressions.isNotEmpty()) {
+            throw GradleException("JMH regressions against ${jmhBaseline.asFile}:\n" + regressions.joinToString("\n"))
+        }
+    }
+}
+
+class JmhResult(val mode: String, val score: Double, val unit: String, val allocNorm: Double)
+
+// benchmark name plus its parameters, mapped to the primary score and the gc profiler's bytes per operation
+fun readJmhResults(file: File): Map<String, JmhResult> {
+    if (!file.isFile) {
+        throw GradleException("No JMH results at $file, run jmh first (and jmhRecordBaseline once for the baseline)")
+    }
+    @Suppress("UNCHECKED_CAST")
+    val runs = groovy.json.JsonSlurper().parse(file) as List<Map<String, Any?>>
+    return runs.associate { run ->
+        val params = (run["params"] as Map<String, Any?>?)?.entries?.sortedBy { it.key }?.joinToString(",") { "${it.key}=${it.value}" }
+        val primary = run["primaryMetric"] as Map<String, Any?>
+        val secondary = run["secondaryMetrics"] as Map<String, Map<String, Any?>>? ?: emptyMap()
+        val alloc = secondary.entries.firstOrNull { it.key.endsWith("gc.alloc.rate.norm") }?.value?.get("score") as Number?
+        val name = (run["benchmark"] as String).removePrefix("learnopengl.benchmark.")
+        (if (params == null) name else "$name($params)") to
+                JmhResult(run["mode"] as String, (primary["score"] as Number).toDouble(), primary["scoreUnit"] as String, alloc?.toDouble() ?: 0.0)
+    }
+}
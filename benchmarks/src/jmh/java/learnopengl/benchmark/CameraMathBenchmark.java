@@ -0,0 +1,66 @@
+package learnopengl.benchmark;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JOML calls chapter 6 makes every frame: the orbit camera's lookAt, the perspective projection, their product
+ * for culling, and a cube's translate * rotate model matrix. The model matrix is built both in place and the way the
+ * tutorial code does it, with a new matrix and axis per cube, so the gc profiler shows what that costs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CameraMathBenchmark {
+
+    private static final Vector3f AXIS = new Vector3f(1.0f, 0.3f, 0.5f).normalize();
+
+    private final Matrix4f view = new Matrix4f();
+    private final Matrix4f projection = new Matrix4f();
+    private final Matrix4f viewProjection = new Matrix4f();
+    private final Matrix4f model = new Matrix4f();
+    private float time;
+
+    @Setup
+    public void setUp() {
+        view.setLookAt(0.0f, 0.0f, 10.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+        projection.setPerspective((float) Math.toRadians(45.0), 800.0f / 600.0f, 0.1f, 100.0f);
+    }
+
+    @Benchmark
+    public Matrix4f lookAt() {
+        time += 1.0f / 60.0f;
+        float radius = 10.0f;
+        return view.setLookAt((float) Math.sin(time) * radius, 0.0f, (float) Math.cos(time) * radius,
+                0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+    }
+
+    @Benchmark
+    public Matrix4f perspective() {
+        return projection.setPerspective((float) Math.toRadians(45.0), 800.0f / 600.0f, 0.1f, 100.0f);
+    }
+
+    @Benchmark
+    public Matrix4f viewProjection() {
+        return projection.mul(view, viewProjection);
+    }
+
+    @Benchmark
+    public Matrix4f modelMatrix() {
+        time += 1.0f / 60.0f;
+        return model.translation(1.5f, -2.2f, -2.5f).rotate(time, AXIS);
+    }
+
+    @Benchmark
+    public Matrix4f modelMatrixAllocating() {
+        time += 1.0f / 60.0f;
+        return new Matrix4f().translate(new Vector3f(1.5f, -2.2f, -2.5f))
+                .rotate(time, new Vector3f(1.0f, 0.3f, 0.5f).normalize());
+    }
+}
@@ -0,0 +1,57 @@
+package learnopengl.benchmark;
+
+import learnopengl.utils.FrustumCuller;
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FrustumCuller} against the number of bounding spheres: the chapter 6 orbit camera looking at a cube field of
+ * 10 up to 1,000,000 objects. One operation is a frame, the plane extraction plus the cull; divide by
+ * {@code objects} for the cost per sphere.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrustumCullingBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000", "1000000"})
+    public int objects;
+
+    private final Matrix4f viewProjection = new Matrix4f();
+    private FrustumCuller culler;
+    private float extent;
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        culler = new FrustumCuller(objects);
+        // same layout CoordinateSystems uses for its extra cubes
+        Random random = new Random(42);
+        extent = Math.max(15.0f, 2.0f * (float) Math.cbrt(objects));
+        for (int i = 0; i < objects; i++) {
+            culler.addSphere(
+                    (random.nextFloat() - 0.5f) * extent,
+                    (random.nextFloat() - 0.5f) * extent,
+                    (random.nextFloat() - 0.5f) * extent,
+                    0.866f);
+        }
+    }
+
+    @Benchmark
+    public int cull() {
+        // the same 200 frames of the orbit over and over, as the visible share changes along it
+        double time = (frame++ % 200) / 60.0;
+        float radius = Math.max(10.0f, extent);
+        viewProjection.setPerspective((float) Math.toRadians(45.0), 800.0f / 600.0f, 0.1f, 100.0f)
+                .lookAt((float) Math.sin(time) * radius, 0.0f, (float) Math.cos(time) * radius,
+                        0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+        culler.update(viewProjection);
+        return culler.cull();
+    }
+}
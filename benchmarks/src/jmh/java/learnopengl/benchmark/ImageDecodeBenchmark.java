@@ -0,0 +1,102 @@
+package learnopengl.benchmark;
+
+import learnopengl.utils.BakedTexture;
+import learnopengl.utils.TextureLoader;
+import org.lwjgl.system.MemoryStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.stb.STBImage.stbi_failure_reason;
+import static org.lwjgl.stb.STBImage.stbi_image_free;
+import static org.lwjgl.stb.STBImage.stbi_load_from_memory;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+/**
+ * Decoding the chapter images from memory with stb_image, decoding plus building the mip chain the way
+ * {@link TextureLoader} does on a cache miss, and reading the baked file instead. File reads are included only in
+ * the baked case, which is what the texture cache trades for the decode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageDecodeBenchmark {
+
+    @Param({"images/container.jpg", "images/awesomeface.png"})
+    public String image;
+
+    @Param({"zstd"})
+    public String codec;
+
+    private ByteBuffer encoded;
+    private Path baked;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] bytes;
+        try (InputStream in = ImageDecodeBenchmark.class.getClassLoader().getResourceAsStream(image)) {
+            if (in == null) {
+                throw new IOException("No resource " + image);
+            }
+            bytes = in.readAllBytes();
+        }
+        encoded = memAlloc(bytes.length);
+        encoded.put(bytes).flip();
+
+        baked = Files.createTempFile("decode", BakedTexture.FILE_EXTENSION);
+        BakedTexture texture = TextureLoader.decodeWithMips(encoded);
+        try {
+            texture.write(baked, BakedTexture.codecFromName(codec));
+        } finally {
+            texture.free();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        memFree(encoded);
+        Files.deleteIfExists(baked);
+    }
+
+    @Benchmark
+    public int stbi() throws IOException {
+        try (MemoryStack stack = stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer c = stack.mallocInt(1);
+            ByteBuffer pixels = stbi_load_from_memory(encoded, w, h, c, 0);
+            if (pixels == null) {
+                throw new IOException(stbi_failure_reason());
+            }
+            stbi_image_free(pixels);
+            return w.get(0) * h.get(0);
+        }
+    }
+
+    @Benchmark
+    public int stbiWithMips() throws IOException {
+        BakedTexture texture = TextureLoader.decodeWithMips(encoded);
+        int levels = texture.getLevelCount();
+        texture.free();
+        return levels;
+    }
+
+    @Benchmark
+    public int readBaked() throws IOException {
+        BakedTexture texture = BakedTexture.read(baked);
+        int levels = texture.getLevelCount();
+        texture.free();
+        return levels;
+    }
+}
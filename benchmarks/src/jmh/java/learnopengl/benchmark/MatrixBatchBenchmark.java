@@ -0,0 +1,174 @@
+package learnopengl.benchmark;
+
+import learnopengl.utils.MatrixBatch;
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.system.MemoryUtil.memAllocFloat;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+/**
+ * {@link MatrixBatch} against the same math done one JOML object at a time, on 10k matrices or points. Scores are per
+ * matrix or point on one thread, so ops/us is millions of matrices per second per core. The batch runs as both the
+ * scalar and the Vector API implementation; the forks get --add-modules jdk.incubator.vector from the build, without
+ * it "vector" measures the scalar one again. The JOML methods ignore the parameter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixBatchBenchmark {
+
+    private static final int COUNT = 10_000;
+
+    @Param({"scalar", "vector"})
+    public String implementation;
+
+    private MatrixBatch batch;
+
+    private final float[] a = new float[COUNT * 16];
+    private final float[] b = new float[COUNT * 16];
+    private final float[] dst = new float[COUNT * 16];
+    private final float[] viewProjection = new float[16];
+    private final float[] translations = new float[COUNT * 3];
+    private final float[] rotations = new float[COUNT * 4];
+    private final float[] scales = new float[COUNT * 3];
+    private final float[] points = new float[COUNT * 3];
+    private final float[] transformed = new float[COUNT * 3];
+
+    private final Matrix4f[] jomlA = new Matrix4f[COUNT];
+    private final Matrix4f[] jomlB = new Matrix4f[COUNT];
+    private final Matrix4f[] jomlDst = new Matrix4f[COUNT];
+    private final Matrix4f jomlViewProjection = new Matrix4f();
+    private final Vector3f[] jomlTranslations = new Vector3f[COUNT];
+    private final Quaternionf[] jomlRotations = new Quaternionf[COUNT];
+    private final Vector3f[] jomlScales = new Vector3f[COUNT];
+    private final Vector3f[] jomlPoints = new Vector3f[COUNT];
+    private final Vector3f[] jomlTransformed = new Vector3f[COUNT];
+
+    private FloatBuffer aBuffer;
+    private FloatBuffer bBuffer;
+    private FloatBuffer dstBuffer;
+
+    @Setup
+    public void setUp() {
+        batch = implementation.equals("vector") ? MatrixBatch.get() : MatrixBatch.scalar();
+        Random random = new Random(42);
+        for (int i = 0; i < COUNT; i++) {
+            jomlTranslations[i] = new Vector3f(random.nextFloat() * 20.0f - 10.0f, random.nextFloat() * 20.0f - 10.0f, random.nextFloat() * 20.0f - 10.0f);
+            jomlRotations[i] = new Quaternionf().rotationAxis(random.nextFloat() * 6.0f, 1.0f, 0.3f, 0.5f);
+            jomlScales[i] = new Vector3f(random.nextFloat() + 0.5f);
+            jomlPoints[i] = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat());
+            jomlTransformed[i] = new Vector3f();
+            translations[i * 3] = jomlTranslations[i].x;
+            translations[i * 3 + 1] = jomlTranslations[i].y;
+            translations[i * 3 + 2] = jomlTranslations[i].z;
+            rotations[i * 4] = jomlRotations[i].x;
+            rotations[i * 4 + 1] = jomlRotations[i].y;
+            rotations[i * 4 + 2] = jomlRotations[i].z;
+            rotations[i * 4 + 3] = jomlRotations[i].w;
+            scales[i * 3] = scales[i * 3 + 1] = scales[i * 3 + 2] = jomlScales[i].x;
+            points[i * 3] = jomlPoints[i].x;
+            points[i * 3 + 1] = jomlPoints[i].y;
+            points[i * 3 + 2] = jomlPoints[i].z;
+
+            jomlA[i] = new Matrix4f().translationRotateScale(jomlTranslations[i], jomlRotations[i], jomlScales[i]);
+            jomlB[i] = new Matrix4f().rotationXYZ(random.nextFloat(), random.nextFloat(), random.nextFloat());
+            jomlDst[i] = new Matrix4f();
+            jomlA[i].get(a, i * 16);
+            jomlB[i].get(b, i * 16);
+        }
+        jomlViewProjection.setPerspective((float) Math.toRadians(45.0), 800.0f / 600.0f, 0.1f, 100.0f)
+                .lookAt(0.0f, 0.0f, 10.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f)
+                .get(viewProjection);
+        aBuffer = memAllocFloat(a.length).put(a).flip();
+        bBuffer = memAllocFloat(b.length).put(b).flip();
+        dstBuffer = memAllocFloat(dst.length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        memFree(aBuffer);
+        memFree(bBuffer);
+        memFree(dstBuffer);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public float[] mul() {
+        batch.mul(a, b, dst, COUNT);
+        return dst;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public FloatBuffer mulBuffers() {
+        batch.mul(aBuffer, bBuffer, dstBuffer, COUNT);
+        return dstBuffer;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Matrix4f[] mulJoml() {
+        for (int i = 0; i < COUNT; i++) {
+            jomlA[i].mul(jomlB[i], jomlDst[i]);
+        }
+        return jomlDst;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public float[] mulAll() {
+        batch.mulAll(viewProjection, a, dst, COUNT);
+        return dst;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Matrix4f[] mulAllJoml() {
+        for (int i = 0; i < COUNT; i++) {
+            jomlViewProjection.mul(jomlA[i], jomlDst[i]);
+        }
+        return jomlDst;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public float[] composeTrs() {
+        batch.composeTrs(translations, rotations, scales, dst, COUNT);
+        return dst;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Matrix4f[] composeTrsJoml() {
+        for (int i = 0; i < COUNT; i++) {
+            jomlDst[i].translationRotateScale(jomlTranslations[i], jomlRotations[i], jomlScales[i]);
+        }
+        return jomlDst;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public float[] transformPoints() {
+        batch.transformPoints(a, points, transformed, COUNT);
+        return transformed;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Vector3f[] transformPointsJoml() {
+        for (int i = 0; i < COUNT; i++) {
+            jomlA[0].transformPosition(jomlPoints[i], jomlTransformed[i]);
+        }
+        return jomlTransformed;
+    }
+}
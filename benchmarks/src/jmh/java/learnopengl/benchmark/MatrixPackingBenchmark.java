@@ -0,0 +1,66 @@
+package learnopengl.benchmark;
+
+import learnopengl.utils.UniformUploader;
+import org.joml.Matrix4f;
+import org.lwjgl.BufferUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting matrices into a FloatBuffer for glUniformMatrix4fv or a buffer upload: one matrix through JOML's absolute
+ * and relative puts, through a float[] the way a tutorial would, and a frame's worth of matrices staged by
+ * {@link UniformUploader}, whose sink here discards them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixPackingBenchmark {
+
+    @Param({"10", "1000"})
+    public int matrices;
+
+    private final Matrix4f matrix = new Matrix4f();
+    private final FloatBuffer buffer = BufferUtils.createFloatBuffer(UniformUploader.MATRIX_FLOATS);
+    private UniformUploader uploader;
+
+    @Setup
+    public void setUp() {
+        matrix.setPerspective((float) Math.toRadians(45.0), 800.0f / 600.0f, 0.1f, 100.0f)
+                .lookAt(3.0f, 0.0f, 10.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+        uploader = new UniformUploader(matrices, (location, value) -> { });
+    }
+
+    @Benchmark
+    public FloatBuffer absolute() {
+        return matrix.get(0, buffer);
+    }
+
+    @Benchmark
+    public FloatBuffer relative() {
+        buffer.clear();
+        matrix.get(buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public FloatBuffer throughArray() {
+        buffer.clear();
+        buffer.put(matrix.get(new float[UniformUploader.MATRIX_FLOATS])).flip();
+        return buffer;
+    }
+
+    // one operation is the whole frame, divide by matrices for the cost of one
+    @Benchmark
+    public FloatBuffer stageFrame() {
+        uploader.beginFrame();
+        for (int i = 0; i < matrices; i++) {
+            uploader.stage(matrix);
+        }
+        return uploader.getStaged();
+    }
+}
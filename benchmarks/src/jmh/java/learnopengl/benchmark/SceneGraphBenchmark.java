@@ -0,0 +1,65 @@
+package learnopengl.benchmark;
+
+import learnopengl.utils.SceneGraph;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link SceneGraph#update()} when only a few leaves move. The time per operation should follow
+ * {@code changed} and stay flat as {@code nodes} grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SceneGraphBenchmark {
+
+    private static final int CHILDREN_PER_GROUP = 9;
+
+    @Param({"10000", "100000", "1000000"})
+    public int nodes;
+
+    @Param({"1", "100", "10000"})
+    public int changed;
+
+    private SceneGraph graph;
+    private int[] moving;
+    private float time;
+
+    @Setup
+    public void setUp() {
+        graph = new SceneGraph(nodes);
+        int[] leaves = new int[nodes];
+        int leafCount = 0;
+        // groups of one parent and a few children, added depth-first so nothing has to be shifted
+        while (graph.size() + CHILDREN_PER_GROUP + 1 <= nodes) {
+            int group = graph.add(SceneGraph.NO_PARENT);
+            graph.setTranslation(group, graph.size(), 0.0f, 0.0f);
+            for (int c = 0; c < CHILDREN_PER_GROUP; c++) {
+                int leaf = graph.add(group);
+                graph.setTranslation(leaf, 0.0f, c, 0.0f);
+                leaves[leafCount++] = leaf;
+            }
+        }
+        graph.update();
+
+        Random random = new Random(42);
+        moving = new int[Math.min(changed, leafCount)];
+        for (int i = 0; i < moving.length; i++) {
+            moving[i] = leaves[random.nextInt(leafCount)];
+        }
+    }
+
+    @Benchmark
+    public int updateChangedLeaves() {
+        time += 1.0f / 60.0f;
+        for (int leaf : moving) {
+            graph.setRotation(leaf, time, 0.0f, 1.0f, 0.0f);
+        }
+        return graph.update();
+    }
+}
@@ -0,0 +1,56 @@
+package learnopengl.benchmark;
+
+import learnopengl.utils.TransformStage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link TransformStage} against the number of worker threads. One operation is a full frame, i.e.
+ * every object's model matrix rebuilt for a new time; multiply by {@code objects} for matrices per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformStageBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"10000", "100000", "1000000"})
+    public int objects;
+
+    private ForkJoinPool pool;
+    private TransformStage stage;
+    private float time;
+
+    @Setup
+    public void setUp() {
+        pool = new ForkJoinPool(threads);
+        // one thread means no splitting at all, so the single threaded number carries no fork-join overhead
+        stage = new TransformStage(objects, pool, threads == 1 ? objects : TransformStage.DEFAULT_SPLIT_THRESHOLD);
+        Random random = new Random(42);
+        float extent = Math.max(15.0f, 2.0f * (float) Math.cbrt(objects));
+        for (int i = 0; i < objects; i++) {
+            stage.add((random.nextFloat() - 0.5f) * extent, (random.nextFloat() - 0.5f) * extent, (random.nextFloat() - 0.5f) * extent,
+                    1.0f, .3f, .5f, (float) Math.toRadians(20.0f * i), 1.0f);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int computeAll() {
+        time += 1.0f / 60.0f;
+        stage.compute(time);
+        return stage.getComputedCount();
+    }
+}
@@ -0,0 +1,96 @@
+package learnopengl.benchmark;
+
+import learnopengl.utils.TransformStore;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iterating 1M positions stored the way chapter 6 used to (an {@code ArrayList<Vector3f>}) against the off-heap
+ * {@link TransformStore}. The list is shuffled once, like a heap that has seen some churn, so its elements are not
+ * laid out in iteration order. The setup prints the footprint of both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TransformStoreBenchmark {
+
+    @Param({"1000000"})
+    public int entities;
+
+    private List<Vector3f> list;
+    private TransformStore store;
+
+    @Setup
+    public void setUp() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long before = memory.getHeapMemoryUsage().getUsed();
+
+        Random random = new Random(42);
+        list = new ArrayList<>();
+        for (int i = 0; i < entities; i++) {
+            list.add(new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()));
+        }
+        Collections.shuffle(list, random);
+        System.gc();
+        long listBytes = memory.getHeapMemoryUsage().getUsed() - before;
+
+        store = new TransformStore(entities);
+        for (Vector3f v : list) {
+            store.create(v.x, v.y, v.z);
+        }
+
+        // the list only holds positions, the store also has rotation and scale
+        System.out.printf("%n%d entities: ArrayList<Vector3f> ~%.1f MB of heap (positions only), "
+                + "TransformStore %.1f MB (positions, rotations, scales)%n",
+                entities, listBytes / 1e6, store.getFootprintBytes() / 1e6);
+    }
+
+    @TearDown
+    public void tearDown() {
+        store.free();
+    }
+
+    @Benchmark
+    public float sumList() {
+        float sum = 0.0f;
+        for (int i = 0; i < list.size(); i++) {
+            Vector3f v = list.get(i);
+            sum += v.x + v.y + v.z;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float sumStoreByIndex() {
+        float sum = 0.0f;
+        for (int i = 0; i < store.size(); i++) {
+            sum += store.getPositionX(i) + store.getPositionY(i) + store.getPositionZ(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float sumStoreBuffers() {
+        FloatBuffer xs = store.getPositionsX();
+        FloatBuffer ys = store.getPositionsY();
+        FloatBuffer zs = store.getPositionsZ();
+        float sum = 0.0f;
+        for (int i = 0; i < xs.limit(); i++) {
+            sum += xs.get(i) + ys.get(i) + zs.get(i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,63 @@
+package learnopengl.benchmark;
+
+import learnopengl.utils.MeshPacker;
+import learnopengl.utils.VertexFormat;
+import org.lwjgl.BufferUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Preparing vertex data for glBufferData: position, color and uv vertices copied into a direct FloatBuffer as they
+ * are, against packing them with {@link VertexFormat} into all floats or into the compact {@link MeshPacker#FORMAT}.
+ * Every operation creates its output buffer, as the chapters do when they upload a mesh.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VertexPackingBenchmark {
+
+    private static final VertexFormat FLOATS = new VertexFormat.Builder()
+            .add(0, 3, VertexFormat.Type.FLOAT)
+            .add(1, 3, VertexFormat.Type.FLOAT)
+            .add(2, 2, VertexFormat.Type.FLOAT)
+            .build();
+
+    // a cube as chapter 6 draws it, and a mesh of a decent size
+    @Param({"36", "100000"})
+    public int vertices;
+
+    private float[] data;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        data = new float[vertices * FLOATS.getFloatsPerVertex()];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextFloat() - 0.5f;
+        }
+    }
+
+    @Benchmark
+    public FloatBuffer directFloats() {
+        FloatBuffer buffer = BufferUtils.createFloatBuffer(data.length);
+        buffer.put(data).flip();
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer packFloats() {
+        return FLOATS.pack(data);
+    }
+
+    @Benchmark
+    public ByteBuffer packCompact() {
+        return MeshPacker.FORMAT.pack(data);
+    }
+}
@@ -9,3 +9,4 @@
 
 rootProject.name = "learnopengl-with-lwjgl"
 include("app")
+include("benchmarks")